@@ -16,13 +16,22 @@
 package minicp.cp;
 
 import minicp.engine.core.IntVar;
+import minicp.engine.core.OldSeqVar;
 import minicp.engine.core.Solver;
+import minicp.search.DecisionBranching;
+import minicp.search.Decisions;
 import minicp.search.LimitedDiscrepancyBranching;
 import minicp.search.Sequencer;
 import minicp.util.Procedure;
+import minicp.util.exception.InconsistencyException;
 import minicp.util.exception.NotImplementedException;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -71,6 +80,52 @@ public final class BranchingScheme {
      */
     public static final Procedure[] EMPTY = new Procedure[0];
 
+    /**
+     * Kind of a {@link Decisions} inserting the node {@code second}
+     * after the member predecessor {@code first} in a sequence
+     * @see #applySequenceDecision(OldSeqVar, int, int, int)
+     */
+    public static final int INSERT = 0;
+
+    /**
+     * Kind of a {@link Decisions} excluding the node {@code second} from a sequence
+     * @see #applySequenceDecision(OldSeqVar, int, int, int)
+     */
+    public static final int EXCLUDE = 1;
+
+    /**
+     * Kind of a {@link Decisions} removing the predecessor {@code first}
+     * from the insertions of the node {@code second} in a sequence
+     * @see #applySequenceDecision(OldSeqVar, int, int, int)
+     */
+    public static final int REMOVE_PRED_INSERT = 2;
+
+    /**
+     * Applies a decision on a sequence and computes the fix-point.
+     * Intended to be used as {@link DecisionBranching#apply(int, int, int)}
+     * for the branchings on sequences.
+     *
+     * @param seq the sequence on which the decision is applied
+     * @param kind {@link #INSERT}, {@link #EXCLUDE} or {@link #REMOVE_PRED_INSERT}
+     * @param pred the predecessor related to the decision, unused for {@link #EXCLUDE}
+     * @param node the node related to the decision
+     */
+    public static void applySequenceDecision(OldSeqVar seq, int kind, int pred, int node) {
+        switch (kind) {
+            case INSERT:
+                Factory.insert(seq, pred, node);
+                break;
+            case EXCLUDE:
+                Factory.exclude(seq, node);
+                break;
+            case REMOVE_PRED_INSERT:
+                Factory.removePredInsert(seq, pred, node);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown kind of sequence decision: " + kind);
+        }
+    }
+
     /**
      *
      * @param branches the ordered closures for the child branches
@@ -175,7 +230,34 @@ public final class BranchingScheme {
      *                      it must be assigned on the left branch (and excluded on the right)
      */
     public static Supplier<Procedure[]> lastConflict(Supplier<IntVar> variableSelector, Function<IntVar, Integer> valueSelector) {
-        throw new NotImplementedException();
+        // STUDENT throw new NotImplementedException();
+        // BEGIN STRIP
+        IntVar[] lastConflict = new IntVar[1]; // last variable whose assignment or removal failed
+        return () -> {
+            IntVar xs = lastConflict[0];
+            if (xs == null || xs.isBound())
+                xs = variableSelector.get();
+            if (xs == null)
+                return EMPTY;
+            IntVar x = xs;
+            int v = valueSelector.apply(x);
+            return branch(() -> {
+                try {
+                    x.getSolver().post(equal(x, v));
+                } catch (InconsistencyException e) {
+                    lastConflict[0] = x;
+                    throw e;
+                }
+            }, () -> {
+                try {
+                    x.getSolver().post(notEqual(x, v));
+                } catch (InconsistencyException e) {
+                    lastConflict[0] = x;
+                    throw e;
+                }
+            });
+        };
+        // END STRIP
     }
 
     /**
@@ -191,7 +273,146 @@ public final class BranchingScheme {
      *                      it must be assigned on the left branch (and excluded on the right)
      */
     public static Supplier<Procedure[]> conflictOrderingSearch(Supplier<IntVar> variableSelector, Function<IntVar, Integer> valueSelector) {
-        throw new NotImplementedException();
+        // STUDENT throw new NotImplementedException();
+        // BEGIN STRIP
+        Map<IntVar, Integer> conflictStamp = new HashMap<>(); // the higher the stamp, the more recent the conflict
+        int[] nConflicts = new int[1];
+        return () -> {
+            IntVar xs = null;
+            int stamp = -1;
+            for (Map.Entry<IntVar, Integer> e : conflictStamp.entrySet()) {
+                if (!e.getKey().isBound() && e.getValue() > stamp) {
+                    xs = e.getKey();
+                    stamp = e.getValue();
+                }
+            }
+            if (xs == null)
+                xs = variableSelector.get();
+            if (xs == null)
+                return EMPTY;
+            IntVar x = xs;
+            int v = valueSelector.apply(x);
+            return branch(() -> {
+                try {
+                    x.getSolver().post(equal(x, v));
+                } catch (InconsistencyException e) {
+                    conflictStamp.put(x, nConflicts[0]++);
+                    throw e;
+                }
+            }, () -> {
+                try {
+                    x.getSolver().post(notEqual(x, v));
+                } catch (InconsistencyException e) {
+                    conflictStamp.put(x, nConflicts[0]++);
+                    throw e;
+                }
+            });
+        };
+        // END STRIP
+    }
+
+    /**
+     * Last conflict search on a sequence.
+     * Attempts to branch first on the last node whose insertion or exclusion caused an Inconsistency,
+     * as long as it is still possible.
+     * The children of a node are its insertions after each of its member predecessors,
+     * ordered by increasing key, or its exclusion if it has no such insertion.
+     *
+     * @param seq the sequence on which the search branches
+     * @param nodeSelector returns the next possible node to insert, or -1 if there is none
+     * @param insertionKey {@code insertionKey(node, pred)} is the key used to order the insertion of a node after pred
+     * @return a branching scheme implementing the last conflict search on the sequence
+     * @see #lastConflict(Supplier, Function)
+     */
+    public static DecisionBranching lastConflict(OldSeqVar seq, IntSupplier nodeSelector, IntBinaryOperator insertionKey) {
+        return new SequenceConflictBranching(seq, nodeSelector, insertionKey, false);
+    }
+
+    /**
+     * Conflict ordering search on a sequence.
+     * Attempts to branch first on the possible node having the most recent conflict,
+     * that is the node whose insertion or exclusion caused an Inconsistency the most recently.
+     * The children of a node are its insertions after each of its member predecessors,
+     * ordered by increasing key, or its exclusion if it has no such insertion.
+     *
+     * @param seq the sequence on which the search branches
+     * @param nodeSelector returns the next possible node to insert, or -1 if there is none
+     * @param insertionKey {@code insertionKey(node, pred)} is the key used to order the insertion of a node after pred
+     * @return a branching scheme implementing the conflict ordering search on the sequence
+     * @see #conflictOrderingSearch(Supplier, Function)
+     */
+    public static DecisionBranching conflictOrderingSearch(OldSeqVar seq, IntSupplier nodeSelector, IntBinaryOperator insertionKey) {
+        return new SequenceConflictBranching(seq, nodeSelector, insertionKey, true);
+    }
+
+    /**
+     * Branching on the insertions of the nodes of a sequence, remembering the nodes
+     * whose decisions failed to branch on them first
+     */
+    private static class SequenceConflictBranching implements DecisionBranching {
+
+        private final OldSeqVar seq;
+        private final IntSupplier nodeSelector;
+        private final IntBinaryOperator insertionKey;
+        private final boolean ordering; // true for conflict ordering, false for last conflict
+        private final int[] conflictStamp; // stamp of the last conflict of each node, -1 if none
+        private final int[] nodes; // used for fill operations
+        private int nConflicts = 0;
+        private int lastConflict = -1;
+
+        SequenceConflictBranching(OldSeqVar seq, IntSupplier nodeSelector, IntBinaryOperator insertionKey, boolean ordering) {
+            this.seq = seq;
+            this.nodeSelector = nodeSelector;
+            this.insertionKey = insertionKey;
+            this.ordering = ordering;
+            this.conflictStamp = new int[seq.nNode()];
+            this.nodes = new int[seq.nNode()];
+            Arrays.fill(conflictStamp, -1);
+        }
+
+        // possible node having the most recent conflict, or -1 if there is none
+        private int conflictingNode() {
+            if (!ordering)
+                return lastConflict >= 0 && seq.isPossible(lastConflict) ? lastConflict : -1;
+            int node = -1;
+            int stamp = -1;
+            int size = seq.fillPossible(nodes);
+            for (int i = 0; i < size; i++) {
+                if (conflictStamp[nodes[i]] > stamp) {
+                    node = nodes[i];
+                    stamp = conflictStamp[node];
+                }
+            }
+            return node;
+        }
+
+        @Override
+        public void fill(Decisions decisions) {
+            int node = conflictingNode();
+            if (node < 0)
+                node = nodeSelector.getAsInt();
+            if (node < 0)
+                return;
+            int nInsert = seq.fillMemberPredInsert(node, nodes);
+            if (nInsert == 0) {
+                decisions.add(EXCLUDE, -1, node);
+                return;
+            }
+            for (int i = 0; i < nInsert; i++)
+                decisions.add(INSERT, nodes[i], node, insertionKey.applyAsInt(node, nodes[i]));
+            decisions.sort();
+        }
+
+        @Override
+        public void apply(int kind, int pred, int node) {
+            try {
+                applySequenceDecision(seq, kind, pred, node);
+            } catch (InconsistencyException e) {
+                lastConflict = node;
+                conflictStamp[node] = nConflicts++;
+                throw e;
+            }
+        }
     }
 
 }
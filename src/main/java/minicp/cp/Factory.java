@@ -18,7 +18,9 @@ package minicp.cp;
 import minicp.engine.constraints.*;
 import minicp.engine.core.*;
 import minicp.search.DFSearch;
+import minicp.search.DecisionBranching;
 import minicp.search.Objective;
+import minicp.search.ParallelDFSearch;
 import minicp.state.Copier;
 import minicp.state.Trailer;
 import minicp.util.exception.InconsistencyException;
@@ -28,6 +30,7 @@ import minicp.util.exception.IntOverFlowException;
 import java.util.Arrays;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
@@ -85,7 +88,7 @@ public final class Factory {
      * @return a variable with domain equal to the set {0,...,sz-1}
      */
     public static IntVar makeIntVar(Solver cp, int sz) {
-        return new IntVarImpl(cp, sz);
+        return makeIntVar(cp, 0, sz - 1);
     }
 
     /**
@@ -97,18 +100,23 @@ public final class Factory {
      * @return a variable with domain equal to the set {min,...,max}
      */
     public static IntVar makeIntVar(Solver cp, int min, int max) {
-        return new IntVarImpl(cp, min, max);
+        return makeIntVar(cp, min, max, false);
     }
 
     /**
      * Creates a variable with a domain equal to the specified range.
+     * Ranges of at most {@link BitSetDomain#MAX_SIZE} values are represented
+     * with a {@link BitSetDomain}, larger ones with a {@link SparseSetDomain}.
      *
      * @param cp the solver in which the variable is created
      * @param min the lower bound of the domain (included)
      * @param max the upper bound of the domain (included) {@code max > min}
+     * @param lazy if true, a large domain is only allocated once values are removed from its inside
      * @return a variable with domain equal to the set {min,...,max}
      */
     public static IntVar makeIntVar(Solver cp, int min, int max, boolean lazy) {
+        if (BitSetDomain.fits(min, max) && min != Integer.MIN_VALUE && max != Integer.MAX_VALUE)
+            return new IntVarImpl(cp, new BitSetDomain(cp.getStateManager(), min, max));
         return new IntVarImpl(cp, min, max, lazy);
     }
 
@@ -229,7 +237,62 @@ public final class Factory {
      * @see BranchingScheme#branch(Procedure...)
      */
     public static DFSearch makeDfs(Solver cp, Supplier<Procedure[]> branching) {
-        return new DFSearch(cp.getStateManager(), branching);
+        return new DFSearch(cp, branching);
+    }
+
+    /**
+     * Creates a Depth First Search with custom branching heuristic
+     * giving its children as primitive decisions, such that
+     * no closure is created at each node.
+     *
+     * @param cp the solver that will be used for the search
+     * @param branching a branching filling the decisions leading to the
+     *                  child nodes, and applying them.
+     *                  It should not give any decision whenever the current state
+     *                  is a solution.
+     * @return the depth first search object ready to execute with
+     *         {@link DFSearch#solve()} or
+     *         {@link DFSearch#optimize(Objective)}
+     *         using the given branching scheme
+     * @see BranchingScheme#applySequenceDecision(OldSeqVar, int, int, int)
+     */
+    public static DFSearch makeDfs(Solver cp, DecisionBranching branching) {
+        return new DFSearch(cp, branching);
+    }
+
+    /**
+     * Creates a Depth First Search explored in parallel by several workers
+     * stealing the unexplored subtrees of each other.
+     *
+     * @param nWorkers number of threads exploring the search tree
+     * @param replicas creates the model solved by each worker, with its branching
+     * @return the parallel search object ready to execute with
+     *         {@link ParallelDFSearch#solve()} or
+     *         {@link ParallelDFSearch#optimize(java.util.function.Predicate)}
+     */
+    public static ParallelDFSearch makeParallelDfs(int nWorkers, IntFunction<ParallelDFSearch.Replica> replicas) {
+        return new ParallelDFSearch(nWorkers, replicas);
+    }
+
+    /**
+     * Creates an embarrassingly parallel Depth First Search:
+     * the root is split into the subproblems of a given depth that pass the propagation,
+     * which are then solved independently by several workers.
+     *
+     * @param nWorkers number of threads solving the subproblems
+     * @param depth depth of the subproblems in the search tree, at least 1
+     * @param replicas creates the model solved by each worker, with its branching
+     * @return the parallel search object ready to execute with
+     *         {@link ParallelDFSearch#solve()} or
+     *         {@link ParallelDFSearch#optimize(java.util.function.Predicate)}
+     * @see ParallelDFSearch#setDecompositionDepth(int)
+     */
+    public static ParallelDFSearch makeEmbarrassinglyParallelDfs(int nWorkers, int depth,
+                                                                 IntFunction<ParallelDFSearch.Replica> replicas) {
+        if (depth < 1) throw new IllegalArgumentException("the depth of the subproblems should be >= 1");
+        ParallelDFSearch search = new ParallelDFSearch(nWorkers, replicas);
+        search.setDecompositionDepth(depth);
+        return search;
     }
 
     // -------------- constraints -----------------------
@@ -652,4 +715,48 @@ public final class Factory {
     public static Constraint allDifferentAC(IntVar[] x) {
         return new AllDifferentDC(x);
     }
+
+    /**
+     * Inserts a node after a member predecessor of a sequence and computes the fix-point.
+     * Contrary to posting an {@link minicp.engine.constraints.sequence.Insert} constraint,
+     * no object is created, such that it can be used for the decisions of a search.
+     * A {@link minicp.util.exception.InconsistencyException} is thrown
+     * if the insertion is not possible or if the fix-point fails.
+     *
+     * @param seq the sequence in which the node is inserted
+     * @param pred the member predecessor of the node
+     * @param node the node to insert
+     */
+    public static void insert(OldSeqVar seq, int pred, int node) {
+        seq.insert(pred, node);
+        seq.getSolver().fixPoint();
+    }
+
+    /**
+     * Excludes a node from a sequence and computes the fix-point.
+     * A {@link minicp.util.exception.InconsistencyException} is thrown
+     * if the node is a member of the sequence or if the fix-point fails.
+     *
+     * @param seq the sequence from which the node is excluded
+     * @param node the node to exclude
+     * @see #insert(OldSeqVar, int, int)
+     */
+    public static void exclude(OldSeqVar seq, int node) {
+        seq.exclude(node);
+        seq.getSolver().fixPoint();
+    }
+
+    /**
+     * Removes a predecessor from the insertions of a node and computes the fix-point.
+     * A {@link minicp.util.exception.InconsistencyException} is thrown if the fix-point fails.
+     *
+     * @param seq the sequence on which the insertion is removed
+     * @param pred the predecessor that cannot be used any more to insert the node
+     * @param node the node whose insertion is removed
+     * @see #insert(OldSeqVar, int, int)
+     */
+    public static void removePredInsert(OldSeqVar seq, int pred, int node) {
+        seq.removePredInsert(pred, node);
+        seq.getSolver().fixPoint();
+    }
 }
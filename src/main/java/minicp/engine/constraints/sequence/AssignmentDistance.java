@@ -0,0 +1,275 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.engine.core.AbstractConstraint;
+import minicp.engine.core.IntVar;
+import minicp.engine.core.OldSeqVar;
+
+import java.util.Arrays;
+
+import static minicp.util.exception.InconsistencyException.INCONSISTENCY;
+
+/**
+ * lower bound on the distance of a sequence visiting all of its nodes, from the assignment problem relaxation
+ *
+ * Every node is assigned to its successor in the completed sequence, the end node being the predecessor of the begin
+ * node at no cost. The arcs that can appear in the completed sequence are deduced from the insertions:
+ *  - a member can only be followed by its current successor or by a possible node that can be inserted after it
+ *  - a possible node can only be followed by a member if it can be inserted before it, or by a possible node
+ *  - when time windows are given, an arc i -> j cannot be used if j cannot be reached on time from i
+ *
+ * The minimum cost assignment is found with the hungarian algorithm. Its solution and dual values are kept from one
+ * propagation to the other, such that only the nodes whose successor is no longer valid are assigned again.
+ * The reduced costs then tell when a member must stay before its current successor,
+ * in which case no node can be inserted after it
+ */
+public class AssignmentDistance extends AbstractConstraint {
+
+    private static final int NONE = Integer.MAX_VALUE; // cost of an arc that cannot be used
+    private static final long INF = Long.MAX_VALUE / 4;
+
+    private final OldSeqVar seq;
+    private final IntVar distance;
+    private final int[][] transition;
+    private final IntVar[] time; // time of visit for each node, null if the time windows are not considered
+    private final int n; // number of nodes
+
+    private final int[][] cost; // cost of the arcs that can be used in the completed sequence, NONE otherwise
+    private final int[] possible; // used by fill operations on the sequence to retrieve nodes
+
+    // state of the hungarian algorithm, where the rows and columns are shifted by one
+    // the row of a node is its predecessor in the assignment, its column its successor
+    private final long[] u; // dual value of the rows
+    private final long[] v; // dual value of the columns
+    private final int[] rowOf; // row assigned to a column, 0 if the column is free
+    private final int[] way; // column preceding another one in the augmenting path
+    private final long[] minv; // minimum reduced cost to reach a column in the augmenting path
+    private final boolean[] used; // columns visited in the augmenting path
+    private final int[] free; // rows to assign
+
+    /**
+     * compute the lower bound on the distance of a sequence from the assignment problem relaxation,
+     * assuming that all nodes must be visited in the sequence
+     * @param seqVar sequence whose nodes need to be visited
+     * @param transition transition from one node to another
+     * @param distance distance of the sequence
+     */
+    public AssignmentDistance(OldSeqVar seqVar, int[][] transition, IntVar distance) {
+        this(seqVar, transition, distance, null);
+    }
+
+    /**
+     * compute the lower bound on the distance of a sequence from the assignment problem relaxation,
+     * assuming that all nodes must be visited in the sequence, within their time window
+     * @param seqVar sequence whose nodes need to be visited
+     * @param transition transition from one node to another
+     * @param distance distance of the sequence
+     * @param time time of visit for each node
+     */
+    public AssignmentDistance(OldSeqVar seqVar, int[][] transition, IntVar distance, IntVar[] time) {
+        super(seqVar.getSolver());
+        this.seq = seqVar;
+        this.transition = transition;
+        this.distance = distance;
+        this.time = time;
+        n = seqVar.nNode();
+        cost = new int[n][n];
+        possible = new int[n];
+        u = new long[n + 1];
+        v = new long[n + 1];
+        rowOf = new int[n + 1];
+        way = new int[n + 1];
+        minv = new long[n + 1];
+        used = new boolean[n + 1];
+        free = new int[n];
+    }
+
+    @Override
+    public void post() {
+        if (seq.nExcluded() > 0)
+            throw INCONSISTENCY; // all nodes must be visited
+        seq.whenExclude(() -> {
+            throw INCONSISTENCY;
+        });
+        propagate();
+        if (isActive()) {
+            seq.propagateOnInsert(this);
+            distance.propagateOnBoundChange(this);
+        }
+    }
+
+    @Override
+    public void propagate() {
+        if (seq.isFixed()) {
+            setActive(false);
+            return;
+        }
+        int nFree = 0;
+        updateArcs();
+        repairAssignment();
+        Arrays.fill(used, false);
+        for (int col = 1 ; col <= n ; ++col)
+            used[rowOf[col]] = true; // rows that are assigned, the row 0 being a placeholder
+        for (int row = 1 ; row <= n ; ++row)
+            if (!used[row])
+                free[nFree++] = row;
+        for (int i = 0 ; i < nFree ; ++i)
+            augment(free[i]);
+        long lowerBound = 0;
+        for (int col = 1 ; col <= n ; ++col)
+            lowerBound += cost[rowOf[col] - 1][col - 1];
+        distance.removeBelow((int) lowerBound);
+        removeInsertionsFromReducedCosts(lowerBound);
+    }
+
+    /**
+     * set the cost of the arcs that can appear in the completed sequence
+     */
+    private void updateArcs() {
+        int nPossible = seq.fillPossible(possible);
+        for (int i = 0 ; i < n ; ++i)
+            Arrays.fill(cost[i], NONE);
+        int begin = seq.begin();
+        int end = seq.end();
+        cost[end][begin] = 0; // closes the sequence
+        // members followed by their successor
+        for (int pred = begin ; pred != end ; pred = seq.nextMember(pred))
+            setArc(pred, seq.nextMember(pred));
+        for (int i = 0 ; i < nPossible ; ++i) {
+            int node = possible[i];
+            boolean possiblePred = seq.nPossiblePredInsert(node) > 0;
+            for (int j = 0 ; j < nPossible ; ++j)
+                if (i != j)
+                    setArc(node, possible[j]);
+            for (int succ = seq.nextMember(begin) ; ; succ = seq.nextMember(succ)) {
+                int pred = seq.predMember(succ);
+                if (seq.isPredInsert(pred, node)) {
+                    setArc(pred, node); // member followed by a possible node
+                    setArc(node, succ); // possible node inserted right before a member
+                } else if (possiblePred) {
+                    setArc(node, succ); // can be inserted after a possible node placed before the member
+                }
+                if (succ == end)
+                    break;
+            }
+        }
+    }
+
+    private void setArc(int pred, int succ) {
+        if (time == null || time[pred].min() + transition[pred][succ] <= time[succ].max())
+            cost[pred][succ] = transition[pred][succ];
+    }
+
+    /**
+     * restore the dual feasibility of the assignment found by the previous propagation and
+     * unassign the nodes whose successor can no longer be used
+     */
+    private void repairAssignment() {
+        Arrays.fill(used, false);
+        for (int col = 1 ; col <= n ; ++col) {
+            int row = rowOf[col];
+            if (row != 0 && cost[row - 1][col - 1] == NONE)
+                rowOf[col] = 0; // the successor can no longer be used
+            used[rowOf[col]] = true;
+        }
+        for (int row = 1 ; row <= n ; ++row) {
+            if (used[row])
+                continue;
+            // the dual value of an unassigned row is set such that its reduced costs are positive
+            long minCost = INF;
+            for (int col = 1 ; col <= n ; ++col)
+                if (cost[row - 1][col - 1] != NONE)
+                    minCost = Math.min(minCost, cost[row - 1][col - 1] - v[col]);
+            if (minCost == INF)
+                throw INCONSISTENCY; // the node has no successor
+            u[row] = minCost;
+        }
+        for (int col = 1 ; col <= n ; ++col) {
+            // arcs that are valid again can have a negative reduced cost
+            // decreasing the dual value of the column keeps the other reduced costs positive
+            long minReducedCost = 0;
+            for (int row = 1 ; row <= n ; ++row)
+                if (cost[row - 1][col - 1] != NONE)
+                    minReducedCost = Math.min(minReducedCost, cost[row - 1][col - 1] - u[row] - v[col]);
+            if (minReducedCost < 0) {
+                v[col] += minReducedCost;
+                rowOf[col] = 0; // the arc is no longer tight
+            }
+        }
+    }
+
+    /**
+     * assign a row through the shortest augmenting path
+     * @param row row to assign
+     */
+    private void augment(int row) {
+        rowOf[0] = row;
+        int col0 = 0;
+        Arrays.fill(minv, INF);
+        Arrays.fill(used, false);
+        do {
+            used[col0] = true;
+            int row0 = rowOf[col0];
+            long delta = INF;
+            int col1 = 0;
+            for (int col = 1 ; col <= n ; ++col) {
+                if (used[col])
+                    continue;
+                int c = cost[row0 - 1][col - 1];
+                if (c != NONE) {
+                    long reducedCost = c - u[row0] - v[col];
+                    if (reducedCost < minv[col]) {
+                        minv[col] = reducedCost;
+                        way[col] = col0;
+                    }
+                }
+                if (minv[col] < delta) {
+                    delta = minv[col];
+                    col1 = col;
+                }
+            }
+            if (col1 == 0)
+                throw INCONSISTENCY; // some nodes cannot all be given a distinct successor
+            for (int col = 0 ; col <= n ; ++col) {
+                if (used[col]) {
+                    u[rowOf[col]] += delta;
+                    v[col] -= delta;
+                } else if (minv[col] != INF) {
+                    minv[col] -= delta;
+                }
+            }
+            col0 = col1;
+        } while (rowOf[col0] != 0);
+        do {
+            int col1 = way[col0];
+            rowOf[col0] = rowOf[col1];
+            col0 = col1;
+        } while (col0 != 0);
+    }
+
+    /**
+     * forbid the insertions after a member when replacing its successor in the assignment exceeds the distance
+     * @param lowerBound cost of the assignment
+     */
+    private void removeInsertionsFromReducedCosts(long lowerBound) {
+        long maxIncrease = distance.max() - lowerBound;
+        int end = seq.end();
+        for (int pred = seq.begin() ; pred != end ; pred = seq.nextMember(pred)) {
+            int succ = seq.nextMember(pred);
+            int row = pred + 1;
+            int col = succ + 1;
+            if (rowOf[col] != row)
+                continue; // the arc is not used by the assignment, replacing it does not increase the bound
+            // the other successors of pred and predecessors of succ can only increase the bound by their reduced cost
+            long minOut = INF;
+            long minIn = INF;
+            for (int other = 1 ; other <= n ; ++other) {
+                if (other != col && cost[pred][other - 1] != NONE)
+                    minOut = Math.min(minOut, cost[pred][other - 1] - u[row] - v[other]);
+                if (other != row && cost[other - 1][succ] != NONE)
+                    minIn = Math.min(minIn, cost[other - 1][succ] - u[other] - v[col]);
+            }
+            if (Math.max(minOut, minIn) > maxIncrease)
+                seq.removeAllPredInsertFrom(pred); // pred -> succ belongs to every completion within the distance
+        }
+    }
+}
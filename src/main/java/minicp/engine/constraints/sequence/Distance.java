@@ -5,12 +5,17 @@ import minicp.util.exception.InconsistencyException;
 
 /**
  * compute the distance of the sequence, assuming that all nodes must be visited
+ *
+ * The bounds assume that the transitions respect the triangular inequality, such that inserting a node never
+ * shortens the sequence. Otherwise, they are relaxed by {@link TransitionTimes#thresholdRespectTriangularInequality(int[][])}
+ * for each node that remains to insert
  */
 public class Distance extends AbstractConstraint {
 
     private final OldSeqVar seq;
     private final IntVar distance;
     private final int[][] transition;
+    private final int threshold; // maximum shortening of a transition by a visit in between, 0 under the triangular inequality
     private int[] possible;   // store the possible InsertionsVar
     private int[] insertions; // store the insertions points for an insertion var
 
@@ -23,6 +28,7 @@ public class Distance extends AbstractConstraint {
     public Distance(OldSeqVar seqVar, int[][] transition, IntVar distance) {
         super(seqVar.getSolver());
         this.transition = transition;
+        this.threshold = TransitionTimes.thresholdRespectTriangularInequality(transition);
         this.distance = distance;
         this.seq = seqVar;
         possible = new int[seqVar.nNode()];
@@ -46,9 +52,7 @@ public class Distance extends AbstractConstraint {
     @Override
     public void propagate() {
         setActive(false);
-        int dist = computeCurrentDistance();
-        distance.removeBelow(dist);
-        setDistanceToCompleteRoute(dist);
+        setDistanceToCompleteRoute(computeCurrentDistance());
         if (!seq.isFixed())
             setActive(true);
     }
@@ -63,36 +67,37 @@ public class Distance extends AbstractConstraint {
     }
 
     // minimal distance that must be added to complete the route
+    // the cheapest detours of the nodes cannot be summed, as several nodes can be inserted between the same members
+    // assuming the triangular inequality, the route is at least increased by the most costly of them
+    // otherwise, each of the other possible nodes can shorten the route by the threshold
+    // see AssignmentDistance for a stronger bound
     private void setDistanceToCompleteRoute(int currentDist) {
-        // TODO check: currently incorrect, need to also account for possible insertions
         int nPossible = seq.fillPossible(possible);
-        int minDetourSum = 0;
-        int maxDetourSum = 0;
+        int slack = threshold * Math.max(0, nPossible - 1); // shortening by the insertions of the other nodes
+        int maxMinDetour = nPossible == 0 ? 0 : -threshold;
         for (int i = 0; i < nPossible ; ++i) {
             int current = possible[i];
             int nInsert = seq.fillMemberPredInsert(current, insertions);
             int minDetour = Integer.MAX_VALUE;
-            int maxDetour = Integer.MIN_VALUE;
             for (int j = 0 ; j < nInsert ; ++j) {
                 int pred = insertions[j];
                 int succ = seq.nextMember(pred);
                 int detour = transition[pred][current] + transition[current][succ] - transition[pred][succ];
-                if (detour + currentDist > distance.max()) {
+                if (detour - slack + currentDist > distance.max()) {
                     seq.removePredInsert(pred, current); // cannot reach the node using this predecessor
                 } else {
                     minDetour = Math.min(minDetour, detour);
-                    maxDetour = Math.max(maxDetour, detour);
                 }
             }
             if (minDetour == Integer.MAX_VALUE) {
-                // no scheduled insertion could be found for the node and no insertion will be found in the future
+                if (seq.nPossiblePredInsert(current) > 0)
+                    continue; // the node can still be inserted after another possible node
+                // no insertion could be found for the node and no insertion will be found in the future
                 // the node will never be scheduled, inconsistency detected
                 throw InconsistencyException.INCONSISTENCY;
             }
-            minDetourSum += minDetour;
-            maxDetourSum += maxDetour;
+            maxMinDetour = Math.max(maxMinDetour, minDetour);
         }
-        distance.removeAbove(currentDist + maxDetourSum);
-        distance.removeBelow(currentDist + minDetourSum);
+        distance.removeBelow(currentDist + maxMinDetour - slack);
     }
 }
@@ -0,0 +1,260 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.engine.core.OldSeqVar;
+
+import java.util.Arrays;
+
+/**
+ * Store of insertions proven to fail, kept across the searches done on a sequence.
+ *
+ * A nogood is a (pred, node) insertion together with its context: the ordering of the member nodes
+ * and the set of excluded nodes of the sequence when the insertion failed. The context is summarized by a
+ * 64 bits Zobrist hash, the xor of a key per pair of successive members and of a key per excluded node,
+ * such that it can be maintained incrementally by the {@link InsertionNogoods} constraint.
+ * As the time bounds of the nodes only depend on this context,
+ * the insertion fails whenever the same context is met again, provided that the constraints of the model
+ * have not been relaxed in between (the objective can only be tightened). The store must thus be
+ * {@link #clear() cleared} when the model changes.
+ *
+ * The contexts are stored in buckets of {@link #WAYS} entries, each one holding at most
+ * {@link #NOGOODS_PER_CONTEXT} insertions, without any allocation.
+ * When a bucket is full, an entry is evicted following the clock algorithm, as in the
+ * {@link minicp.search.TranspositionTable}. When an entry is full, its oldest insertion is replaced.
+ */
+public class InsertionNogoodStore {
+
+    /**
+     * Default number of contexts kept by the store
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * Number of entries in each bucket of the store
+     */
+    public static final int WAYS = 4;
+
+    /**
+     * Maximum number of insertions kept for a context
+     */
+    public static final int NOGOODS_PER_CONTEXT = 8;
+
+    private static final long EMPTY = 0L;
+
+    private final long[] keys; // EMPTY if the entry is not used
+    private final boolean[] referenced; // true if the entry has been used since the last pass of the hand
+    private final byte[] hands; // next entry considered for the eviction in each bucket
+    private final int[] nWritten; // number of insertions written in each entry, the oldest ones being overwritten
+    private final int[] pairs; // {pred0, node0, pred1, node1, ...} of each entry
+    private final int mask; // number of buckets - 1
+    private int[] order = new int[0]; // used for fill operations on the sequence
+    private int size;
+    private long nRecorded = 0;
+
+    /**
+     * Creates a store keeping at most {@link #DEFAULT_CAPACITY} contexts
+     */
+    public InsertionNogoodStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a store
+     *
+     * @param capacity maximum number of contexts kept, rounded up to a power of 2 of at least {@link #WAYS}
+     */
+    public InsertionNogoodStore(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("the capacity of the store must be positive");
+        int minBuckets = Math.min(1 << 24, (capacity + WAYS - 1) / WAYS);
+        int nBuckets = minBuckets <= 1 ? 1 : Integer.highestOneBit(minBuckets - 1) << 1;
+        this.mask = nBuckets - 1;
+        this.keys = new long[nBuckets * WAYS];
+        this.referenced = new boolean[nBuckets * WAYS];
+        this.hands = new byte[nBuckets];
+        this.nWritten = new int[nBuckets * WAYS];
+        this.pairs = new int[nBuckets * WAYS * NOGOODS_PER_CONTEXT * 2];
+    }
+
+    /**
+     * Computes the context of the current state of a sequence from scratch.
+     * The {@link InsertionNogoods} constraint maintains the same value incrementally
+     *
+     * @param seq sequence whose context is computed
+     * @return hash of the ordering of the member nodes and of the set of excluded nodes
+     * @see InsertionNogoods#context()
+     */
+    public long key(OldSeqVar seq) {
+        if (order.length < seq.nNode())
+            order = new int[seq.nNode()];
+        long key = 0L;
+        int n = seq.fillOrder(order, true);
+        for (int i = 0 ; i < n - 1 ; ++i)
+            key ^= successionKey(order[i], order[i + 1]);
+        n = seq.fillExcluded(order);
+        for (int i = 0 ; i < n ; ++i)
+            key ^= exclusionKey(order[i]);
+        return key;
+    }
+
+    /**
+     * @param pred member node of a sequence
+     * @param succ member node directly following pred
+     * @return part of the context for the succession of the two nodes
+     */
+    public static long successionKey(int pred, int succ) {
+        return mix(((long) pred << 32 | succ) + 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * @param node excluded node of a sequence
+     * @return part of the context for the exclusion of the node
+     */
+    public static long exclusionKey(int node) {
+        return mix(~(long) node);
+    }
+
+    // finalizer of the SplitMix64 generator
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static long stored(long key) {
+        return key == EMPTY ? 1L : key;
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) * WAYS;
+    }
+
+    /**
+     * Records that inserting a node after a predecessor fails within a context
+     *
+     * @param key context in which the insertion fails, given by {@link InsertionNogoods#context()} before the insertion
+     * @param pred predecessor of the insertion
+     * @param node node being inserted
+     */
+    public void record(long key, int pred, int node) {
+        key = stored(key);
+        int entry = find(key);
+        if (entry < 0) {
+            entry = evict(key);
+        } else {
+            for (int i = 0 ; i < nNogoods(entry) ; ++i)
+                if (pred(entry, i) == pred && node(entry, i) == node)
+                    return;
+        }
+        int slot = (entry * NOGOODS_PER_CONTEXT + nWritten[entry] % NOGOODS_PER_CONTEXT) * 2;
+        pairs[slot] = pred;
+        pairs[slot + 1] = node;
+        nWritten[entry]++;
+        nRecorded++;
+    }
+
+    // gives an entry for a new context, replacing an unused entry of its bucket if it is full
+    private int evict(long key) {
+        int b = bucket(key);
+        int entry = -1;
+        for (int i = b ; i < b + WAYS && entry < 0 ; i++)
+            if (keys[i] == EMPTY) {
+                entry = i;
+                size++;
+            }
+        if (entry < 0) {
+            // the bucket is full: the hand clears the entries used since its last pass until it finds an unused one
+            int bucketIndex = b / WAYS;
+            int hand = hands[bucketIndex];
+            while (referenced[b + hand]) {
+                referenced[b + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            entry = b + hand;
+            hands[bucketIndex] = (byte) ((hand + 1) % WAYS);
+        }
+        keys[entry] = key;
+        referenced[entry] = true;
+        nWritten[entry] = 0;
+        return entry;
+    }
+
+    /**
+     * Gives the entry of a context
+     *
+     * @param key context of the insertions
+     * @return entry holding the insertions that fail within the context,
+     *         or -1 if nothing is known about the context
+     */
+    public int find(long key) {
+        key = stored(key);
+        int b = bucket(key);
+        for (int i = b ; i < b + WAYS ; i++) {
+            if (keys[i] == key) {
+                referenced[i] = true;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param entry entry of a context, given by {@link #find(long)}
+     * @return number of insertions that fail within the context
+     */
+    public int nNogoods(int entry) {
+        return Math.min(nWritten[entry], NOGOODS_PER_CONTEXT);
+    }
+
+    /**
+     * @param entry entry of a context, given by {@link #find(long)}
+     * @param i index of the insertion, {@code 0 <= i < nNogoods(entry)}
+     * @return predecessor of the ith insertion failing within the context
+     */
+    public int pred(int entry, int i) {
+        return pairs[(entry * NOGOODS_PER_CONTEXT + i) * 2];
+    }
+
+    /**
+     * @param entry entry of a context, given by {@link #find(long)}
+     * @param i index of the insertion, {@code 0 <= i < nNogoods(entry)}
+     * @return node of the ith insertion failing within the context
+     */
+    public int node(int entry, int i) {
+        return pairs[(entry * NOGOODS_PER_CONTEXT + i) * 2 + 1];
+    }
+
+    /**
+     * Removes all the nogoods
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(referenced, false);
+            Arrays.fill(hands, (byte) 0);
+            Arrays.fill(nWritten, 0);
+        }
+        size = 0;
+        nRecorded = 0;
+    }
+
+    /**
+     * @return number of contexts currently stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum number of contexts stored
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return number of nogoods recorded since the creation or the last {@link #clear()}
+     */
+    public long nRecorded() {
+        return nRecorded;
+    }
+}
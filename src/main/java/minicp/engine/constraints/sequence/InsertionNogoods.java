@@ -0,0 +1,127 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.engine.core.AbstractConstraint;
+import minicp.engine.core.OldSeqVar;
+import minicp.state.StateInt;
+import minicp.state.StateManager;
+
+/**
+ * Removes the insertions of a sequence recorded as failing within its current context
+ *
+ * The context is maintained incrementally on the insertion and exclusion of each node,
+ * as the xor of the keys of {@link InsertionNogoodStore#successionKey(int, int)}
+ * and {@link InsertionNogoodStore#exclusionKey(int)}, stored in two {@link StateInt}.
+ * The nogoods of the context are enforced once all the insertions and exclusions have been taken into account.
+ * @see InsertionNogoodStore
+ */
+public class InsertionNogoods extends AbstractConstraint {
+
+    private final OldSeqVar seq;
+    private final InsertionNogoodStore store;
+    private final StateInt low; // 32 lower bits of the context
+    private final StateInt high; // 32 higher bits of the context
+    private final StateInt[] succ; // successor of the members taken into account in the context, -1 for the other nodes
+    private final StateInt nMember; // number of members taken into account in the context
+    private final StateInt nExcluded; // number of excluded nodes taken into account in the context
+
+    /**
+     * Enforces the nogoods of a store on a sequence
+     *
+     * @param seq sequence on which the nogoods are enforced
+     * @param store nogoods learned on the sequence
+     */
+    public InsertionNogoods(OldSeqVar seq, InsertionNogoodStore store) {
+        super(seq.getSolver());
+        this.seq = seq;
+        this.store = store;
+        StateManager sm = getSolver().getStateManager();
+        low = sm.makeStateInt(0);
+        high = sm.makeStateInt(0);
+        succ = new StateInt[seq.nNode()];
+        for (int i = 0 ; i < succ.length ; ++i)
+            succ[i] = sm.makeStateInt(-1);
+        nMember = sm.makeStateInt(0);
+        nExcluded = sm.makeStateInt(0);
+    }
+
+    @Override
+    public void post() {
+        long context = 0L;
+        int n = 1;
+        for (int node = seq.begin() ; node != seq.end() ; node = seq.nextMember(node)) {
+            int next = seq.nextMember(node);
+            succ[node].setValue(next);
+            context ^= InsertionNogoodStore.successionKey(node, next);
+            n++;
+        }
+        succ[seq.end()].setValue(seq.end());
+        nMember.setValue(n);
+        for (int node = 0 ; node < seq.nNode() ; ++node) {
+            if (seq.isExcluded(node)) {
+                context ^= InsertionNogoodStore.exclusionKey(node);
+            } else if (seq.isPossible(node)) {
+                final int i = node;
+                seq.getInsertionVar(node).whenInsert(() -> onInsert(i));
+                seq.getInsertionVar(node).whenExclude(() -> onExclude(i));
+            }
+        }
+        nExcluded.setValue(seq.nExcluded());
+        setContext(context);
+        propagate();
+    }
+
+    /**
+     * Gives the context of the sequence.
+     * It is equal to {@link InsertionNogoodStore#key(OldSeqVar)} once the fix-point is computed
+     *
+     * @return hash of the ordering of the member nodes and of the set of excluded nodes
+     */
+    public long context() {
+        return ((long) high.value() << 32) | (low.value() & 0xFFFFFFFFL);
+    }
+
+    private void setContext(long context) {
+        if ((int) context != low.value())
+            low.setValue((int) context);
+        if ((int) (context >>> 32) != high.value())
+            high.setValue((int) (context >>> 32));
+    }
+
+    // adds a member to the context, between the closest members already taken into account
+    private void onInsert(int node) {
+        int pred = seq.predMember(node);
+        while (succ[pred].value() < 0)
+            pred = seq.predMember(pred);
+        int next = succ[pred].value();
+        succ[pred].setValue(node);
+        succ[node].setValue(next);
+        nMember.increment();
+        setContext(context() ^ InsertionNogoodStore.successionKey(pred, next)
+                ^ InsertionNogoodStore.successionKey(pred, node) ^ InsertionNogoodStore.successionKey(node, next));
+        propagate();
+    }
+
+    private void onExclude(int node) {
+        nExcluded.increment();
+        setContext(context() ^ InsertionNogoodStore.exclusionKey(node));
+        propagate();
+    }
+
+    @Override
+    public void propagate() {
+        if (store.size() == 0)
+            return;
+        // the context is only looked up once every event has been taken into account
+        if (nMember.value() != seq.nMember(true) || nExcluded.value() != seq.nExcluded())
+            return;
+        int entry = store.find(context());
+        if (entry < 0)
+            return;
+        for (int i = 0 ; i < store.nNogoods(entry) ; ++i) {
+            int pred = store.pred(entry, i);
+            int node = store.node(entry, i);
+            if (seq.isPossible(node) && seq.isPredInsert(pred, node))
+                seq.removePredInsert(pred, node);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.engine.core.OldSeqVar;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks the member insertions of possible nodes of a sequence in parallel, over a {@link ForkJoinPool}.
+ *
+ * The possible nodes are split into chunks, each one handled by a worker that only reads the state of the solver
+ * and collects the insertions found to be infeasible. The removals are applied afterwards on the calling thread,
+ * such that the trail is only modified by a single thread.
+ */
+public class ParallelInsertionFilter {
+
+    /**
+     * Check of an insertion, evaluated concurrently by the workers.
+     * It must not modify the state of the solver
+     */
+    @FunctionalInterface
+    public interface InsertionCheck {
+
+        /**
+         * Tells if a node can be inserted after a member predecessor
+         *
+         * @param pred member predecessor for the insertion
+         * @param node possible node to insert
+         * @return true if the insertion is feasible
+         */
+        boolean isFeasible(int pred, int node);
+    }
+
+    /**
+     * Default number of nodes in a sequence above which using the parallel filtering is worth it
+     */
+    public static final int DEFAULT_MIN_NODES = 300;
+
+    private static final int MIN_CHUNK_SIZE = 32; // minimum number of possible nodes handled by a worker
+
+    private final OldSeqVar seq;
+    private final InsertionCheck check;
+    private final ForkJoinPool pool;
+    private final Worker[] workers;
+
+    private int[] possible; // possible nodes being filtered, shared by the workers
+
+    /**
+     * Creates a parallel filter running on the common {@link ForkJoinPool}
+     *
+     * @param seq sequence whose member insertions are filtered
+     * @param check check telling if a member insertion is feasible
+     */
+    public ParallelInsertionFilter(OldSeqVar seq, InsertionCheck check) {
+        this(seq, check, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a parallel filter
+     *
+     * @param seq sequence whose member insertions are filtered
+     * @param check check telling if a member insertion is feasible
+     * @param pool pool of threads on which the checks are run
+     */
+    public ParallelInsertionFilter(OldSeqVar seq, InsertionCheck check, ForkJoinPool pool) {
+        this.seq = seq;
+        this.check = check;
+        this.pool = pool;
+        // the calling thread is also used as a worker
+        workers = new Worker[pool.getParallelism() + 1];
+        for (int i = 0 ; i < workers.length ; ++i)
+            workers[i] = new Worker(seq.nNode());
+    }
+
+    /**
+     * Removes the infeasible member insertions of the given possible nodes
+     *
+     * @param possible possible nodes whose member insertions are checked
+     * @param nPossible number of nodes to consider in possible
+     * @param unreachable array large enough, filled with the nodes from possible having no feasible member insertion
+     * @return number of nodes written into unreachable
+     */
+    public int filter(int[] possible, int nPossible, int[] unreachable) {
+        this.possible = possible;
+        int nWorkers = Math.max(1, Math.min(workers.length, nPossible / MIN_CHUNK_SIZE));
+        int chunkSize = nPossible / nWorkers;
+        int remainder = nPossible % nWorkers;
+        int from = 0;
+        for (int w = 0 ; w < nWorkers ; ++w) {
+            int to = from + chunkSize + (w < remainder ? 1 : 0);
+            workers[w].reinitialize();
+            workers[w].from = from;
+            workers[w].to = to;
+            from = to;
+        }
+        // the first chunk is handled by the calling thread
+        for (int w = 1 ; w < nWorkers ; ++w)
+            pool.execute(workers[w]);
+        workers[0].invoke();
+        for (int w = 1 ; w < nWorkers ; ++w)
+            workers[w].join();
+        // the state is only changed once all workers are done
+        int nUnreachable = 0;
+        for (int w = 0 ; w < nWorkers ; ++w) {
+            Worker worker = workers[w];
+            for (int i = 0 ; i < worker.nRemoved ; i += 2)
+                seq.removePredInsert(worker.removed[i], worker.removed[i + 1]);
+            System.arraycopy(worker.unreachable, 0, unreachable, nUnreachable, worker.nUnreachable);
+            nUnreachable += worker.nUnreachable;
+        }
+        return nUnreachable;
+    }
+
+    /**
+     * Checks the member insertions of possible[from..to-1] and records the infeasible ones
+     */
+    private class Worker extends RecursiveAction {
+
+        private static final long serialVersionUID = 6417239905112835843L;
+
+        private int from;
+        private int to;
+        private final int[] insertions; // used by fill operations on the sequence
+        private final int[] unreachable; // nodes without any feasible member insertion
+        private int nUnreachable;
+        private int[] removed; // pairs of (pred, node) insertions to remove
+        private int nRemoved;
+
+        private Worker(int nNodes) {
+            insertions = new int[nNodes];
+            unreachable = new int[nNodes];
+            removed = new int[2 * nNodes];
+        }
+
+        @Override
+        protected void compute() {
+            nRemoved = 0;
+            nUnreachable = 0;
+            for (int i = from ; i < to ; ++i) {
+                int node = possible[i];
+                int nInsert = seq.fillMemberPredInsert(node, insertions);
+                boolean foundInsert = false;
+                for (int j = 0 ; j < nInsert ; ++j) {
+                    int pred = insertions[j];
+                    if (check.isFeasible(pred, node)) {
+                        foundInsert = true;
+                    } else {
+                        if (nRemoved == removed.length)
+                            removed = Arrays.copyOf(removed, 2 * removed.length);
+                        removed[nRemoved++] = pred;
+                        removed[nRemoved++] = node;
+                    }
+                }
+                if (!foundInsert)
+                    unreachable[nUnreachable++] = node;
+            }
+        }
+    }
+}
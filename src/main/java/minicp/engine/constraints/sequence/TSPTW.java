@@ -11,18 +11,22 @@ public class TSPTW extends AbstractConstraint {
     private final IntVar[] time; // time window
     private final IntVar distance; // distance of the sequence
     private final int[][] transition; // transition cost matrix
+    private final int threshold; // maximum shortening of a transition by a visit in between, 0 under the triangular inequality
 
     private final int[] nodes; // used by fill operations on the sequence to retrieve nodes
     private final int[] insertions; // used by fill operations on the sequence to retrieve insertions
 
     private int nPossible; // number of possible nodes. Set at each propagation and reused in the differents methods
+    private ParallelInsertionFilter parallelFilter; // null unless the parallel filtering is enabled
 
     /**
      * create a TSPTW from a sequence variable
      *
      * same effect as using a {@link TransitionTimes} constraint, compute the bounds on the distance and giving a failure
      * when a node is excluded. This constraint is more performant as it reuses the same array without changing them, and
-     * is called once per propagation step when it is used alone
+     * is called once per propagation step when it is used alone.
+     * If the transitions do not respect the triangular inequality, the bounds on the distance are relaxed by
+     * {@link TransitionTimes#thresholdRespectTriangularInequality(int[][])} for each node that remains to insert
      *
      * @param seqVar sequence that will perform a TSPTW
      * @param time time of visit for each node
@@ -35,11 +39,24 @@ public class TSPTW extends AbstractConstraint {
         this.time = time;
         this.distance = distance;
         this.transition = transition;
+        this.threshold = TransitionTimes.thresholdRespectTriangularInequality(transition);
 
         nodes = new int[seqVar.nNode() + 2];
         insertions = new int[seqVar.nNode()];
     }
 
+    /**
+     * Enables the parallel check of the scheduled insertions from the time windows,
+     * for sequences with at least minNodes nodes.
+     * The removals found are still applied on the solver thread
+     *
+     * @param minNodes number of nodes in the sequence from which the checks are run in parallel
+     * @see ParallelInsertionFilter
+     */
+    public void setParallelFiltering(int minNodes) {
+        parallelFilter = seq.nNode() >= minNodes ? new ParallelInsertionFilter(seq, this::isFeasibleFromTW) : null;
+    }
+
     @Override
     public void post() {
         if (seq.nExcluded() > 0)
@@ -137,23 +154,21 @@ public class TSPTW extends AbstractConstraint {
      * and {@link TSPTW#nPossible} is set to the number of possible nodes
      */
     public void updateScheduledInsertionsFromTW() {
+        if (parallelFilter != null) {
+            if (parallelFilter.filter(nodes, nPossible, insertions) > 0)
+                throw INCONSISTENCY; // no scheduled insertion point exists for a node
+            return;
+        }
         for (int i = 0; i < nPossible; ++i) { // for all possible insertion ...
             int current = nodes[i];
             int nInsert = seq.fillMemberPredInsert(current, insertions);
             boolean foundInsert = false;
             for (int j = 0; j < nInsert; ++j) { // for all of its scheduled insertion point candidate ...
-                int pred = insertions[j];  // check that .. -> pred -> current -> succ -> .. is feasible
-                int succ = seq.nextMember(pred); // successor of the insertion
-                int timeReachingNode = time[pred].min() + transition[pred][current];
-                if (timeReachingNode > time[current].max()) // check that pred -> current is feasible
+                int pred = insertions[j];
+                if (isFeasibleFromTW(pred, current))
+                    foundInsert = true;
+                else
                     seq.removePredInsert(pred, current);
-                else { // check that current -> succ is feasible
-                    int timeDeparture = Math.max(timeReachingNode, time[current].min());
-                    if (timeDeparture + transition[current][succ] > time[succ].max())
-                        seq.removePredInsert(pred, current);
-                    else
-                        foundInsert = true;
-                }
             }
             if (!foundInsert) { // no scheduled insertion point exists for this node, inconsistency
                 throw INCONSISTENCY;
@@ -162,55 +177,53 @@ public class TSPTW extends AbstractConstraint {
     }
 
     /**
-     * set the new min and max for the distance
+     * tell if inserting a possible node after a member of the sequence respects the time windows
+     * only reads the state of the solver, such that it can be called concurrently by a {@link ParallelInsertionFilter}
+     * @param pred member predecessor of the insertion
+     * @param current possible node to insert
+     * @return true if .. -> pred -> current -> succ -> .. is feasible
+     */
+    private boolean isFeasibleFromTW(int pred, int current) {
+        int succ = seq.nextMember(pred); // successor of the insertion
+        int timeReachingNode = time[pred].min() + transition[pred][current];
+        if (timeReachingNode > time[current].max()) // check that pred -> current is feasible
+            return false;
+        // check that current -> succ is feasible
+        int timeDeparture = Math.max(timeReachingNode, time[current].min());
+        return timeDeparture + transition[current][succ] <= time[succ].max();
+    }
+
+    /**
+     * set the new lower bound for the distance, which is the current distance increased by the cheapest detour
+     * of the possible node that is the most costly to insert. Assuming that the transitions respect the triangular
+     * inequality, inserting the other nodes never decreases the distance, while the detours of several nodes
+     * inserted between the same members cannot be summed.
+     * Otherwise, inserting a node shortens the sequence by at most the threshold of the triangular inequality,
+     * which is deduced from the bound for each of the other possible nodes
      * {@link TSPTW#nodes} must be filled with the possible nodes of the sequence
      * and {@link TSPTW#nPossible} is set to the number of possible nodes
      * @param currentDistance current distance of the sequence (exact value)
      */
     public void setBoundDistance(int currentDistance) {
-        if (seq.nMember(false) == 0)
+        if (seq.isFixed()) {
+            distance.assign(currentDistance);
             return;
-        int minDetourSum = 0;
-        int maxDetourSum = 0;
+        }
+        int maxMinDetour = -threshold; // bound on the detour of the first insertion
         for (int i = 0; i < nPossible ; ++i) {
             int current = nodes[i];
-            int nInsert = seq.fillPredInsert(current, insertions);
+            int nInsert = seq.fillMemberPredInsert(current, insertions);
+            if (nInsert == 0)
+                continue; // can only be inserted after another possible node
             int minDetour = Integer.MAX_VALUE;
-            int maxDetour = Integer.MIN_VALUE;
-            boolean validInsert = false;
             for (int j = 0 ; j < nInsert ; ++j) {
                 int pred = insertions[j];
                 int succ = seq.nextMember(pred);
-                int detour;
-                if (seq.isMember(pred)) {
-                    // increase the current distance by inserting the node into the route
-                    detour = transition[pred][current] + transition[current][succ] - transition[pred][succ];
-                } else {
-                    detour = transition[pred][current] + transition[current][pred]; // multiply by 2 as we must go back to origin
-                }
-                if (detour + currentDistance > distance.max()) {
-                    seq.removePredInsert(pred, current); // cannot reach the node using this predecessor
-                } else {
-                    validInsert = true;
-                    minDetour = Math.min(minDetour, detour);
-                    maxDetour = Math.max(maxDetour, detour);
-                }
-            }
-            if (!validInsert) {
-                // no insertion for this node has been found as valid. Should be detected by the SequenceVar invariant
-                throw INCONSISTENCY;
+                minDetour = Math.min(minDetour, transition[pred][current] + transition[current][succ] - transition[pred][succ]);
             }
-            if (minDetour != Integer.MAX_VALUE) {
-                minDetourSum += minDetour;
-                maxDetourSum += maxDetour;
-            }
-        }
-        if (minDetourSum != 0) {
-            distance.removeAbove(currentDistance + maxDetourSum);
-            distance.removeBelow(currentDistance + minDetourSum);
-        } else if (seq.isFixed()) {
-            distance.assign(currentDistance);
+            maxMinDetour = Math.max(maxMinDetour, minDetour);
         }
+        distance.removeBelow(currentDistance + maxMinDetour - threshold * (nPossible - 1));
     }
 
     /**
@@ -220,7 +233,7 @@ public class TSPTW extends AbstractConstraint {
      * @param currentDistance current distance of the sequence (exact value)
      */
     public void updateScheduledInsertionsFromDist(int currentDistance) {
-        int maxDetour = distance.max() - currentDistance;
+        int maxDetour = distance.max() - currentDistance + threshold * (nPossible - 1);
         for (int i = 0; i < nPossible; ++i) { // for all possible insertion ...
             int current = nodes[i];
             int nInsert = seq.fillMemberPredInsert(current, insertions);
@@ -18,6 +18,8 @@ public class TransitionTimes extends AbstractConstraint {
 
     private int threshold;
     private final boolean useIncremental = false;
+    private int maxDetourAllowed; // maximum detour for inserting a node, set at each propagation
+    private ParallelInsertionFilter parallelFilter; // null unless the parallel filtering is enabled
 
     /**
      * tell if a distance matrix respect the triangular inequality
@@ -25,14 +27,17 @@ public class TransitionTimes extends AbstractConstraint {
      * @return true if the matrix respects the triangular inequality
      */
     public static boolean respectTriangularInequality(int[][] transition) {
-        for (int i = 0; i < transition.length ; ++i) {
-            for (int j = 0; j < transition.length ; ++j) { //transition[i,j] <= transition[i,k] + transition[k,j]
-                for (int k = 0 ; k < transition.length; ++k) {
-                    if (transition[i][j] > transition[i][k] + transition[k][j]) {
-                        //System.err.println(String.format("transition[%d][%d] > transition[%d][%d] + transition[%d][%d]" +
-                        //                "(%d > %d + %d)", i, j, i, k, k, j, transition[i][j], transition[i][k], transition[k][j]));
+        int min = minTransition(transition);
+        for (int[] fromI : transition) { //transition[i,j] <= transition[i,k] + transition[k,j]
+            int max = maxTransition(fromI);
+            for (int k = 0 ; k < transition.length; ++k) {
+                int ik = fromI[k];
+                if (ik + min >= max)
+                    continue; // no path through k can be shorter than a transition from i
+                int[] fromK = transition[k];
+                for (int j = 0; j < transition.length ; ++j) {
+                    if (fromI[j] > ik + fromK[j])
                         return false;
-                    }
                 }
             }
         }
@@ -46,16 +51,36 @@ public class TransitionTimes extends AbstractConstraint {
      */
     public static int thresholdRespectTriangularInequality(int[][] transition) {
         int threshold = 0;
-        for (int i = 0; i < transition.length ; ++i) {
-            for (int j = 0; j < transition.length ; ++j) { //transition[i,j] <= transition[i,k] + transition[k,j]
-                for (int k = 0 ; k < transition.length; ++k) {
-                    threshold = Math.max(threshold, transition[i][j] - (transition[i][k] + transition[k][j]));
-                }
+        int min = minTransition(transition);
+        for (int[] fromI : transition) { //transition[i,j] <= transition[i,k] + transition[k,j]
+            int max = maxTransition(fromI);
+            for (int k = 0 ; k < transition.length; ++k) {
+                int ik = fromI[k];
+                if (max - ik - min <= threshold)
+                    continue; // the paths through k cannot increase the threshold
+                int[] fromK = transition[k];
+                for (int j = 0; j < transition.length ; ++j)
+                    threshold = Math.max(threshold, fromI[j] - (ik + fromK[j]));
             }
         }
         return threshold;
     }
 
+    private static int minTransition(int[][] transition) {
+        int min = Integer.MAX_VALUE;
+        for (int[] from : transition)
+            for (int t : from)
+                min = Math.min(min, t);
+        return min;
+    }
+
+    private static int maxTransition(int[] from) {
+        int max = Integer.MIN_VALUE;
+        for (int t : from)
+            max = Math.max(max, t);
+        return max;
+    }
+
     /**
      * connect transition in a sequence with the service time of nodes and distances between them
      * remove values of insertions points based on the transition in the sequence and their timing
@@ -117,6 +142,17 @@ public class TransitionTimes extends AbstractConstraint {
         //threshold = thresholdRespectTriangularInequality(transition);
     }
 
+    /**
+     * Enables the parallel check of the scheduled insertions, for sequences with at least minNodes nodes.
+     * The removals found are still applied on the solver thread
+     *
+     * @param minNodes number of nodes in the sequence from which the checks are run in parallel
+     * @see ParallelInsertionFilter
+     */
+    public void setParallelFiltering(int minNodes) {
+        parallelFilter = seq.nNode() >= minNodes ? new ParallelInsertionFilter(seq, this::isFeasibleInsertion) : null;
+    }
+
     @Override
     public void post() {
         updatePossibleInsertions();
@@ -199,31 +235,23 @@ public class TransitionTimes extends AbstractConstraint {
      */
     private void updateScheduledInsertions(int currentDistance) {
         int size = seq.fillPossible(insertionsVar);
-        int maxDetourAllowed = distance != null ? distance.max() - currentDistance : Integer.MAX_VALUE;
+        maxDetourAllowed = distance != null ? distance.max() - currentDistance : Integer.MAX_VALUE;
+        if (parallelFilter != null) {
+            int nUnreachable = parallelFilter.filter(insertionsVar, size, insertionsPoint);
+            for (int i = 0; i < nUnreachable; ++i) // no scheduled insertion point existed for this node, remove it
+                seq.exclude(insertionsPoint[i]);
+            return;
+        }
         for (int i = 0; i < size; ++i) { // for all possible insertion ...
             int current = insertionsVar[i];
             int nInsert = seq.fillMemberPredInsert(current, insertionsPoint);
             boolean foundInsert = false;
             for (int j = 0; j < nInsert; ++j) { // for all of its scheduled insertion point candidate ...
-                int pred = insertionsPoint[j];  // check that .. -> pred -> current -> succ -> .. is feasible
-                int succ = seq.nextMember(pred); // successor of the insertion
-                int timeReachingNode = time[pred].min() + serviceTime[pred] + transition[pred][current];
-                if (timeReachingNode > time[current].max()) // check that pred -> current is feasible
+                int pred = insertionsPoint[j];
+                if (isFeasibleInsertion(pred, current))
+                    foundInsert = true;
+                else
                     seq.removePredInsert(pred, current);
-                else { // check that current -> succ is feasible
-                    int timeDeparture = Math.max(timeReachingNode, time[current].min());
-                    if (timeDeparture + serviceTime[current] + transition[current][succ] > time[succ].max()) {
-                        seq.removePredInsert(pred, current);
-                    } else if (distance != null) { // check that doing the transition does not exceed the maximum distance
-                        int detour = transition[pred][current] + transition[current][succ] - transition[pred][succ];
-                        if (detour > maxDetourAllowed) // detour is too long
-                            seq.removePredInsert(pred, current);
-                        else
-                            foundInsert = true;
-                    } else {
-                        foundInsert = true;
-                    }
-                }
             }
             if (!foundInsert) { // no scheduled insertion point existed for this node, remove it
                 seq.exclude(current);
@@ -231,6 +259,30 @@ public class TransitionTimes extends AbstractConstraint {
         }
     }
 
+    /**
+     * tell if inserting a possible node after a member of the sequence is feasible
+     * only reads the state of the solver, such that it can be called concurrently by a {@link ParallelInsertionFilter}
+     * @param pred member predecessor of the insertion
+     * @param current possible node to insert
+     * @return true if the insertion respects the time windows and the maximum detour allowed
+     */
+    private boolean isFeasibleInsertion(int pred, int current) {
+        // check that .. -> pred -> current -> succ -> .. is feasible
+        int succ = seq.nextMember(pred); // successor of the insertion
+        int timeReachingNode = time[pred].min() + serviceTime[pred] + transition[pred][current];
+        if (timeReachingNode > time[current].max()) // check that pred -> current is feasible
+            return false;
+        // check that current -> succ is feasible
+        int timeDeparture = Math.max(timeReachingNode, time[current].min());
+        if (timeDeparture + serviceTime[current] + transition[current][succ] > time[succ].max())
+            return false;
+        if (distance != null) { // check that doing the transition does not exceed the maximum distance
+            int detour = transition[pred][current] + transition[current][succ] - transition[pred][succ];
+            return detour <= maxDetourAllowed; // otherwise the detour is too long
+        }
+        return true;
+    }
+
     private void updatePossibleInsertions() {
         int size = seq.fillPossible(insertionsVar);
         for (int i = 0; i < size; ++i) {
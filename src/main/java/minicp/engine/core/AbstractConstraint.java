@@ -16,12 +16,16 @@
 package minicp.engine.core;
 
 
-import minicp.state.State;
+import minicp.state.StateManager;
 
 
 /**
  * Abstract class the most of the constraints
  * should extend.
+ * <p>The active status is stored by the solver, in a bit-set shared by all the constraints
+ * {@link Solver#registerConstraint()}. As the identifiers are reused once the state in which
+ * the constraint was created is restored {@link StateManager#restoreState()},
+ * a constraint must not be used below the state in which it was created.
  */
 public abstract class AbstractConstraint implements Constraint {
 
@@ -30,11 +34,11 @@ public abstract class AbstractConstraint implements Constraint {
      */
     private final Solver cp;
     private boolean scheduled = false;
-    private final State<Boolean> active;
+    private final int id;
 
     public AbstractConstraint(Solver cp) {
         this.cp = cp;
-        active = cp.getStateManager().makeStateRef(true);
+        id = cp.registerConstraint();
     }
 
     public void post() {
@@ -56,10 +60,10 @@ public abstract class AbstractConstraint implements Constraint {
     }
 
     public void setActive(boolean active) {
-        this.active.setValue(active);
+        cp.setActive(id, active);
     }
 
     public boolean isActive() {
-        return active.value();
+        return cp.isActive(id);
     }
 }
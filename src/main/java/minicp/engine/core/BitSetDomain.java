@@ -0,0 +1,193 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.engine.core;
+
+
+import minicp.state.StateLong;
+import minicp.state.StateManager;
+
+
+/**
+ * Implementation of a domain with a single reversible 64 bits word.
+ * Value {@code min + i} belongs to the domain iff the ith bit of the word is set.
+ * Only usable for ranges of at most {@link #MAX_SIZE} values,
+ * but every operation is a constant number of bit manipulations
+ * and the whole domain is saved as one primitive {@link StateLong} by the {@link StateManager}.
+ */
+public class BitSetDomain implements IntDomain {
+
+    /**
+     * Maximum number of values that can be represented
+     */
+    public static final int MAX_SIZE = 64;
+
+    private final int offset;
+    private final StateLong word;
+
+    /**
+     * Creates a domain with the values {@code {min,...,max}}.
+     *
+     * @param sm the state manager in charge of saving and restoring the domain
+     * @param min the minimum value of the domain
+     * @param max the maximum value of the domain with {@code max >= min} and {@code max - min < MAX_SIZE}
+     */
+    public BitSetDomain(StateManager sm, int min, int max) {
+        if (!fits(min, max))
+            throw new IllegalArgumentException("a bitset domain holds at most " + MAX_SIZE + " values, got [" + min + ".." + max + "]");
+        this.offset = min;
+        int n = max - min + 1;
+        word = sm.makeStateLong(n == MAX_SIZE ? -1L : (1L << n) - 1);
+    }
+
+    /**
+     * Tells if the range {@code {min,...,max}} can be represented with a {@link BitSetDomain}.
+     *
+     * @param min the minimum value of the range
+     * @param max the maximum value of the range
+     * @return true if the range is not empty and contains at most {@link #MAX_SIZE} values
+     */
+    public static boolean fits(int min, int max) {
+        return min <= max && (long) max - min < MAX_SIZE;
+    }
+
+    // index of the bit related to a value, or -1 if the value is outside of the initial range
+    private int index(int v) {
+        long i = (long) v - offset;
+        return i >= 0 && i < MAX_SIZE ? (int) i : -1;
+    }
+
+    @Override
+    public int fillArray(int[] dest) {
+        long w = word.value();
+        int s = 0;
+        while (w != 0L) {
+            dest[s++] = offset + Long.numberOfTrailingZeros(w);
+            w &= w - 1; // unset the lowest bit
+        }
+        return s;
+    }
+
+    @Override
+    public int min() {
+        return offset + Long.numberOfTrailingZeros(word.value());
+    }
+
+    @Override
+    public int max() {
+        return offset + (MAX_SIZE - 1) - Long.numberOfLeadingZeros(word.value());
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(word.value());
+    }
+
+    @Override
+    public boolean contains(int v) {
+        int i = index(v);
+        return i >= 0 && (word.value() & (1L << i)) != 0L;
+    }
+
+    @Override
+    public boolean isBound() {
+        return size() == 1;
+    }
+
+    @Override
+    public void remove(int v, DomainListener l) {
+        if (contains(v)) {
+            boolean maxChanged = max() == v;
+            boolean minChanged = min() == v;
+            long w = word.setValue(word.value() & ~(1L << index(v)));
+            if (w == 0L)
+                l.empty();
+            l.change();
+            if (maxChanged) l.changeMax();
+            if (minChanged) l.changeMin();
+            if (Long.bitCount(w) == 1) l.bind();
+        }
+    }
+
+    @Override
+    public void removeAllBut(int v, DomainListener l) {
+        if (contains(v)) {
+            if (size() != 1) {
+                boolean maxChanged = max() != v;
+                boolean minChanged = min() != v;
+                word.setValue(1L << index(v));
+                l.bind();
+                l.change();
+                if (maxChanged) l.changeMax();
+                if (minChanged) l.changeMin();
+            }
+        } else {
+            word.setValue(0L);
+            l.empty();
+        }
+    }
+
+    @Override
+    public void removeBelow(int value, DomainListener l) {
+        if (min() < value) {
+            long i = (long) value - offset; // i > 0 as value > min() >= offset
+            long w = word.setValue(i >= MAX_SIZE ? 0L : word.value() & (-1L << i));
+            switch (Long.bitCount(w)) {
+                case 0:
+                    l.empty();
+                    break;
+                case 1:
+                    l.bind();
+                default:
+                    l.changeMin();
+                    l.change();
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void removeAbove(int value, DomainListener l) {
+        if (max() > value) {
+            long i = (long) value - offset; // i < MAX_SIZE - 1 as value < max()
+            long w = word.setValue(i < 0 ? 0L : word.value() & ((1L << (i + 1)) - 1));
+            switch (Long.bitCount(w)) {
+                case 0:
+                    l.empty();
+                    break;
+                case 1:
+                    l.bind();
+                default:
+                    l.changeMax();
+                    l.change();
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (size() == 0) return "{}";
+        StringBuilder b = new StringBuilder();
+        b.append("{");
+        for (int i = min(); i < max(); i++)
+            if (contains((i)))
+                b.append(i).append(',');
+        b.append(max());
+        b.append("}");
+        return b.toString();
+    }
+
+}
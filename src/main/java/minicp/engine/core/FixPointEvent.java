@@ -0,0 +1,45 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.engine.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a fix-point computed by {@link MiniCP#fixPoint()}.
+ * As a fix-point is computed at each node of a search, the event is disabled by default
+ * and must be enabled in the configuration of the recording, possibly with a threshold on its duration.
+ */
+@Name("minicp.FixPoint")
+@Label("Fix-Point")
+@Category({"MiniCP", "Propagation"})
+@Description("Propagation of the scheduled constraints until a fix-point or a failure")
+@Enabled(false)
+@StackTrace(false)
+public class FixPointEvent extends jdk.jfr.Event {
+
+    @Label("Propagations")
+    @Description("Number of constraints propagated")
+    long propagations;
+
+    @Label("Failed")
+    @Description("True if the fix-point has thrown an inconsistency")
+    boolean failed;
+}
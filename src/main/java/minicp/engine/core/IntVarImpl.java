@@ -25,7 +25,7 @@ import java.util.Set;
 
 /**
  * Implementation of a variable
- * with a {@link SparseSetDomain}.
+ * with a {@link SparseSetDomain} or any other {@link IntDomain}.
  */
 public class IntVarImpl implements IntVar {
 
@@ -103,6 +103,23 @@ public class IntVarImpl implements IntVar {
         onBounds = new StateStack<>(cp.getStateManager());
     }
 
+    /**
+     * Creates a variable with a given domain implementation.
+     *
+     * @param cp the solver in which the variable is created
+     * @param domain the initial domain, it must be nonempty and
+     *               reversible through the state manager of the solver
+     */
+    public IntVarImpl(Solver cp, IntDomain domain) {
+        if (domain.size() == 0) throw new InvalidParameterException("at least one setValue in the domain");
+        if (domain.min() == Integer.MIN_VALUE || domain.max() == Integer.MAX_VALUE) throw new InvalidParameterException("consider reducing the domains, Integer.MIN _VALUE and Integer.MAX_VALUE not allowed");
+        this.cp = cp;
+        this.domain = domain;
+        onDomain = new StateStack<>(cp.getStateManager());
+        onBind = new StateStack<>(cp.getStateManager());
+        onBounds = new StateStack<>(cp.getStateManager());
+    }
+
     /**
      * Creates a variable with a given set of values as initial domain.
      *
@@ -17,29 +17,38 @@ package minicp.engine.core;
 
 import minicp.cp.Factory;
 import minicp.search.Objective;
+import minicp.state.StateBitSet;
+import minicp.state.StateInt;
 import minicp.state.StateManager;
 import minicp.state.StateStack;
 import minicp.util.exception.InconsistencyException;
 import minicp.util.Procedure;
 
 import java.util.ArrayDeque;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Queue;
 
 
 public class MiniCP implements Solver {
 
     private Queue<Constraint> propagationQueue = new ArrayDeque<>();
-    private List<Procedure> fixPointListeners = new LinkedList<>();
+    private final StateStack<Procedure> fixPointListeners;
 
     private final StateManager sm;
 
     private final StateStack<IntVar> vars;
 
+    private final StateInt nConstraints;
+    private final StateBitSet inactive; // bits of the constraints that are deactivated
+
+    private long nFixPoints = 0;
+    private long nPropagations = 0;
+
     public MiniCP(StateManager sm) {
         this.sm = sm;
         vars = new StateStack<>(sm);
+        fixPointListeners = new StateStack<>(sm);
+        nConstraints = sm.makeStateInt(0);
+        inactive = new StateBitSet(sm);
     }
 
     @Override
@@ -54,34 +63,77 @@ public class MiniCP implements Solver {
         }
     }
 
+    @Override
+    public int registerConstraint() {
+        int id = nConstraints.value();
+        nConstraints.setValue(id + 1);
+        return id;
+    }
+
+    @Override
+    public void setActive(int id, boolean active) {
+        inactive.set(id, !active);
+    }
+
+    @Override
+    public boolean isActive(int id) {
+        return !inactive.get(id);
+    }
+
     @Override
     public void onFixPoint(Procedure listener) {
-        fixPointListeners.add(listener);
+        fixPointListeners.push(listener);
     }
 
     private void notifyFixPoint() {
-        fixPointListeners.forEach(s -> s.call());
+        for (int i = 0; i < fixPointListeners.size(); i++)
+            fixPointListeners.get(i).call();
     }
 
     @Override
     public void fixPoint() {
+        nFixPoints++;
+        // the event is not allocated by the compiler when it is disabled
+        FixPointEvent event = new FixPointEvent();
+        event.begin();
+        long propagationsAtStart = nPropagations;
+        boolean failed = true;
         try {
             notifyFixPoint();
             while (!propagationQueue.isEmpty()) {
                 propagate(propagationQueue.remove());
             }
+            failed = false;
         } catch (InconsistencyException e) {
             // empty the queue and unset the scheduled status
             while (!propagationQueue.isEmpty())
                 propagationQueue.remove().setScheduled(false);
             throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.propagations = nPropagations - propagationsAtStart;
+                event.failed = failed;
+                event.commit();
+            }
         }
     }
 
     private void propagate(Constraint c) {
         c.setScheduled(false);
-        if (c.isActive())
+        if (c.isActive()) {
+            nPropagations++;
             c.propagate();
+        }
+    }
+
+    @Override
+    public long numberOfFixPoints() {
+        return nFixPoints;
+    }
+
+    @Override
+    public long numberOfPropagations() {
+        return nPropagations;
     }
 
     @Override
@@ -48,11 +48,53 @@ public interface Solver {
      */
     void post(Constraint c, boolean enforceFixPoint);
 
+    /**
+     * Registers a new constraint whose active status is stored by the solver.
+     * The identifiers of the constraints created within a state
+     * are reused once this state is restored {@link StateManager#restoreState()}.
+     *
+     * @return the identifier of the constraint
+     * @see #setActive(int, boolean)
+     */
+    int registerConstraint();
+
+    /**
+     * Activates or deactivates a registered constraint.
+     * The status is reversible and unset on state restoration {@link StateManager#restoreState()}.
+     *
+     * @param id the identifier of the constraint given by {@link #registerConstraint()}
+     * @param active the status to be set
+     */
+    void setActive(int id, boolean active);
+
+    /**
+     * Returns the active status of a registered constraint.
+     *
+     * @param id the identifier of the constraint given by {@link #registerConstraint()}
+     * @return true if the constraint is active, which is the case by default
+     */
+    boolean isActive(int id);
+
     /**
      * Computes the fix-point with all the scheduled constraints.
      */
     void fixPoint();
 
+    /**
+     * Returns the number of fix-points computed since the creation of the solver.
+     *
+     * @return the number of calls to {@link #fixPoint()}
+     */
+    long numberOfFixPoints();
+
+    /**
+     * Returns the number of propagations of active constraints
+     * done by the fix-points since the creation of the solver.
+     *
+     * @return the number of calls to {@link Constraint#propagate()} made by {@link #fixPoint()}
+     */
+    long numberOfPropagations();
+
     /**
      * Returns the state manager in charge of the global
      * state of the solver.
@@ -63,6 +105,8 @@ public interface Solver {
 
     /**
      * Adds a listener called whenever the fix-point.
+     * Like the constraints, the listener is removed when the state
+     * in which it was added is restored {@link StateManager#restoreState()}.
      *
      * @param listener the listener that is called whenever the fix-point is started
      */
@@ -0,0 +1,54 @@
+package minicp.examples.tsptw;
+
+import minicp.search.SearchStatistics;
+
+/**
+ * Node limit of the searches of a large neighborhood search, adapted after each search.
+ *
+ * When a search reaches the limit without improving and fails on most of its nodes, the neighborhood
+ * is too hard to explore within the limit, which grows.
+ * When a search improves the solution or explores the whole neighborhood, the limit shrinks toward
+ * twice the number of nodes that the search needed, so that the next neighborhoods are tried sooner.
+ */
+class AdaptiveNodeLimit {
+
+    static final int NODES_PER_INSTANCE_NODE = 10; // initial limit for each node of the instance
+    static final int MIN_LIMIT = 100;
+    static final int MAX_NODES_PER_INSTANCE_NODE = 200; // maximum limit for each node of the instance
+    static final double GROWTH = 1.5; // factor by which the limit grows or shrinks at most at each update
+    static final double FAILURE_RATIO = 0.5; // ratio of failed nodes from which a search is considered stuck
+
+    private final int max;
+    private int limit;
+
+    /**
+     * Creates a node limit scaled to the size of an instance
+     * @param nNodes number of nodes of the instance
+     */
+    AdaptiveNodeLimit(int nNodes) {
+        max = Math.max(MIN_LIMIT, MAX_NODES_PER_INSTANCE_NODE * nNodes);
+        limit = Math.min(max, Math.max(MIN_LIMIT, NODES_PER_INSTANCE_NODE * nNodes));
+    }
+
+    /**
+     * @return maximum number of nodes of the next search
+     */
+    int value() {
+        return limit;
+    }
+
+    /**
+     * Adapts the limit from the outcome of a search
+     * @param stats statistics of the search
+     * @param improved true if the search has improved the solution
+     */
+    void update(SearchStatistics stats, boolean improved) {
+        long nodes = stats.numberOfNodes();
+        if (improved || stats.isCompleted()) {
+            int target = (int) Math.min(Integer.MAX_VALUE, 2 * nodes);
+            limit = Math.max(MIN_LIMIT, Math.min(limit, Math.max(target, (int) (limit / GROWTH))));
+        } else if (nodes > 0 && stats.numberOfFailures() >= FAILURE_RATIO * nodes) {
+            limit = (int) Math.min(max, limit * GROWTH);
+        }
+    }
+}
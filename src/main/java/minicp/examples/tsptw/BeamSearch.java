@@ -0,0 +1,402 @@
+package minicp.examples.tsptw;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Restricted dynamic programming building the tours of a TSPTW instance forward, starting from the depot.
+ *
+ * The states of the kth layer are the partial routes visiting k nodes besides the depot, summarized by
+ * their last node, their set of visited nodes and their arrival time at the last node (waiting included).
+ * The states having the same last node and the same visited nodes are merged, keeping the earliest arrival
+ * time and then the shortest distance, as any completion of one is a completion of the other.
+ * Only the {@code width} states with the earliest arrival times are kept in each layer.
+ *
+ * A state is extended to an unvisited node if the node is reached within its time window, and if the most urgent
+ * unvisited node (the one with the earliest closing time) can still be reached directly afterwards.
+ * The expansions of the states of a layer are split into chunks, handled in parallel over a {@link ForkJoinPool}.
+ * All arrays are allocated once for a given width.
+ */
+class BeamSearch {
+
+    private static final int MIN_CHUNK_SIZE = 16; // minimum number of states expanded by a worker
+    private static final int NONE = -1;
+
+    private final int n; // number of nodes, depot included
+    private final int[][] distances;
+    private final int[] twStart;
+    private final int[] twEnd;
+    private final int words; // number of longs in a set of visited nodes
+    private final long[] nodeKey; // Zobrist key of each node within a set of visited nodes
+    private final long[] lastKey; // Zobrist key of each node as the last node of a state
+    private final ForkJoinPool pool;
+
+    private int width;
+
+    // states of the current and of the next layer
+    private int[] last;
+    private int[] time;
+    private int[] cost;
+    private long[] setKey; // Zobrist hash of the visited nodes of each state
+    private long[] visited; // visited nodes of state i in [i * words, (i + 1) * words)
+    private int[] nextLast;
+    private int[] nextTime;
+    private int[] nextCost;
+    private long[] nextSetKey;
+    private long[] nextVisited;
+    private int[][] parent; // parent[k][i]: index in layer k - 1 of the parent of state i of layer k
+    private int[][] lastOf; // lastOf[k][i]: last node of state i of layer k
+
+    // children of the states of the current layer, those of state i being in [i * n, i * n + nChildren[i])
+    private int[] childNode;
+    private int[] childTime;
+    private int[] childCost;
+    private int[] nChildren;
+
+    // duplicate elimination and selection of the children
+    private int[] slots; // open addressing table of the children, holding child + 1, 0 if the slot is empty
+    private long[] slotHash;
+    private long[] rank; // (time << 32 | index in kept) of the children kept
+    private int[] kept;
+
+    /**
+     * Creates a beam search over an instance
+     *
+     * @param n number of nodes, the depot being node 0
+     * @param distances distances between the nodes
+     * @param twStart opening time of the time window of each node
+     * @param twEnd closing time of the time window of each node
+     */
+    BeamSearch(int n, int[][] distances, int[] twStart, int[] twEnd) {
+        this(n, distances, twStart, twEnd, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a beam search over an instance
+     *
+     * @param n number of nodes, the depot being node 0
+     * @param distances distances between the nodes
+     * @param twStart opening time of the time window of each node
+     * @param twEnd closing time of the time window of each node
+     * @param pool pool of threads on which the states are expanded
+     */
+    BeamSearch(int n, int[][] distances, int[] twStart, int[] twEnd, ForkJoinPool pool) {
+        this.n = n;
+        this.distances = distances;
+        this.twStart = twStart;
+        this.twEnd = twEnd;
+        this.pool = pool;
+        this.words = (n + 63) >>> 6;
+        SplittableRandom random = new SplittableRandom(42);
+        nodeKey = new long[n];
+        lastKey = new long[n];
+        for (int i = 0 ; i < n ; ++i) {
+            nodeKey[i] = random.nextLong();
+            lastKey[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Gives the maximum width for which the arrays of the search hold within a reasonable memory
+     *
+     * @param n number of nodes, depot included
+     * @return maximum width that can be given to {@link #solve(int, BooleanSupplier)}
+     */
+    static int maxWidth(int n) {
+        return Math.max(1, (1 << 21) / Math.max(1, n));
+    }
+
+    /**
+     * Builds a tour with a beam of a given width
+     *
+     * @param width maximum number of states kept in each layer
+     * @param stop tested between two layers, stops the search when it becomes true
+     * @return tour {0, v1, ..., v(n-1), 0} with the shortest distance among the tours in the last layer,
+     *         or null if no tour was found within the width or if the search was stopped
+     */
+    int[] solve(int width, BooleanSupplier stop) {
+        if (width < 1 || width > maxWidth(n))
+            throw new IllegalArgumentException("the width should be in [1.." + maxWidth(n) + "]");
+        allocate(width);
+        // layer 0: the depot
+        int size = 1;
+        last[0] = 0;
+        time[0] = twStart[0];
+        cost[0] = 0;
+        setKey[0] = nodeKey[0];
+        Arrays.fill(visited, 0, words, 0L);
+        visited[0] = 1L;
+        lastOf[0][0] = 0;
+        parent[0][0] = NONE;
+        for (int k = 1 ; k < n ; ++k) {
+            if (stop.getAsBoolean())
+                return null;
+            expand(size);
+            size = select(k, size);
+            if (size == 0)
+                return null;
+        }
+        return close(size);
+    }
+
+    private void allocate(int width) {
+        if (this.width == width)
+            return;
+        this.width = width;
+        last = new int[width];
+        time = new int[width];
+        cost = new int[width];
+        setKey = new long[width];
+        visited = new long[width * words];
+        nextLast = new int[width];
+        nextTime = new int[width];
+        nextCost = new int[width];
+        nextSetKey = new long[width];
+        nextVisited = new long[width * words];
+        parent = new int[n][width];
+        lastOf = new int[n][width];
+        childNode = new int[width * n];
+        childTime = new int[width * n];
+        childCost = new int[width * n];
+        nChildren = new int[width];
+        slots = new int[Integer.highestOneBit(Math.max(1, 2 * width * n - 1)) << 1];
+        slotHash = new long[slots.length];
+        rank = new long[width * n];
+        kept = new int[width * n];
+    }
+
+    /**
+     * Computes the children of the states of the current layer, in parallel
+     */
+    private void expand(int size) {
+        new Expansion(0, size).invokeIn(pool);
+    }
+
+    private final class Expansion extends RecursiveAction {
+
+        private static final long serialVersionUID = -3180562290871442617L;
+
+        private final int from;
+        private final int to;
+
+        private Expansion(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private void invokeIn(ForkJoinPool pool) {
+            if (to - from <= MIN_CHUNK_SIZE)
+                compute();
+            else
+                pool.invoke(this);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MIN_CHUNK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Expansion(from, mid), new Expansion(mid, to));
+                return;
+            }
+            for (int i = from ; i < to ; ++i)
+                expandState(i);
+        }
+    }
+
+    private boolean isVisited(long[] sets, int state, int node) {
+        return (sets[state * words + (node >>> 6)] & (1L << node)) != 0;
+    }
+
+    /**
+     * Computes the children of a state of the current layer
+     */
+    private void expandState(int i) {
+        int l = last[i];
+        int t = time[i];
+        // the two unvisited nodes closing the earliest
+        int urgent = NONE;
+        int secondUrgent = NONE;
+        for (int u = 1 ; u < n ; ++u) {
+            if (isVisited(visited, i, u))
+                continue;
+            if (urgent == NONE || twEnd[u] < twEnd[urgent]) {
+                secondUrgent = urgent;
+                urgent = u;
+            } else if (secondUrgent == NONE || twEnd[u] < twEnd[secondUrgent]) {
+                secondUrgent = u;
+            }
+        }
+        int offset = i * n;
+        int nChild = 0;
+        for (int j = 1 ; j < n ; ++j) {
+            if (isVisited(visited, i, j))
+                continue;
+            int arrival = Math.max(t + distances[l][j], twStart[j]);
+            if (arrival > twEnd[j])
+                continue;
+            int u = j == urgent ? secondUrgent : urgent;
+            if (u != NONE && arrival + distances[j][u] > twEnd[u])
+                continue;
+            childNode[offset + nChild] = j;
+            childTime[offset + nChild] = arrival;
+            childCost[offset + nChild] = cost[i] + distances[l][j];
+            nChild++;
+        }
+        nChildren[i] = nChild;
+    }
+
+    /**
+     * Merges the children having the same last node and visited nodes,
+     * and keeps the ones with the earliest arrival times as the next layer
+     *
+     * @param k index of the next layer
+     * @param size number of states in the current layer
+     * @return number of states in the next layer
+     */
+    private int select(int k, int size) {
+        Arrays.fill(slots, 0);
+        int mask = slots.length - 1;
+        int nKept = 0;
+        for (int i = 0 ; i < size ; ++i) {
+            for (int c = i * n ; c < i * n + nChildren[i] ; ++c) {
+                int j = childNode[c];
+                long hash = setKey[i] ^ nodeKey[j] ^ lastKey[j];
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while (true) {
+                    int other = slots[slot] - 1;
+                    if (other < 0) {
+                        slots[slot] = c + 1;
+                        slotHash[slot] = hash;
+                        kept[nKept++] = c;
+                        break;
+                    }
+                    if (slotHash[slot] == hash && childNode[other] == j && sameParentSet(i, other / n)) {
+                        if (childTime[c] < childTime[other]
+                                || (childTime[c] == childTime[other] && childCost[c] < childCost[other])) {
+                            // the new child dominates the stored one, and takes its place in kept
+                            childNode[other] = NONE;
+                            slots[slot] = c + 1;
+                            kept[nKept++] = c;
+                        }
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
+        // ranks the children that are not dominated by their arrival time
+        int nRank = 0;
+        for (int r = 0 ; r < nKept ; ++r) {
+            int c = kept[r];
+            if (childNode[c] != NONE)
+                rank[nRank++] = ((long) childTime[c] << 32) | r;
+        }
+        int nextSize = Math.min(width, nRank);
+        if (nextSize < nRank)
+            selectSmallest(rank, nRank, nextSize);
+        for (int s = 0 ; s < nextSize ; ++s) {
+            int c = kept[(int) rank[s]];
+            int i = c / n;
+            int j = childNode[c];
+            nextLast[s] = j;
+            nextTime[s] = childTime[c];
+            nextCost[s] = childCost[c];
+            nextSetKey[s] = setKey[i] ^ nodeKey[j];
+            System.arraycopy(visited, i * words, nextVisited, s * words, words);
+            nextVisited[s * words + (j >>> 6)] |= 1L << j;
+            parent[k][s] = i;
+            lastOf[k][s] = j;
+        }
+        swapLayers();
+        return nextSize;
+    }
+
+    private boolean sameParentSet(int a, int b) {
+        if (setKey[a] != setKey[b])
+            return false;
+        for (int w = 0 ; w < words ; ++w)
+            if (visited[a * words + w] != visited[b * words + w])
+                return false;
+        return true;
+    }
+
+    private void swapLayers() {
+        int[] tmp = last; last = nextLast; nextLast = tmp;
+        tmp = time; time = nextTime; nextTime = tmp;
+        tmp = cost; cost = nextCost; nextCost = tmp;
+        long[] tmpLong = setKey; setKey = nextSetKey; nextSetKey = tmpLong;
+        tmpLong = visited; visited = nextVisited; nextVisited = tmpLong;
+    }
+
+    /**
+     * Moves the k smallest values of a[0..size) into a[0..k), in any order
+     */
+    private static void selectSmallest(long[] a, int size, int k) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo < hi) {
+            // median of three as pivot
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < a[lo]) swap(a, mid, lo);
+            if (a[hi] < a[lo]) swap(a, hi, lo);
+            if (a[hi] < a[mid]) swap(a, hi, mid);
+            long pivot = a[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k - 1 <= j)
+                hi = j;
+            else if (k - 1 >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    /**
+     * Closes the states of the last layer by going back to the depot
+     *
+     * @param size number of states in the last layer
+     * @return shortest tour, or null if no state can reach the depot in time
+     */
+    private int[] close(int size) {
+        int best = NONE;
+        int bestCost = Integer.MAX_VALUE;
+        for (int i = 0 ; i < size ; ++i) {
+            int l = last[i];
+            if (time[i] + distances[l][0] > twEnd[0])
+                continue;
+            int c = cost[i] + distances[l][0];
+            if (c < bestCost) {
+                bestCost = c;
+                best = i;
+            }
+        }
+        if (best == NONE)
+            return null;
+        int[] tour = new int[n + 1];
+        int s = best;
+        for (int k = n - 1 ; k > 0 ; --k) {
+            tour[k] = lastOf[k][s];
+            s = parent[k][s];
+        }
+        return tour; // tour[0] = tour[n] = 0, the depot
+    }
+}
@@ -1,6 +1,5 @@
 package minicp.examples.tsptw;
 
-import minicp.engine.constraints.sequence.Insert;
 import minicp.engine.core.IntVar;
 import minicp.engine.core.OldSeqVar;
 import minicp.util.Procedure;
@@ -11,6 +10,7 @@ import java.util.Random;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static minicp.cp.Factory.insert;
 import static minicp.util.exception.InconsistencyException.INCONSISTENCY;
 
 public class Branching {
@@ -212,7 +212,7 @@ public class Branching {
                 int pred = nodes[i];
                 branchingRange[i] = i;
                 heuristicVal[i] = detourCost(node, pred, OldSeqVar, tw, dist);
-                branching[i] = () -> OldSeqVar.getSolver().post(new Insert(OldSeqVar, pred, node));
+                branching[i] = () -> insert(OldSeqVar, pred, node);
             }
             // sort according to the detourAndSlackCost
             Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
@@ -234,7 +234,7 @@ public class Branching {
                 int pred = nodes[i];
                 branchingRange[i] = i;
                 heuristicVal[i] = slackCost(node, pred, OldSeqVar, tw, dist);
-                branching[i] = () -> OldSeqVar.getSolver().post(new Insert(OldSeqVar, pred, node));
+                branching[i] = () -> insert(OldSeqVar, pred, node);
             }
             // sort according to the detourAndSlackCost
             Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
@@ -256,7 +256,7 @@ public class Branching {
                 int pred = nodes[i];
                 branchingRange[i] = i;
                 heuristicVal[i] = detourAndSlackCost(node, pred, OldSeqVar, tw, dist);
-                branching[i] = () -> OldSeqVar.getSolver().post(new Insert(OldSeqVar, pred, node));
+                branching[i] = () -> insert(OldSeqVar, pred, node);
             }
             // sort according to the detourAndSlackCost
             Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
@@ -278,7 +278,7 @@ public class Branching {
                 int pred = nodes[i];
                 branchingRange[i] = i;
                 heuristicVal[i] = tw[node].min() - tw[pred].min();
-                branching[i] = () -> OldSeqVar.getSolver().post(new Insert(OldSeqVar, pred, node));
+                branching[i] = () -> insert(OldSeqVar, pred, node);
             }
             // sort according to the detourAndSlackCost
             Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
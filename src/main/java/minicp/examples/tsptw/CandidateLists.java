@@ -0,0 +1,99 @@
+package minicp.examples.tsptw;
+
+import minicp.engine.core.OldSeqVar;
+import minicp.state.StateInt;
+import minicp.state.StateManager;
+
+import java.util.Arrays;
+
+/**
+ * Candidate predecessors of every node, used by the branchings to only consider the insertions of a node
+ * right after one of its closest feasible predecessors.
+ *
+ * The feasible predecessors of a node are sorted once per instance, from the distance to the node
+ * plus the time waited before its time window opens. Only the first ones, up to the width of the node, are candidates.
+ * The width starts at K and is doubled each time the node has no candidate insertion left while being insertable
+ * elsewhere. It is a state, such that the widening is undone on backtrack.
+ */
+class CandidateLists {
+
+    private final StateInt[] width; // number of candidate predecessors of every node
+    private int[][] sorted = new int[0][]; // sorted[node] = feasible predecessors of the node, the best ones first
+    private int initialWidth;
+
+    /**
+     * Creates the candidate lists of the nodes of a sequence
+     * @param sm state manager of the sequence, on which the widening is undone
+     * @param nNodes maximum number of nodes of the instances
+     */
+    CandidateLists(StateManager sm, int nNodes) {
+        width = new StateInt[nNodes];
+        for (int i = 0 ; i < nNodes ; ++i)
+            width[i] = sm.makeStateInt(0);
+    }
+
+    /**
+     * Sorts the feasible predecessors of every node of an instance and sets their width.
+     * The predecessors are the nodes 0..nNodes-1, the end depot being numbered from nNodes
+     * @param distances transition from one node to another
+     * @param twStart start of the time windows
+     * @param twEnd end of the time windows
+     * @param nNodes number of nodes of the instance, without counting the end depot
+     * @param k initial number of candidate predecessors of every node
+     */
+    void load(int[][] distances, int[] twStart, int[] twEnd, int nNodes, int k) {
+        initialWidth = k;
+        if (sorted.length < nNodes)
+            sorted = new int[nNodes][];
+        long[] keys = new long[nNodes];
+        for (int node = 0 ; node < nNodes ; ++node) {
+            int nPred = 0;
+            for (int pred = 0 ; pred < nNodes ; ++pred) {
+                int arrival = twStart[pred] + distances[pred][node];
+                if (pred == node || arrival > twEnd[node])
+                    continue;
+                long score = distances[pred][node] + Math.max(0, twStart[node] - arrival);
+                keys[nPred++] = (score << 32) | pred; // ties are broken by the id of the predecessor
+            }
+            Arrays.sort(keys, 0, nPred);
+            sorted[node] = new int[nPred];
+            for (int i = 0 ; i < nPred ; ++i)
+                sorted[node][i] = (int) keys[i];
+            width[node].setValue(Math.min(k, nPred));
+        }
+    }
+
+    /**
+     * Gives the candidate predecessors after which a node can be inserted in a sequence,
+     * widening the list of the node until one is found or all its predecessors are candidates.
+     * If none is found, all the member predecessors of the node are given
+     * @param seq sequence in which the node is inserted
+     * @param node node to insert
+     * @param dest array filled with the candidate member predecessors of the node
+     * @return number of candidate member predecessors of the node
+     */
+    int fillCandidatePredInsert(OldSeqVar seq, int node, int[] dest) {
+        int[] preds = sorted[node];
+        int w = width[node].value();
+        int nFound = fill(seq, node, preds, w, dest);
+        while (nFound == 0 && w < preds.length && seq.nMemberPredInsert(node) > 0) {
+            // the node has run out of candidates
+            w = Math.min(preds.length, Math.max(2 * w, initialWidth));
+            width[node].setValue(w);
+            nFound = fill(seq, node, preds, w, dest);
+        }
+        if (nFound == 0)
+            return seq.fillMemberPredInsert(node, dest); // insertions after the predecessors deemed infeasible
+        return nFound;
+    }
+
+    private static int fill(OldSeqVar seq, int node, int[] preds, int width, int[] dest) {
+        int nFound = 0;
+        for (int i = 0 ; i < width ; ++i) {
+            int pred = preds[i];
+            if (seq.isMember(pred) && seq.isPredInsert(pred, node))
+                dest[nFound++] = pred;
+        }
+        return nFound;
+    }
+}
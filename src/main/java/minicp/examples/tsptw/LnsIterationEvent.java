@@ -0,0 +1,38 @@
+package minicp.examples.tsptw;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an iteration of the large neighborhood search of the {@link TsptwSolver}.
+ * The duration of the event is the one of the relaxation and of the search
+ */
+@Name("minicp.tsptw.LnsIteration")
+@Label("LNS Iteration")
+@Category({"MiniCP", "TSPTW"})
+@Description("Relaxation of the best solution followed by a search with a node limit")
+@StackTrace(false)
+class LnsIterationEvent extends jdk.jfr.Event {
+
+    @Label("Operator")
+    @Description("Relaxation operator used")
+    String operator;
+
+    @Label("Relaxed")
+    @Description("Number of nodes the operator was asked to relax")
+    int relaxed;
+
+    @Label("Node Limit")
+    long nodeLimit;
+
+    @Label("Nodes")
+    @Description("Number of nodes explored by the search")
+    long nodes;
+
+    @Label("Improved")
+    @Description("True if a better solution has been found")
+    boolean improved;
+}
@@ -12,6 +12,8 @@ public class Main {
     public enum Method {
         SATISFY, // try to find a feasible tour to the instance
         GREEDY, // only uses the first part of the 'SATISFY' method. This might produce an incomplete tour
+        BEAM, // builds the tours forward with a beam search, widened until a feasible tour is found
+        OPTIMIZE, // finds a feasible tour and then reduces its travel distance until the timeout
     }
 
     private final String fname;
@@ -75,6 +77,8 @@ public class Main {
         switch (methodStr.toLowerCase(Locale.ROOT)) {
             case "satisfy" -> method = Method.SATISFY;
             case "greedy" -> method = Method.GREEDY;
+            case "beam" -> method = Method.BEAM;
+            case "optimize" -> method = Method.OPTIMIZE;
         }
         return new Main(fname, timeout, seed, verbosity, method);
     }
@@ -105,10 +109,26 @@ public class Main {
     }
 
     public void solve() {
+        solve(null);
+    }
+
+    /**
+     * Solves the instance, reusing the model of a solver used on a previous instance when possible
+     *
+     * @param previous solver used on a previous instance, possibly null
+     * @return solver that was used, that can be given to solve the next instance. Null if the solving crashed
+     */
+    public TsptwSolver solve(TsptwSolver previous) {
+        TsptwSolver solver = null;
         try {
             TsptwInstance instance = TsptwParser.fromFile(fname);
             this.nNodes = instance.nbNodes;
-            TsptwSolver solver     = new TsptwSolver(instance, timeout);
+            if (previous != null && previous.getCapacity() >= instance.nbNodes) {
+                solver = previous;
+                solver.reset(instance, timeout);
+            } else {
+                solver = new TsptwSolver(instance, timeout);
+            }
             solver.setVerbosity(verbosity);
             solver.setSeed(seed);
 
@@ -125,13 +145,19 @@ public class Main {
             switch (method) {
                 case SATISFY -> result = solver.satisfy();
                 case GREEDY -> result = solver.satisfy_greedy();
+                case BEAM -> result = solver.beam();
+                case OPTIMIZE -> result = solver.optimize();
                 default -> result = null;
             }
             this.closed  = result.isOptimum;
+            if (verbosity > 1)
+                System.out.println("search statistics:" + solver.getSearchStatistics());
         } catch (Throwable e) {
             this.crashed = true;
             this.error   = e.getMessage();
+            solver = null; // its state cannot be trusted anymore
         }
+        return solver;
     }
 
     private static final String instanceName(final String fname) {
@@ -0,0 +1,181 @@
+package minicp.examples.tsptw;
+
+import minicp.engine.core.IntVar;
+import minicp.engine.core.OldSeqVar;
+import minicp.state.StateInt;
+import minicp.state.StateManager;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Reversible cache of the best and second best insertion costs of the possible nodes of a route,
+ * used to select the node with the maximum regret.
+ *
+ * The cost of inserting a node after a member pred must only depend on pred, on its successor succ,
+ * on the earliest time of pred, on the latest time of succ and on constant values.
+ * Those values are remembered for every member. At each call to {@link #maxRegretNode()}, only the members
+ * whose values have changed are considered again, and only for the nodes that can be inserted after them.
+ * The costs of a node are computed from scratch only if its best or second best insertion changed.
+ * As the cache is reversible, it stays valid when the search backtracks.
+ */
+class MaxRegretCache {
+
+    private static final int UNKNOWN = -1;
+
+    private final OldSeqVar route;
+    private final IntVar[] time;
+    private final IntBinaryOperator cost; // cost(node, pred) of inserting node after pred
+
+    // values of the members on which the costs depend
+    private final StateInt[] memberSucc; // UNKNOWN if the node is not a member yet
+    private final StateInt[] memberMin;
+    private final StateInt[] succMax;
+
+    // best and second best insertions of the possible nodes
+    private final StateInt[] bestPred; // UNKNOWN if the costs of the node must be computed from scratch
+    private final StateInt[] bestCost;
+    private final StateInt[] secondPred;
+    private final StateInt[] secondCost;
+
+    private final int[] changed; // members whose values have changed
+    private final int[] nodes; // used for fill operations
+    private final int[] preds; // used for fill operations
+
+    /**
+     * Creates a cache for the insertions of the nodes in a route
+     *
+     * @param route route where the nodes are inserted
+     * @param time time at which each node is visited
+     * @param cost cost(node, pred) of inserting a node after one of its member predecessor
+     */
+    MaxRegretCache(OldSeqVar route, IntVar[] time, IntBinaryOperator cost) {
+        this.route = route;
+        this.time = time;
+        this.cost = cost;
+        StateManager sm = route.getSolver().getStateManager();
+        int n = route.nNode();
+        memberSucc = new StateInt[n];
+        memberMin = new StateInt[n];
+        succMax = new StateInt[n];
+        bestPred = new StateInt[n];
+        bestCost = new StateInt[n];
+        secondPred = new StateInt[n];
+        secondCost = new StateInt[n];
+        for (int i = 0 ; i < n ; ++i) {
+            memberSucc[i] = sm.makeStateInt(UNKNOWN);
+            memberMin[i] = sm.makeStateInt(0);
+            succMax[i] = sm.makeStateInt(0);
+            bestPred[i] = sm.makeStateInt(UNKNOWN);
+            bestCost[i] = sm.makeStateInt(Integer.MAX_VALUE);
+            secondPred[i] = sm.makeStateInt(UNKNOWN);
+            secondCost[i] = sm.makeStateInt(Integer.MAX_VALUE);
+        }
+        changed = new int[n];
+        nodes = new int[n];
+        preds = new int[n];
+    }
+
+    /**
+     * Gives the possible node having the maximum difference between its second best and best insertion cost.
+     * A node having a single insertion has a second best cost of {@link Integer#MAX_VALUE}.
+     * In case of ties, the first node given by {@link OldSeqVar#fillPossible(int[])} is selected.
+     *
+     * @return node with the maximum regret, or -1 if there is no possible node
+     */
+    int maxRegretNode() {
+        int nChanged = updateMembers();
+        int bestNode = -1;
+        int bestRegret = Integer.MIN_VALUE;
+        int size = route.fillPossible(nodes);
+        for (int i = 0 ; i < size ; ++i) {
+            int node = nodes[i];
+            update(node, nChanged);
+            int regret = secondCost[node].value() - bestCost[node].value();
+            if (regret > bestRegret) {
+                bestNode = node;
+                bestRegret = regret;
+            }
+        }
+        return bestNode;
+    }
+
+    /**
+     * Compares the current values of the members with the remembered ones
+     *
+     * @return number of members whose values have changed, written into {@link #changed}
+     */
+    private int updateMembers() {
+        int nChanged = 0;
+        int end = route.end();
+        int pred = route.begin();
+        while (pred != end) {
+            int succ = route.nextMember(pred);
+            int min = time[pred].min();
+            int max = time[succ].max();
+            if (memberSucc[pred].value() != succ || memberMin[pred].value() != min || succMax[pred].value() != max) {
+                memberSucc[pred].setValue(succ);
+                memberMin[pred].setValue(min);
+                succMax[pred].setValue(max);
+                changed[nChanged++] = pred;
+            }
+            pred = succ;
+        }
+        return nChanged;
+    }
+
+    /**
+     * Updates the costs of a possible node
+     *
+     * @param node possible node
+     * @param nChanged number of members in {@link #changed}
+     */
+    private void update(int node, int nChanged) {
+        int best = bestPred[node].value();
+        int second = secondPred[node].value();
+        if (best == UNKNOWN || !route.isPredInsert(best, node)
+                || (second != UNKNOWN && !route.isPredInsert(second, node))) {
+            recompute(node);
+            return;
+        }
+        for (int i = 0 ; i < nChanged ; ++i) {
+            int pred = changed[i];
+            if (!route.isPredInsert(pred, node))
+                continue;
+            if (pred == best || pred == second) {
+                recompute(node);
+                return;
+            }
+            merge(node, pred, cost.applyAsInt(node, pred));
+        }
+    }
+
+    /**
+     * Computes the costs of a node from scratch
+     */
+    private void recompute(int node) {
+        bestPred[node].setValue(UNKNOWN);
+        bestCost[node].setValue(Integer.MAX_VALUE);
+        secondPred[node].setValue(UNKNOWN);
+        secondCost[node].setValue(Integer.MAX_VALUE);
+        int nInsert = route.fillMemberPredInsert(node, preds);
+        for (int j = 0 ; j < nInsert ; ++j)
+            merge(node, preds[j], cost.applyAsInt(node, preds[j]));
+    }
+
+    /**
+     * Takes into account the cost of an insertion that is neither the best nor the second best one
+     */
+    private void merge(int node, int pred, int c) {
+        if (c < secondCost[node].value()) {
+            if (c < bestCost[node].value()) {
+                secondPred[node].setValue(bestPred[node].value());
+                secondCost[node].setValue(bestCost[node].value());
+                bestPred[node].setValue(pred);
+                bestCost[node].setValue(c);
+            } else {
+                secondPred[node].setValue(pred);
+                secondCost[node].setValue(c);
+            }
+        }
+    }
+}
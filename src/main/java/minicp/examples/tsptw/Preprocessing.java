@@ -0,0 +1,121 @@
+package minicp.examples.tsptw;
+
+/**
+ * Root preprocessing of an instance, done before its time windows are set in the model.
+ *
+ * The time windows are tightened until a fix point, from the earliest arrival at a node from its predecessors
+ * and from the latest departure of a node toward its successors. The arc i -> j is infeasible when
+ * j cannot be reached from i within its time window, in which case j can never be inserted right after i.
+ * Those rules hold for any subset of visited nodes, such that they can also be used when maximizing
+ * the number of visited nodes.
+ */
+class Preprocessing {
+
+    private final int[][] distances;
+    private final int[] twStart;
+    private final int[] twEnd;
+    private final int begin;
+    private final int end;
+    private final int[] nodes; // nodes of the instance, followed by the end depot
+
+    private int nTightened; // number of time window bounds changed by the last preprocessing
+    private int nInfeasibleArcs; // number of infeasible arcs after the last preprocessing
+
+    /**
+     * Prepares the preprocessing of the time windows, modified in place
+     * @param distances transition from one node to another
+     * @param twStart start of the time windows
+     * @param twEnd end of the time windows
+     * @param begin begin depot
+     * @param end end depot
+     * @param nNodes number of nodes of the instance, numbered from 0 without counting the end depot
+     */
+    Preprocessing(int[][] distances, int[] twStart, int[] twEnd, int begin, int end, int nNodes) {
+        this.distances = distances;
+        this.twStart = twStart;
+        this.twEnd = twEnd;
+        this.begin = begin;
+        this.end = end;
+        nodes = new int[nNodes + 1];
+        for (int i = 0 ; i < nNodes ; ++i)
+            nodes[i] = i;
+        nodes[nNodes] = end;
+    }
+
+    /**
+     * Tightens the time windows until no rule changes them, then counts the infeasible arcs
+     */
+    void run() {
+        nTightened = 0;
+        boolean changed = true;
+        for (int pass = 0 ; changed && pass < nodes.length ; ++pass) {
+            changed = false;
+            for (int node : nodes)
+                if (node != begin && tightenFromPredecessors(node))
+                    changed = true;
+            for (int node : nodes)
+                if (node != end && tightenFromSuccessors(node))
+                    changed = true;
+        }
+        nInfeasibleArcs = 0;
+        for (int pred : nodes)
+            for (int node : nodes)
+                if (pred != end && node != begin && pred != node && !isArcFeasible(pred, node))
+                    nInfeasibleArcs++;
+    }
+
+    /**
+     * A node cannot be visited before the earliest arrival from any of its predecessors
+     * @return true if the start of the time window has changed
+     */
+    private boolean tightenFromPredecessors(int node) {
+        int earliestArrival = Integer.MAX_VALUE;
+        for (int pred : nodes)
+            if (pred != end && pred != node && isArcFeasible(pred, node))
+                earliestArrival = Math.min(earliestArrival, twStart[pred] + distances[pred][node]);
+        if (earliestArrival == Integer.MAX_VALUE || earliestArrival <= twStart[node])
+            return false; // the node is unreachable or its time window is unchanged
+        twStart[node] = earliestArrival;
+        nTightened++;
+        return true;
+    }
+
+    /**
+     * A node cannot be left after the latest departure allowing to reach any of its successors
+     * @return true if the end of the time window has changed
+     */
+    private boolean tightenFromSuccessors(int node) {
+        int latestDeparture = Integer.MIN_VALUE;
+        for (int succ : nodes)
+            if (succ != begin && succ != node && isArcFeasible(node, succ))
+                latestDeparture = Math.max(latestDeparture, twEnd[succ] - distances[node][succ]);
+        if (latestDeparture == Integer.MIN_VALUE || latestDeparture >= twEnd[node])
+            return false; // the node is a dead end or its time window is unchanged
+        twEnd[node] = latestDeparture;
+        nTightened++;
+        return true;
+    }
+
+    /**
+     * @param pred predecessor
+     * @param node node visited right after the predecessor
+     * @return true if the node can be reached from the predecessor within its time window
+     */
+    boolean isArcFeasible(int pred, int node) {
+        return twStart[pred] + distances[pred][node] <= twEnd[node];
+    }
+
+    /**
+     * @return number of time window bounds changed by the last preprocessing
+     */
+    int nTightened() {
+        return nTightened;
+    }
+
+    /**
+     * @return number of arcs that cannot be used after the last preprocessing
+     */
+    int nInfeasibleArcs() {
+        return nInfeasibleArcs;
+    }
+}
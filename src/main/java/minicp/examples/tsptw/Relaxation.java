@@ -6,10 +6,6 @@ import minicp.engine.core.OldSeqVar;
 import minicp.engine.core.SeqVar;
 import minicp.util.exception.InconsistencyException;
 
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.PriorityQueue;
 
 public class Relaxation {
 
@@ -25,18 +21,33 @@ public class Relaxation {
 
     }
 
+    private final int[] arrival; // when we arrive at a node (possibly before the twStart)
+    private final int[] earliestDeparture; // when we depart from the node (possibly after the twSTart)
+    private final int[] latestDeparture; // when we must depart from the node at the latest (possibly before the twEnd)
+    private final int[] score; // the lower the score, the more the node is worth relaxing
+    private final int[] mostSlack; // nodes having the lowest scores, sorted by increasing score
+    private final boolean[] relaxed; // true for the nodes relaxed by the last call
+
+    /**
+     * Creates the buffers used by the relaxations, reused from one call to the other
+     * @param nNode number of nodes of the sequences to relax
+     */
+    public Relaxation(int nNode) {
+        arrival = new int[nNode];
+        earliestDeparture = new int[nNode];
+        latestDeparture = new int[nNode];
+        score = new int[nNode];
+        mostSlack = new int[nNode];
+        relaxed = new boolean[nNode];
+    }
+
     /**
      * Relax the nodes having the biggest slack
      * @param seqVar
      * @param bestOrdering
      */
-    public static void relaxMostSlack(OldSeqVar seqVar, int nRelax, int[] bestOrdering, int[] twStart, int[] twEnd, int[][] dist) {
+    public void relaxMostSlack(OldSeqVar seqVar, int nRelax, int[] bestOrdering, int[] twStart, int[] twEnd, int[][] dist) {
         // computes the slack
-        int[] slack = new int[seqVar.nNode()];// TODO attribute or whatever, prevent garbage collection in any case
-        int[] arrival = new int[seqVar.nNode()]; // when we arrive at a node (possibly before the twStart)
-        int[] earliestDeparture = new int[seqVar.nNode()]; // when we depart from the node (possibly after the twSTart)
-        int[] latestDeparture = new int[seqVar.nNode()]; // when we must depart from the node at the latest (possibly before the twEnd)
-        Arrays.fill(slack, Integer.MAX_VALUE);
         int pred = 0;
         int time = 0;
         int nVisited = 0;
@@ -69,27 +80,33 @@ public class Relaxation {
             if (i > 0)
                 current = bestOrdering[i-1];
         }
-        int[] score = new int[nNode];
-        PriorityQueue<Integer> pq = new PriorityQueue<>(Comparator.comparingInt(i -> score[i]));
+        // keeps the nRelax nodes with the lowest score, sorted by insertion
+        int nSelected = 0;
         for (int i = 1 ; i < nVisited ; ++i) {
             current = bestOrdering[i];
             score[current] = -(2 * Math.max(0, earliestDeparture[current] - arrival[current]) +
                     (latestDeparture[current] - arrival[current]));
-            pq.add(current);
-        }
-        HashSet<Integer> relaxed = new HashSet<>();
-        while (nRelax > 0 && !pq.isEmpty()) {
-            int toRelax = pq.poll();
-            relaxed.add(toRelax);
-            nRelax -= 1;
+            if (nSelected == nRelax && (nRelax == 0 || score[current] >= score[mostSlack[nRelax - 1]]))
+                continue;
+            int j = nSelected < nRelax ? nSelected++ : nRelax - 1;
+            for ( ; j > 0 && score[mostSlack[j - 1]] > score[current] ; --j)
+                mostSlack[j] = mostSlack[j - 1];
+            mostSlack[j] = current;
         }
+        for (int i = 0 ; i < nSelected ; ++i)
+            relaxed[mostSlack[i]] = true;
         int prev = seqVar.begin();
-        for (int i = 1 ; i < nVisited - 1 ; ++i) {
-            current = bestOrdering[i];
-            if (!relaxed.contains(current)) {
-                seqVar.insert(prev, current); // the vehicle goes through this node
-                prev = current; // only updated when a non-relaxed node is met, to complete the partial route
+        try {
+            for (int i = 1 ; i < nVisited - 1 ; ++i) {
+                current = bestOrdering[i];
+                if (!relaxed[current]) {
+                    seqVar.insert(prev, current); // the vehicle goes through this node
+                    prev = current; // only updated when a non-relaxed node is met, to complete the partial route
+                }
             }
+        } finally {
+            for (int i = 0 ; i < nSelected ; ++i)
+                relaxed[mostSlack[i]] = false;
         }
         try {
             seqVar.getSolver().fixPoint();
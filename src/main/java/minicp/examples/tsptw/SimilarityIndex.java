@@ -0,0 +1,74 @@
+package minicp.examples.tsptw;
+
+/**
+ * The k nodes most similar to every node, used by the shaw relaxation.
+ *
+ * Two nodes are similar if they are close to each other and if their time windows start and end at close times.
+ * The similarity is computed with integers and the neighbors of all nodes are stored in one flat array,
+ * such that reading the neighbors of a node does not allocate anything.
+ */
+class SimilarityIndex {
+
+    private static final int PHI = 9; // weight of the distance
+    private static final int XI = 3; // weight of the time windows
+
+    private final int k;
+    private final int[] neighbors; // neighbors[node * k + rank] = node at the given rank of similarity to node
+
+    /**
+     * Computes the nodes most similar to every node
+     * @param distances transition from one node to another
+     * @param twStart start of the time windows
+     * @param twEnd end of the time windows
+     * @param maxDistance maximum distance between two nodes, used to normalize the distances
+     * @param maxTwStart maximum start of a time window, used to normalize the starts
+     * @param maxTwEnd maximum end of a time window, used to normalize the ends
+     * @param nNodes number of nodes, numbered from 0
+     * @param k number of neighbors kept for every node, at most nNodes - 1
+     */
+    SimilarityIndex(int[][] distances, int[] twStart, int[] twEnd, int maxDistance, int maxTwStart, int maxTwEnd,
+                    int nNodes, int k) {
+        this.k = k;
+        neighbors = new int[nNodes * k];
+        long distanceScale = Math.max(1, maxDistance);
+        long startScale = Math.max(1, maxTwStart);
+        long endScale = Math.max(1, maxTwEnd);
+        long[] best = new long[k]; // k most similar nodes found so far, sorted by similarity then by id
+        for (int node = 0 ; node < nNodes ; ++node) {
+            int size = 0;
+            for (int other = 0 ; other < nNodes ; ++other) {
+                if (other == node)
+                    continue;
+                long similarity = 1000L * PHI * distances[node][other] / distanceScale
+                        + 1000L * XI * Math.abs(twStart[node] - twStart[other]) / startScale
+                        + 1000L * XI * Math.abs(twEnd[node] - twEnd[other]) / endScale;
+                long key = (similarity << 32) | other;
+                if (size == k && (k == 0 || key >= best[k - 1]))
+                    continue;
+                // insertion in the sorted neighbors, dropping the least similar one if they are full
+                int i = size < k ? size++ : k - 1;
+                for ( ; i > 0 && best[i - 1] > key ; --i)
+                    best[i] = best[i - 1];
+                best[i] = key;
+            }
+            for (int rank = 0 ; rank < k ; ++rank)
+                neighbors[node * k + rank] = (int) best[rank];
+        }
+    }
+
+    /**
+     * @return number of neighbors of every node
+     */
+    int k() {
+        return k;
+    }
+
+    /**
+     * @param node node whose neighbors are considered
+     * @param rank rank of the neighbor, 0 being the most similar one
+     * @return neighbor of the node at the given rank
+     */
+    int neighbor(int node, int rank) {
+        return neighbors[node * k + rank];
+    }
+}
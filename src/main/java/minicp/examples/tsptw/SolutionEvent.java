@@ -0,0 +1,30 @@
+package minicp.examples.tsptw;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a solution found by the {@link TsptwSolver}, visiting more nodes than the previous ones
+ */
+@Name("minicp.tsptw.Solution")
+@Label("TSPTW Solution")
+@Category({"MiniCP", "TSPTW"})
+@Description("Sequence visiting more nodes than the previous ones, or first feasible tour")
+@StackTrace(false)
+class SolutionEvent extends jdk.jfr.Event {
+
+    @Label("Objective")
+    @Description("Travel distance of the tour, -1 if some nodes are not visited")
+    int objective;
+
+    @Label("Visited")
+    @Description("Number of nodes visited, the end depot excluded")
+    int visited;
+
+    @Label("Nodes")
+    @Description("Number of nodes of the instance, the end depot excluded")
+    int nodes;
+}
@@ -20,6 +20,7 @@ public class TSPBenchmark {
     public enum MODE {
         SATISFY, // find a first feasible solution
         GREEDY,  // attempt to visit as many nodes as possible and stops at the first failure encountered
+        OPTIMIZE, // improve the travel distance of a first feasible solution until the timeout
     }
 
     private record ModeSetup(int nRun, int timeout, String directory) {
@@ -30,10 +31,13 @@ public class TSPBenchmark {
 
     private static final Map<MODE, ModeSetup> modeSetup = Map.of(
             MODE.SATISFY, new ModeSetup(100, 300, "initial"),
-            MODE.GREEDY, new ModeSetup(1, 100, "greedy")
+            MODE.GREEDY, new ModeSetup(1, 100, "greedy"),
+            MODE.OPTIMIZE, new ModeSetup(10, 300, "optimize")
     );
 
     private static final String instancePath = "data/TSPTW/instances"; // path to the instances folder
+    // solver used by each thread, reset for every experiment instead of building a new model
+    private static final ThreadLocal<TsptwSolver> solvers = new ThreadLocal<>();
     private final int maxParallel; // maximum number of threads that can be used in parallel
     // best objective values ever found, written in the bestKnownSol directory
     private static Map<String, Double> bestObjective;
@@ -151,6 +155,7 @@ public class TSPBenchmark {
                     "-m", switch (instanceParam.mode) {
                         case GREEDY -> "greedy";
                         case SATISFY -> "satisfy";
+                        case OPTIMIZE -> "optimize";
                     }
             ));
             return commonParam.toArray(new String[0]);
@@ -165,7 +170,7 @@ public class TSPBenchmark {
             try {
                 System.out.println("solving " + detail() + seedInfo);
                 Main main = Main.instanciate(args);
-                main.solve();
+                solvers.set(main.solve(solvers.get()));
                 System.out.printf("solved %s in %.3f [s] %s %n", detail(), main.elapsedTime(), seedInfo);
                 Solution result = new Solution(main.getSolution(), main.getObjective(), main.toString(), seed, run);
                 // stores the results
@@ -407,6 +412,13 @@ public class TSPBenchmark {
         solve(MODE.GREEDY, setToSolve);
     }
 
+    /**
+     * Improves the travel distance of a first feasible solution on the instances
+     */
+    public void solve_optimize() {
+        solve(MODE.OPTIMIZE, setToSolve);
+    }
+
     public void solve(MODE mode, String[] setOfInstances) {
         int maxListSize = 2 * maxParallel;
         int nRun = modeSetup.get(mode).nRun;
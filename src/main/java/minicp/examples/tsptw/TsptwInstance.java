@@ -1,5 +1,8 @@
 package minicp.examples.tsptw;
 
+import minicp.engine.constraints.sequence.TransitionTimes;
+import minicp.util.FloydWarshall;
+
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -68,40 +71,20 @@ public class TsptwInstance {
      * @return true if the triangular inequality is respected
      */
     public boolean respectTriangularInequality() {
-        for (int i = 0; i < distances.length ; ++i) {
-            for (int j = 0; j < distances.length ; ++j) { //transition[i,j] <= transition[i,k] + transition[k,j]
-                for (int k = 0 ; k < distances.length; ++k) {
-                    if (distances[i][j] > distances[i][k] + distances[k][j]) {
-                        //System.err.println(String.format("transition[%d][%d] > transition[%d][%d] + transition[%d][%d]" +
-                        //                "(%d > %d + %d)", i, j, i, k, k, j, distances[i][j], distances[i][k], distances[k][j]));
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+        return TransitionTimes.respectTriangularInequality(distances);
     }
 
     /**
      * give a matrix respecting the triangular inequality using the current distance matrix
+     * the distances are replaced by the ones of the shortest paths, computed in parallel by {@link FloydWarshall}
      * @return matrix respecting the triangular inequality
      */
     public int[][] allPairsShortestPath() {
-        int[][] new_dist = new int[nbNodes][nbNodes];
-        for (int i = 0 ; i < nbNodes ; ++i) {
-            System.arraycopy(distances[i], 0, new_dist[i], 0, nbNodes);
-        }
-        for (int i = 0; i < nbNodes ; ++i) {
-            for (int j = 0; j < nbNodes ; ++j) {
-                for (int k = 0 ; k < nbNodes; ++k) {
-                    //transition[i,j] <= transition[i,k] + transition[k,j]
-                    if (new_dist[i][j] > new_dist[i][k] + new_dist[k][j]) {
-                        new_dist[i][j] = new_dist[i][k] + new_dist[k][j];
-                    }
-                }
-            }
-        }
-        return  new_dist;
+        int[] dist = new int[nbNodes * nbNodes];
+        for (int i = 0 ; i < nbNodes ; ++i)
+            System.arraycopy(distances[i], 0, dist, i * nbNodes, nbNodes);
+        FloydWarshall.closure(dist, nbNodes);
+        return FloydWarshall.unflatten(dist, nbNodes);
     }
 
     /**
@@ -4,32 +4,47 @@ package minicp.examples.tsptw;
 import minicp.cp.Factory;
 import minicp.engine.constraints.sequence.*;
 import minicp.engine.core.*;
+import minicp.search.CancellationToken;
 import minicp.search.DFSearch;
+import minicp.search.DecisionBranching;
+import minicp.search.Decisions;
 import minicp.search.Objective;
+import minicp.search.ParallelDFSearch;
+import minicp.search.SearchMonitor;
 import minicp.search.SearchStatistics;
+import minicp.search.TranspositionTable;
 import minicp.util.Procedure;
 import minicp.util.exception.InconsistencyException;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
-import static minicp.cp.BranchingScheme.EMPTY;
+import static minicp.cp.BranchingScheme.*;
 import static minicp.cp.Factory.*;
 import static minicp.util.exception.InconsistencyException.INCONSISTENCY;
 
 
-public class TsptwSolver {
+public class TsptwSolver implements TsptwSolverMXBean {
 
-    // TODO distance matrix using all pair shortest path for satisfiability
+    private static final int BEAM_INITIAL_WIDTH = 64; // width of the first beam tried by beam()
+    private static final int TOUR_MIN_RELAX = 5; // number of nodes relaxed by the first neighborhoods of optimize()
+    private static final int TOUR_ITERATIONS_PER_SIZE = 10; // failed iterations of optimize() before relaxing one more node
+    private static final int SHAW_NEIGHBORS = 64; // number of similar nodes from which the shaw relaxation draws the next node
 
     private int verbosity = 0;
 
-    private final TsptwInstance instance;
-    private final int           timeout;
+    private TsptwInstance instance;
+    private int           timeout;
     private List<BiConsumer<int[],Integer>> observers = new LinkedList<>();
 
+    private final int capacity; // maximum number of nodes of the instances that the model can hold
+    private int horizon; // maximum time that the time variables of the model can hold
+    private int rootLevel; // level of the state manager where the model is empty of any instance
     private int nNodes;
     private int nNodesWithDepot;
     private int begin;
@@ -44,18 +59,17 @@ public class TsptwSolver {
     private Solver cp;
     private IntVar[] time; // time window of every node
     private OldSeqVar route; // route taken in the TSP
+    private MaxRegretCache regretCache; // best insertions of the possible nodes, used by the max regret branching
     private IntVar nVisitedNodes; // TODO enhance number of visited nodes objective
 
     // used for finding a satisfiable solution. Stores the nodes belonging to the current solution
-    private Set<Integer> memberInSolution = new HashSet<>();
+    private boolean[] memberInSolution; // true for the nodes visited by the current solution
+    private int nMemberInSolution;
 
     private int bestNVisited; // best number of visited nodes
 
     private int[] nodes; // used for fill operations on nodes in the branching
     private int[] insertion; // used for fill operations on insertions in the branching
-    private Procedure[] branching; // contain the branching procedures
-    private Integer[] heuristicVal; // heuristic values
-    private Integer[] branchingRange; // index used to sort using the heuristic values
     private Random random; // used to randomize the branching and the relaxation
     private long seed; // seed used by random
 
@@ -67,14 +81,44 @@ public class TsptwSolver {
     private int nNotYetVisited;
     private TsptwResult bestSol; // value for the best solution
     private int[] relaxedNodes; // set of relaxed nodes
-    private Set<Integer> relaxed; // set of relaxed nodes
+    private boolean[] relaxed; // true for the nodes relaxed by the random relaxation
     private final boolean solProvided; // true if an initial solution was provided
-    private long init; // time at which the solver has started, in millis
-    private int[][] mostSimilar;  // mostSimilar[i][0] = node that is the most similar to node i
+    private CancellationToken cancellation = new CancellationToken(); // cancelled at the timeout or by cancel(), shared with the replicas
+    private SimilarityIndex mostSimilar; // nodes most similar to every node, null until the first shaw relaxation
 
     private ArrayList<int[]> solRegistered;
-    private Set<Integer> toRelax = new HashSet<>();
+    private boolean[] toRelax; // true for the nodes selected by the shaw relaxation
+    private int[] shawSelected; // nodes selected by the last shaw relaxation
+    private int nShawSelected;
+    private int[] shawCandidates; // similar nodes that can be selected by the shaw relaxation
     private int toRelaxFromShaw = -1;
+    private boolean parallelFiltering = false; // true if the insertions are filtered in parallel on large instances
+    private boolean nogoodLearning = true; // true if the failed insertions are remembered across the searches
+    private boolean lnsDiscrepancy = true; // true if the subproblems of the LNS are explored by iterative limited discrepancy search
+    private boolean assignmentBound = true; // true if the distance of the tours is bounded by the assignment relaxation
+    private boolean shortestPaths = false; // true if the travel between two nodes follows the shortest path through the others
+    private boolean rootPreprocessing = true; // true if the time windows and arcs are preprocessed when loading an instance
+    private Preprocessing preprocessing; // preprocessing of the current instance, null if it is disabled
+    private int candidateListSize = 0; // initial number of candidate predecessors of a node in the branchings, 0 if all are considered
+    private CandidateLists routeCandidates; // candidate predecessors of the nodes of the route
+    private CandidateLists tourCandidates; // candidate predecessors of the nodes of the tour
+    private final InsertionNogoodStore nogoods = new InsertionNogoodStore(); // insertions that failed within a context
+    private InsertionNogoods routeContext; // maintains the context of the route, for the nogoods and the transpositions
+    private TranspositionTable transpositions; // contexts of the route without solution, null if they are not remembered
+    private SearchStatistics searchStatistics; // statistics of all the searches done since the instance was loaded
+    private int nSearchWorkers = 1; // number of workers looking for the first solution
+    private int decompositionDepth = 3; // depth of the subproblems solved by the workers
+    private long startMillis; // time at which the instance was loaded
+    private volatile DFSearch currentSearch; // last search started on the model, null if there is none
+    private volatile int neighborhoodSize; // number of nodes relaxed by the current iteration of the LNS, 0 outside the LNS
+
+    // model of the tour optimization, restricted to the nodes of the current instance, built by optimize()
+    private Solver tourCp;
+    private OldSeqVar tour; // tour visiting every node, from begin to the end depot nNodes
+    private IntVar[] tourTime; // time of visit of every node of the tour
+    private IntVar tourDistance; // travel distance of the tour
+    private int[][] tourDistances; // transitions between the nodes of the tour model
+    private boolean tourProvable; // true if a completed search on the tour model proves that the best tour is optimal
 
     public void addObserver(BiConsumer<int[],Integer> observer) {
         observers.add(observer);
@@ -92,49 +136,253 @@ public class TsptwSolver {
      * @param timeout timeout for the solving [s]
      */
     public TsptwSolver(final TsptwInstance instance, final int timeout) {
-        this.instance = instance;
-        this.timeout  = timeout * 1000; // convert to millis
+        this(instance, timeout, instance.nbNodes);
+    }
+
+    /**
+     * initialize a TSP with time window solver whose model can be reused through {@link #reset(TsptwInstance, int)}
+     * @param instance instance to solve
+     * @param timeout timeout for the solving [s]
+     * @param capacity maximum number of nodes (depot included) of the instances that can be solved
+     */
+    public TsptwSolver(final TsptwInstance instance, final int timeout, final int capacity) {
+        if (instance.nbNodes > capacity)
+            throw new IllegalArgumentException("the instance has more than " + capacity + " nodes");
         //boolean respect = instance.respectTriangularInequality();
         //int threshold = TransitionTimes.thresholdRespectTriangularInequality(instance.distances);
         //System.out.println("respect = " + respect + " threshold = " + threshold);
-        nNodes = instance.nbNodes;
-        nNodesWithDepot = nNodes + 1; // node 0: begin node, last node: end depot
-        nodes = new int[nNodesWithDepot];
+        this.capacity = capacity;
         begin = 0;
-        end = nNodes;
-        visitOrder = new int[nNodes];
-        heuristicVal = new Integer[nNodes];
-        branchingRange = new Integer[nNodes];
-        branching = new Procedure[nNodes];
+        end = capacity; // last node: end depot. Nodes in [instance.nbNodes..capacity-1] are never visited
+        int size = capacity + 1;
+        nodes = new int[size];
+        visitOrder = new int[size];
         // transition from node to node
-        distances = new int[nNodesWithDepot][nNodesWithDepot];
-        twStart = new int[nNodesWithDepot];
-        twEnd = new int[nNodesWithDepot];
+        distances = new int[size][size];
+        twStart = new int[size];
+        twEnd = new int[size];
+        seed = 42;
+        random = new Random(seed);
+        relaxed = new boolean[size];
+        relaxedNodes = new int[size];
+        memberInSolution = new boolean[size];
+        toRelax = new boolean[size];
+        shawSelected = new int[size];
+        shawCandidates = new int[SHAW_NEIGHBORS];
+        notYetVisited = new int[size];
+        insertion = new int[size];
+        solProvided = false;
+        load(instance, timeout);
+    }
+
+    /**
+     * Prepares the solver for a new instance with at most as many nodes as its capacity.
+     * The model (solver, sequence and time variables) is restored to its root state and reused
+     * instead of being built again, unless the time windows of the instance exceed the ones it can hold.
+     * The observers are removed.
+     *
+     * @param instance instance to solve
+     * @param timeout timeout for the solving [s]
+     */
+    public void reset(final TsptwInstance instance, final int timeout) {
+        if (instance.nbNodes > capacity)
+            throw new IllegalArgumentException("the instance has more than " + capacity + " nodes");
+        observers.clear();
+        load(instance, timeout);
+    }
+
+    /**
+     * Copies the data of an instance into the arrays of the solver and resets the solutions found
+     * @param instance instance to solve
+     * @param timeout timeout for the solving [s]
+     */
+    private void load(final TsptwInstance instance, final int timeout) {
+        this.instance = instance;
+        this.timeout  = timeout * 1000; // convert to millis
+        nNodes = instance.nbNodes;
+        nNodesWithDepot = nNodes + 1; // node 0: begin node, node capacity: end depot
+        loadDistances();
+        loadTimeWindows();
+        if (maxTwEnd > horizon)
+            cp = null; // the time variables cannot hold the time windows, the model must be built again
+        // solution
+        if (currentSolOrder == null || currentSolOrder.length != nNodesWithDepot)
+            currentSolOrder = new int[nNodesWithDepot];
+        else
+            Arrays.fill(currentSolOrder, 0);
+        bestSolOrder = new int[nNodesWithDepot];
+        bestSol = new TsptwResult(Integer.MAX_VALUE);
+        bestNVisited = 0;
+        Arrays.fill(memberInSolution, false);
+        nMemberInSolution = 0;
+        mostSimilar = null;
+        toRelaxFromShaw = -1;
+        searchStatistics = new SearchStatistics();
+        currentSearch = null;
+        neighborhoodSize = 0;
+        tourCp = null; // the tour model is built again for the new instance
+        startMillis = System.currentTimeMillis();
+        cancellation.reset();
+        cancellation.cancelAfter(this.timeout);
+    }
+
+    /**
+     * Copies the distances of the instance into the ones used by the model,
+     * closed by the shortest paths if {@link #shortestPaths} is set
+     */
+    private void loadDistances() {
+        int[][] instanceDistances = shortestPaths ? instance.allPairsShortestPath() : instance.distances;
+        maxDistance = 0;
         for (int i = 0 ; i < nNodes ; ++i) {
-            System.arraycopy(instance.distances[i], 0, distances[i], 0, nNodes);
+            System.arraycopy(instanceDistances[i], 0, distances[i], 0, nNodes);
+            Arrays.fill(distances[i], nNodes, end, 0); // nodes not belonging to the instance
             distances[i][end] = distances[i][begin]; // getting to the end node is the same as getting to the beginning node
+            maxDistance = Math.max(Arrays.stream(distances[i]).max().getAsInt(), maxDistance);
+        }
+    }
+
+    /**
+     * Copies the time windows of the instance into the ones used by the model,
+     * tightened by the {@link Preprocessing} if {@link #rootPreprocessing} is set
+     */
+    private void loadTimeWindows() {
+        maxTwStart = 0;
+        maxTwEnd = 0;
+        for (int i = 0 ; i < nNodes ; ++i) {
             twStart[i] = instance.timeWindows[i].getEarliest();
             twEnd[i] = instance.timeWindows[i].getLatest();
             maxTwStart = Math.max(twStart[i], maxTwStart);
             maxTwEnd = Math.max(twEnd[i], maxTwEnd);
-            maxDistance = Math.max(Arrays.stream(distances[i]).max().getAsInt(), maxDistance);
         }
         // time window for end node
         twStart[end] = instance.timeWindows[begin].getEarliest();
         twEnd[end] = instance.timeWindows[begin].getLatest();
-        seed = 42;
-        random = new Random(seed);
-        relaxed = new HashSet<>();
-        relaxedNodes = new int[nNodes];
-        bestSolOrder = new int[nNodesWithDepot];
-        currentSolOrder = new int[nNodesWithDepot];
-        notYetVisited = new int[nNodes];
-        // solution
-        bestSol = new TsptwResult(Integer.MAX_VALUE);
-        solProvided = false;
-        bestNVisited = 0;
-        insertion = new int[nNodes];
-        init = System.currentTimeMillis();
+        preprocessing = null;
+        if (rootPreprocessing) {
+            preprocessing = new Preprocessing(distances, twStart, twEnd, begin, end, nNodes);
+            preprocessing.run();
+        }
+    }
+
+    /**
+     * Removes the insertions of a sequence over the nodes of the instance that use an infeasible arc,
+     * found by the {@link Preprocessing}
+     * @param seq sequence whose nodes 0..nNodes-1 are the ones of the instance
+     */
+    private void removeInfeasibleArcs(OldSeqVar seq) {
+        if (preprocessing == null)
+            return;
+        for (int node = 1 ; node < nNodes ; ++node)
+            for (int pred = 0 ; pred < nNodes ; ++pred)
+                if (pred != node && !preprocessing.isArcFeasible(pred, node))
+                    seq.removePredInsert(pred, node);
+    }
+
+    /**
+     * Stops the solving at the next check of the searches, which can be done from any thread.
+     * The solving also stops when the timeout is reached or when its thread is interrupted.
+     * In all cases, the best solution found so far is returned.
+     */
+    @Override
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    /**
+     * @return true if the solving must stop, because of the timeout, of {@link #cancel()} or of an interruption
+     */
+    private boolean stopped() {
+        return cancellation.isCancelled() || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Registers the solver as a platform MBean while a solving method runs
+     * @param solving solving method
+     * @return result of the solving
+     */
+    private TsptwResult monitored(Supplier<TsptwResult> solving) {
+        ObjectName name = null;
+        try {
+            name = SearchMonitor.register(this, "minicp.examples.tsptw", "TsptwSolver", null);
+        } catch (JMException e) {
+            if (verbosity > 1)
+                System.out.println("the solver cannot be monitored: " + e.getMessage());
+        }
+        try {
+            return solving.get();
+        } finally {
+            if (name != null)
+                SearchMonitor.unregister(name);
+        }
+    }
+
+    /**
+     * @param counter value of the statistics of a search
+     * @return value of the statistics counted over the searches done since the instance was loaded,
+     * including the one that is running
+     */
+    private long liveStatistic(ToLongFunction<SearchStatistics> counter) {
+        long value = counter.applyAsLong(searchStatistics);
+        DFSearch search = currentSearch;
+        SearchStatistics running = search == null ? null : search.currentStatistics();
+        if (running != null && running.isRunning())
+            value += counter.applyAsLong(running);
+        return value;
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        long millis = getElapsedMillis();
+        return millis == 0 ? 0 : 1000.0 * liveStatistic(SearchStatistics::numberOfNodes) / millis;
+    }
+
+    @Override
+    public double getFailuresPerSecond() {
+        long millis = getElapsedMillis();
+        return millis == 0 ? 0 : 1000.0 * liveStatistic(SearchStatistics::numberOfFailures) / millis;
+    }
+
+    @Override
+    public int getNeighborhoodSize() {
+        return neighborhoodSize;
+    }
+
+    @Override
+    public int getBestNumberOfVisitedNodes() {
+        return Math.max(0, bestNVisited - 1);
+    }
+
+    @Override
+    public int getNumberOfNodes() {
+        return nNodes;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    @Override
+    public long getTrailSize() {
+        Solver model = cp;
+        return model == null ? -1 : SearchMonitor.trailSize(model.getStateManager());
+    }
+
+    @Override
+    public int getIncumbentCost() {
+        TsptwResult incumbent = bestSol;
+        return incumbent == null || incumbent.cost == Integer.MAX_VALUE ? -1 : incumbent.cost;
+    }
+
+    @Override
+    public int getTimeLimit() {
+        return timeout / 1000;
+    }
+
+    @Override
+    public void setTimeLimit(int seconds) {
+        timeout = seconds * 1000;
+        cancellation.cancelAfter(timeout - getElapsedMillis());
     }
 
     public void setSeed(long seed) {
@@ -151,7 +399,68 @@ public class TsptwSolver {
      * @return first feasible solution in the available time
      */
     public TsptwResult satisfy() {
+        return monitored(() -> {
+            solveSatisfy();
+            return bestSol;
+        });
+    }
+
+    /**
+     * Finds a first feasible tour as {@link #satisfy()}, then improves its travel distance
+     * with a large neighborhood search on a model holding a {@link TSPTW} constraint,
+     * until the available time is elapsed or the tour is proven optimal. Each improving tour is notified to the observers
+     * @return best tour found in the available time, with a cost of {@link Integer#MAX_VALUE} if no feasible tour was found
+     */
+    public TsptwResult optimize() {
+        return monitored(this::solveOptimize);
+    }
+
+    private TsptwResult solveOptimize() {
         solveSatisfy();
+        if (bestNVisited != nNodesWithDepot)
+            return bestSol; // no feasible tour to start from
+        bestSol = new TsptwResult(cost());
+        if (!stopped() && bestSol.cost > 0) {
+            if (verbosity > 0)
+                System.out.println("optimizing the distance of the tour from " + bestSol.cost);
+            try {
+                initTourModel();
+            } catch (InconsistencyException e) {
+                bestSol.isOptimum = tourProvable; // the bounds at the root already prove that no tour is shorter
+                return bestSol;
+            }
+            improveTour();
+        }
+        return bestSol;
+    }
+
+    /**
+     * Gives a first feasible solution found by a beam search building the tours forward.
+     * The width of the beam starts at {@link #BEAM_INITIAL_WIDTH} and is doubled until a tour is found,
+     * the maximum width is reached or the available time is elapsed
+     * @return first feasible solution in the available time
+     */
+    public TsptwResult beam() {
+        return monitored(this::solveBeam);
+    }
+
+    private TsptwResult solveBeam() {
+        BeamSearch beam = new BeamSearch(nNodes, distances, twStart, twEnd);
+        int maxWidth = BeamSearch.maxWidth(nNodes);
+        for (int width = Math.min(BEAM_INITIAL_WIDTH, maxWidth); !stopped(); width = Math.min(2 * width, maxWidth)) {
+            if (verbosity > 1)
+                System.out.println("beam of width " + width);
+            int[] tour = beam.solve(width, this::stopped);
+            if (tour != null) {
+                System.arraycopy(tour, 0, currentSolOrder, 0, nNodesWithDepot);
+                updateSatisfiabilitySolution(currentSolOrder, nNodesWithDepot);
+                bestSol = new TsptwResult(cost());
+                notifySolution(currentSolOrder, bestSol.cost);
+                break;
+            }
+            if (width == maxWidth)
+                break;
+        }
         return bestSol;
     }
 
@@ -161,27 +470,28 @@ public class TsptwSolver {
      * @return first feasible solution in the available time
      */
     public TsptwResult satisfy_greedy() {
-        cp = makeSolver();
-        initCpVars();
+        return monitored(this::solveGreedy);
+    }
+
+    private TsptwResult solveGreedy() {
+        initModel();
         postSatisfactionConstraint();
-        DFSearch search = makeDfs(cp, this::maxRegretBranching);
+        DFSearch search = makeDfs(cp, DecisionBranching.of(this::maxRegretBranching, this::applyDecision));
+        search.setCancellationToken(cancellation);
+        currentSearch = search;
         Procedure solutionNotifier = () -> {
             int nVisit = this.nVisitedNodes.max();
             if (nVisit > bestNVisited) {
                 updateCurrentOrder();
-                nNotYetVisited = route.fillExcluded(notYetVisited);
+                nNotYetVisited = fillNotYetVisited();
                 if (verbosity > 0) {
                     String excludedString = "{" + Arrays.stream(notYetVisited, 0, nNotYetVisited)
                             .mapToObj(Integer::toString).collect(Collectors.joining(", ")) + "}";
-                    System.out.println("#visit: " + (nVisit-1) + "/" + (nNodes) + " (closed sequence = " + (route.nExcluded() == 0) +
+                    System.out.println("#visit: " + (nVisit-1) + "/" + (nNodes) + " (closed sequence = " + (nNotYetVisited == 0) +
                             "). ordering: 0 " + route.ordering(false, " ") + " excluded = " + excludedString);
                 }
                 updateSatisfiabilitySolution(currentSolOrder, nVisit);
-                // stores within the set all nodes that have been visited
-                memberInSolution.clear();
-                for (int i = 1 ; i < nVisit ; ++i) {
-                    memberInSolution.add(currentSolOrder[i]);
-                }
+                updateMemberInSolution(nVisit);
                 if (bestNVisited == nNodesWithDepot) {
                     notifySolution(currentSolOrder, cost());
                 } else {
@@ -192,6 +502,7 @@ public class TsptwSolver {
         search.onSolution(solutionNotifier);
 
         SearchStatistics stats = search.solve(s -> s.numberOfSolutions() >= 1); // find an initial number of possible nodes
+        searchStatistics.accumulate(stats);
         return bestSol;
     }
 
@@ -215,51 +526,50 @@ public class TsptwSolver {
             return;
         }
 
-        cp = makeSolver();
-        initCpVars();
+        initModel();
         postSatisfactionConstraint();
 
-        DFSearch search = makeDfs(cp, this::maxRegretBranching);
-        Procedure solutionNotifier = () -> {
-            int nVisit = this.nVisitedNodes.max();
-            if (nVisit > bestNVisited) {
-                updateCurrentOrder();
-                nNotYetVisited = route.fillExcluded(notYetVisited);
-                if (verbosity > 0) {
-                    String excludedString = "{" + Arrays.stream(notYetVisited, 0, nNotYetVisited)
-                            .mapToObj(Integer::toString).collect(Collectors.joining(", ")) + "}";
-                    System.out.println("#visit: " + (nVisit-1) + "/" + (nNodes) + " (closed sequence = " + (route.nExcluded() == 0) +
-                            "). ordering: 0 " + route.ordering(false, " ") + " excluded = " + excludedString);
-                }
-                updateSatisfiabilitySolution(currentSolOrder, nVisit);
-                // stores within the set all nodes that have been visited
-                memberInSolution.clear();
-                for (int i = 1 ; i < nVisit ; ++i) {
-                    memberInSolution.add(currentSolOrder[i]);
-                }
-                if (bestNVisited == nNodesWithDepot) {
-                    notifySolution(currentSolOrder, cost());
-                }
-            }
-        };
-        search.onSolution(solutionNotifier);
-
+        Procedure solutionNotifier = () -> recordSatisfiabilitySolution(this);
+        DFSearch search;
         SearchStatistics stats;
-        stats = search.solve(s -> s.numberOfSolutions() >= 1); // find an initial number of possible nodes
+        if (nSearchWorkers > 1) {
+            // the subproblems are solved on copies of the model, this one being used by the first worker
+            ParallelDFSearch eps = makeEmbarrassinglyParallelDfs(nSearchWorkers, decompositionDepth, w -> {
+                TsptwSolver model = w == 0 ? this : satisfiabilityReplica(w);
+                return new ParallelDFSearch.Replica(model.cp.getStateManager(),
+                        DecisionBranching.of(model::maxRegretBranching, model::applyDecision))
+                        .onSolution(() -> recordSatisfiabilitySolution(model));
+            });
+            eps.setCancellationToken(cancellation);
+            stats = eps.solve(s -> s.numberOfSolutions() >= 1); // find an initial number of possible nodes
+        } else {
+            search = makeDfs(cp, DecisionBranching.of(this::maxRegretBranching, this::applyDecision));
+            search.setCancellationToken(cancellation);
+            currentSearch = search;
+            useTranspositionTable(search);
+            search.onSolution(solutionNotifier);
+            stats = search.solve(s -> s.numberOfSolutions() >= 1); // find an initial number of possible nodes
+        }
+        searchStatistics.accumulate(stats);
         boolean foundFirstSol = bestNVisited == nNodesWithDepot;
-        if (!foundFirstSol) {
+        if (!foundFirstSol && !stopped()) {
             if (verbosity > 1)
                 System.out.println("switching branching");
-            search = makeDfs(cp, this::branchOnOneInsertionVar);
+            search = makeDfs(cp, DecisionBranching.of(this::branchOnOneInsertionVar, this::applyDecision));
+            search.setCancellationToken(cancellation);
+            currentSearch = search;
+            if (lnsDiscrepancy)
+                search.setIterativeDiscrepancy(Integer.MAX_VALUE); // the node limit is spread over the best deviations
+            useTranspositionTable(search);
             search.onSolution(solutionNotifier);
             Objective objective = cp.maximize(nVisitedNodes);
 
-            boolean running = System.currentTimeMillis() - init < timeout;
+            boolean running = true;
             // VLNS parameters
             int minNeighborhoodStart = 5;
             int range = 5;
             int numIters = 3;
-            int nSearchNodeLimit = 1000;
+            AdaptiveNodeLimit nodeLimit = new AdaptiveNodeLimit(nNodes);
             int maxRange = Math.max(nNodes / 2 - range, nNodes - range);
 
             for (int minNeighborhood = minNeighborhoodStart; minNeighborhood <= maxRange && running; ++minNeighborhood) {
@@ -271,11 +581,23 @@ public class TsptwSolver {
                         System.out.println("relaxing " + nRelax + " nodes / " + nNodes);
                     for (int i = 0; i < numIters && running; ++i) {
                         if (running) {
+                            int nSearchNodeLimit = nodeLimit.value();
+                            neighborhoodSize = nRelax;
+                            LnsIterationEvent event = new LnsIterationEvent();
+                            event.begin();
                             stats = search.optimizeSubjectTo(objective,
-                                    searchStatistics -> (
-                                            System.currentTimeMillis() - init >= timeout
-                                                    || searchStatistics.numberOfNodes() > nSearchNodeLimit),
+                                    searchStatistics -> searchStatistics.numberOfNodes() > nSearchNodeLimit,
                                     () -> relaxShaw(nRelax, notYetVisited[random.nextInt(nNotYetVisited)]));
+                            searchStatistics.accumulate(stats);
+                            nodeLimit.update(stats, stats.numberOfSolutions() >= 1);
+                            if (event.shouldCommit()) {
+                                event.operator = "shaw";
+                                event.relaxed = nRelax;
+                                event.nodeLimit = nSearchNodeLimit;
+                                event.nodes = stats.numberOfNodes();
+                                event.improved = stats.numberOfSolutions() >= 1;
+                                event.commit();
+                            }
                             if (stats.numberOfSolutions() >= 1 && verbosity > 1) {
                                 System.out.println("improved with shaw relaxation");
                             }
@@ -288,18 +610,160 @@ public class TsptwSolver {
                         }
 
                         foundFirstSol = bestNVisited == nNodesWithDepot;
-                        running = !foundFirstSol && System.currentTimeMillis() - init < timeout;
+                        running = !foundFirstSol && !stopped();
 
                     }
                 }
             }
         }
+        neighborhoodSize = 0;
         if (foundFirstSol) {
             if (verbosity > 0)
                 System.out.println("found first solution");
         }
     }
 
+    /**
+     * Gives an empty transposition table to a search, if the contexts without solution are remembered.
+     * The table is kept along the large neighborhood search, whose objective bound is only tightened,
+     * but not from one search to the other as their solutions differ.
+     * The table is not used with the candidate lists: a subtree explored through them is incomplete and depends
+     * on the width of the lists, which is not part of the context, such that it cannot be recorded as failed
+     * @param search search exploring the route
+     */
+    private void useTranspositionTable(DFSearch search) {
+        if (transpositions != null && candidateListSize == 0) {
+            transpositions.clear();
+            search.setTranspositionTable(transpositions);
+        }
+    }
+
+    /**
+     * Records the solution of the satisfiability problem found on a model of the instance,
+     * if it visits more nodes than the best one found so far
+     * @param model solver where the solution is found, either this one or a replica used by a parallel search
+     */
+    private void recordSatisfiabilitySolution(TsptwSolver model) {
+        int nVisit = model.nVisitedNodes.max();
+        if (nVisit > bestNVisited) {
+            model.updateCurrentOrder();
+            nNotYetVisited = model.fillNotYetVisited();
+            if (model != this) {
+                System.arraycopy(model.currentSolOrder, 0, currentSolOrder, 0, nNodesWithDepot);
+                System.arraycopy(model.notYetVisited, 0, notYetVisited, 0, nNotYetVisited);
+            }
+            if (verbosity > 0) {
+                String excludedString = "{" + Arrays.stream(notYetVisited, 0, nNotYetVisited)
+                        .mapToObj(Integer::toString).collect(Collectors.joining(", ")) + "}";
+                System.out.println("#visit: " + (nVisit-1) + "/" + (nNodes) + " (closed sequence = " + (nNotYetVisited == 0) +
+                        "). ordering: 0 " + model.route.ordering(false, " ") + " excluded = " + excludedString);
+            }
+            updateSatisfiabilitySolution(currentSolOrder, nVisit);
+            updateMemberInSolution(nVisit);
+            if (bestNVisited == nNodesWithDepot) {
+                notifySolution(currentSolOrder, cost());
+            }
+        }
+    }
+
+    /**
+     * Marks the nodes visited by the current solution
+     * @param nVisit number of nodes visited by the current solution, begin depot included
+     */
+    private void updateMemberInSolution(int nVisit) {
+        Arrays.fill(memberInSolution, false);
+        for (int i = 1 ; i < nVisit ; ++i)
+            memberInSolution[currentSolOrder[i]] = true;
+        nMemberInSolution = nVisit - 1;
+    }
+
+    /**
+     * Creates a copy of the model of the satisfiability problem, used by a worker of a parallel search.
+     * The replica is stopped by the cancellation of this solver, and its random tie-breaks are derived from the seed
+     * of this solver such that the runs can be reproduced
+     * @param worker index of the worker using the replica, {@code > 0}
+     * @return solver holding a model of the current instance, with the same settings
+     */
+    private TsptwSolver satisfiabilityReplica(int worker) {
+        TsptwSolver replica = new TsptwSolver(instance, timeout / 1000, capacity);
+        replica.cancellation.reset(); // removes the deadline of its own token
+        replica.cancellation = cancellation;
+        replica.setSeed(seed + worker);
+        replica.parallelFiltering = parallelFiltering;
+        replica.nogoodLearning = nogoodLearning;
+        replica.setShortestPaths(shortestPaths);
+        replica.setRootPreprocessing(rootPreprocessing);
+        replica.candidateListSize = candidateListSize;
+        replica.initModel();
+        replica.postSatisfactionConstraint();
+        return replica;
+    }
+
+    /**
+     * Improves the best tour with a large neighborhood search on the tour model, until the solving is stopped
+     * or an iteration relaxing every node completes its search, proving that the best tour is optimal.
+     * The number of relaxed nodes starts at {@link #TOUR_MIN_RELAX} and grows by one
+     * after {@link #TOUR_ITERATIONS_PER_SIZE} iterations without improvement, up to half of the nodes.
+     * The neighborhoods then wrap around through an iteration relaxing every node, whose node limit doubles each time.
+     * The proof is only given without candidate lists and if the distances respect the triangular inequality,
+     * see {@link #tourProvable}
+     */
+    private void improveTour() {
+        DFSearch search = makeDfs(tourCp, DecisionBranching.of(this::tourBranching, this::applyTourDecision));
+        search.setCancellationToken(cancellation);
+        currentSearch = search;
+        if (lnsDiscrepancy)
+            search.setIterativeDiscrepancy(Integer.MAX_VALUE);
+        search.onSolution(this::recordTour);
+        Objective objective = tourCp.minimize(tourDistance);
+        AdaptiveNodeLimit nodeLimit = new AdaptiveNodeLimit(nNodes);
+        int maxRelax = Math.max(TOUR_MIN_RELAX, nNodes / 2);
+        int nRelax = TOUR_MIN_RELAX;
+        int nFailed = 0; // iterations without improvement with the current number of relaxed nodes
+        long fullNodeLimit = (long) AdaptiveNodeLimit.MAX_NODES_PER_INSTANCE_NODE * nNodes; // node limit when relaxing every node
+        boolean[] fixed = new boolean[1]; // true if the relaxation of the iteration fixed some nodes
+        boolean proven = false; // true once the whole problem has been searched
+        while (!stopped() && !proven) {
+            int relax = nRelax;
+            long nSearchNodeLimit = relax >= nNodes ? fullNodeLimit : nodeLimit.value();
+            neighborhoodSize = relax;
+            LnsIterationEvent event = new LnsIterationEvent();
+            event.begin();
+            fixed[0] = true;
+            SearchStatistics stats = search.optimizeSubjectTo(objective,
+                    searchStatistics -> searchStatistics.numberOfNodes() > nSearchNodeLimit,
+                    () -> fixed[0] = relaxTour(relax, 1 + random.nextInt(nNodes - 1)));
+            proven = tourProvable && !fixed[0] && stats.isCompleted();
+            if (proven)
+                bestSol.isOptimum = true;
+            searchStatistics.accumulate(stats);
+            boolean improved = stats.numberOfSolutions() >= 1;
+            if (relax < nNodes)
+                nodeLimit.update(stats, improved);
+            if (event.shouldCommit()) {
+                event.operator = "shaw";
+                event.relaxed = relax;
+                event.nodeLimit = nSearchNodeLimit;
+                event.nodes = stats.numberOfNodes();
+                event.improved = improved;
+                event.commit();
+            }
+            if (relax >= nNodes) { // every node was relaxed, the next searches relax again the fewest nodes
+                if (fullNodeLimit < Long.MAX_VALUE / 2)
+                    fullNodeLimit *= 2;
+                nRelax = TOUR_MIN_RELAX;
+                nFailed = 0;
+            } else if (improved) {
+                nRelax = TOUR_MIN_RELAX;
+                nFailed = 0;
+            } else if (++nFailed == TOUR_ITERATIONS_PER_SIZE) {
+                nRelax = nRelax >= maxRelax ? nNodes : nRelax + 1;
+                nFailed = 0;
+            }
+        }
+        neighborhoodSize = 0;
+    }
+
     /* ================================ relaxation operators =======================================================  */
 
 
@@ -310,53 +774,13 @@ public class TsptwSolver {
      * @param initialNode node to which the comparison is applied. Relax nodes that are similar to this one
      */
     private void relaxShaw(int nRelax, int initialNode) {
-        if (nRelax >= nNodes || nRelax >= memberInSolution.size())
+        if (!selectShaw(nRelax, initialNode))
             return;
-        toRelaxFromShaw = initialNode;
-        int p = 6; // diversification factor
-        if (mostSimilar == null) {
-            // initializes the similarity matrix between the nodes
-            int[][] similarity = new int[nNodesWithDepot][nNodesWithDepot];
-            for (int i = 0 ; i < nNodesWithDepot ; ++i) {
-                for (int j = 0 ; j < nNodesWithDepot ; ++j) {
-                    similarity[i][j] = similarity(i, j);
-                }
-            }
-            mostSimilar = new int[nNodesWithDepot][];
-            for (int i = 0 ; i < nNodesWithDepot ; ++i) {
-                int finalI = i;
-                mostSimilar[i] = IntStream.range(0, nNodesWithDepot)
-                        .boxed().sorted(Comparator.comparingInt(x -> similarity[finalI][x]))
-                        .mapToInt(ele -> ele).toArray();
-            }
-        }
-        toRelax.clear(); // all nodes that must be relaxed
-        toRelax.add(initialNode);
-        nodes[0] = initialNode;
-        int nSelected = 1;
-        int nIter = 0;
-        while (nSelected < nRelax && nIter < 200) {
-            // select randomly one of the nodes in the set to relax
-            int request = nodes[random.nextInt(nSelected)];
-            // get the similar nodes that are member not yet selected
-            // TODO prevent object creation
-            int[] L = Arrays.stream(mostSimilar[request])
-                    .filter(i -> !toRelax.contains(i) && memberInSolution.contains(i) && i != begin && i != end)
-                    .toArray();
-            if (L.length > 0) {
-                // select a node in the beginning of the array
-                int index = (int) (Math.pow(random.nextDouble(1), p) * (L.length - 1));
-                toRelax.add(L[index]);
-                nodes[nSelected] = L[index];
-                nSelected += 1;
-            }
-            nIter++; // don't want to loop indefinitely
-        }
         int pred = begin;
         int node = 0;
         for (int i = 1; i < bestNVisited - 1; ++i) {
             node = currentSolOrder[i];
-            if (!toRelax.contains(node)) {
+            if (!toRelax[node]) {
                 route.insert(pred, node);
                 pred = node;
             }
@@ -365,18 +789,69 @@ public class TsptwSolver {
     }
 
     /**
-     * Computes the similarity between 2 nodes
+     * Relax the nodes of the best tour similar to another one, on the tour model
      *
-     * @return similarity between nodes: the lower the value, the more similar are the nodes
+     * @param nRelax number of nodes to relax
+     * @param initialNode node to which the comparison is applied
+     * @return false if no node is fixed, the whole problem being searched
      */
-    private int similarity(int from, int to) {
-        int PHI = 9;
-        int XI = 3;
-        return (int) (1000 * (PHI * ((double) distances[from][to] / maxDistance)
-                + XI * (Math.abs((double) (twStart[from] - twStart[to]) / maxTwStart)
-                      + Math.abs((double) (twEnd[from] - twEnd[to]) / maxTwEnd))));
+    private boolean relaxTour(int nRelax, int initialNode) {
+        if (!selectShaw(nRelax, initialNode))
+            return false;
+        int pred = begin;
+        for (int i = 1; i < nNodes; ++i) {
+            int node = currentSolOrder[i];
+            if (!toRelax[node]) {
+                tour.insert(pred, node);
+                pred = node;
+            }
+        }
+        tourCp.fixPoint();
+        return pred != begin;
     }
 
+    /**
+     * Selects the nodes of the best solution similar to another one, stored in {@link TsptwSolver#toRelax}
+     *
+     * @param nRelax number of nodes to select
+     * @param initialNode node to which the comparison is applied
+     * @return false if every node of the solution would be relaxed, in which case none is selected
+     */
+    private boolean selectShaw(int nRelax, int initialNode) {
+        if (nRelax >= nNodes || nRelax >= nMemberInSolution)
+            return false;
+        toRelaxFromShaw = initialNode;
+        int p = 6; // diversification factor
+        if (mostSimilar == null)
+            mostSimilar = new SimilarityIndex(distances, twStart, twEnd, maxDistance, maxTwStart, maxTwEnd,
+                    nNodes, Math.min(SHAW_NEIGHBORS, nNodes - 1));
+        for (int i = 0 ; i < nShawSelected ; ++i)
+            toRelax[shawSelected[i]] = false; // all nodes that must be relaxed
+        toRelax[initialNode] = true;
+        shawSelected[0] = initialNode;
+        nShawSelected = 1;
+        int nIter = 0;
+        while (nShawSelected < nRelax && nIter < 200) {
+            // select randomly one of the nodes in the set to relax
+            int request = shawSelected[random.nextInt(nShawSelected)];
+            // get the similar nodes that are member not yet selected
+            int nCandidates = 0;
+            for (int rank = 0 ; rank < mostSimilar.k() ; ++rank) {
+                int node = mostSimilar.neighbor(request, rank);
+                if (!toRelax[node] && memberInSolution[node] && node != begin && node != end)
+                    shawCandidates[nCandidates++] = node;
+            }
+            if (nCandidates > 0) {
+                // select a node in the beginning of the array
+                int index = (int) (Math.pow(random.nextDouble(1), p) * (nCandidates - 1));
+                int selected = shawCandidates[index];
+                toRelax[selected] = true;
+                shawSelected[nShawSelected++] = selected;
+            }
+            nIter++; // don't want to loop indefinitely
+        }
+        return true;
+    }
 
     /**
      * relax nRelax nodes randomly from the current solution
@@ -399,17 +874,17 @@ public class TsptwSolver {
             ++relaxEnd;
         }
         // relaxedNodes[0..relaxEnd-1] contains the relaxed nodes
-        relaxed.clear();
+        Arrays.fill(relaxed, false);
         for (int i = 0 ; i < relaxEnd; ++i)
-            relaxed.add(relaxedNodes[i]);
+            relaxed[relaxedNodes[i]] = true;
         // relaxedNodes[relaxEnd..] are set to the previous value
         int prev = begin;
         //for (int current: bestSolOrder) {
         for (int i = 1 ; i < nVisit - 1 ; ++i) {
             int current = currentSolOrder[i];
-            if (!relaxed.contains(current)) {
+            if (!relaxed[current]) {
                 try {
-                    cp.post(new Insert(route, prev, current), false); // the vehicle goes through this node
+                    route.insert(prev, current); // the vehicle goes through this node
                 } catch (InconsistencyException e) {
                     throw e;
                 }
@@ -439,14 +914,14 @@ public class TsptwSolver {
             ++relaxEnd;
         }
         // relaxedNodes[0..relaxEnd-1] contains the relaxed nodes
-        relaxed.clear();
+        Arrays.fill(relaxed, false);
         for (int i = 0 ; i < relaxEnd; ++i)
-            relaxed.add(relaxedNodes[i]);
+            relaxed[relaxedNodes[i]] = true;
         // relaxedNodes[relaxEnd..] are set to the previous value
         int prev = begin;
         for (int current: bestSolOrder) {
-            if (!relaxed.contains(current)) {
-                cp.post(new Insert(route, prev, current), false); // the vehicle goes through this node
+            if (!relaxed[current]) {
+                route.insert(prev, current); // the vehicle goes through this node
                 prev = current; // only updated when a non-relaxed node is met, to complete the partial route
             }
         }
@@ -510,7 +985,7 @@ public class TsptwSolver {
                 current = currentSolOrder[i];
             }
             try {
-                cp.post(new Insert(route, pred, current), false);
+                route.insert(pred, current);
             } catch (Exception e) {
                 int a = 0;
                 throw e;
@@ -543,57 +1018,23 @@ public class TsptwSolver {
      *
      * variable selection: select the node with the maximum regret
      *  the regret is computed as the difference between the best insertiError when running data/TSPTW/instances/SolomonPotvinBengio/rc_204.1.txt with seed = 6512865725848787841on and the second best one
-     *  this is more expensive than {@link TsptwSolver#branchForSatisfiability()}
+     *  this is more expensive than {@link TsptwSolver#branchForSatisfiability(Decisions)}
      * value selection: branch on every scheduled insertion in increasing heuristic value
      *
-     * @return branching to solve the TSPTW instance
+     * @param decisions buffer filled with the insertions to branch on
      */
-    public Procedure[] maxRegretBranching() {
+    public void maxRegretBranching(Decisions decisions) {
         if (route.isFixed())
-            return EMPTY;
+            return;
         // selects the node having the maximum regret
-        int bestNode = -1;
-        int bestRegret = Integer.MIN_VALUE;
-        int size = route.fillPossible(nodes);
-        for (int i = 0 ; i < size ; ++i) {
-            int nInsert = route.fillMemberPredInsert(nodes[i], insertion);
-            int minCost1 = Integer.MAX_VALUE;
-            int minCost2 = Integer.MAX_VALUE; // minCost1 < minCost2
-            for (int j = 0 ; j < nInsert ; ++j) {
-                // TODO incorpore detour cost in heuristic, use different alpha and beta
-                int cost = heuristic(nodes[i], insertion[j]);
-                if (cost < minCost2) {
-                    if (cost < minCost1) { // better than all values that were previously found
-                        minCost2 = minCost1;
-                        minCost1 = cost;
-                    } else { // better than minCost2 but not than minCost1
-                        minCost2 = cost;
-                    }
-                }
-            }
-            int regret = minCost2 - minCost1;
-            if (regret > bestRegret) {
-                bestNode = nodes[i];
-                bestRegret = regret;
-            }
-        }
+        int bestNode = regretCache.maxRegretNode();
         int branchingNode = bestNode;
         // branch on every member insertion
-        int minInsert = route.fillMemberPredInsert(branchingNode, nodes);
-        for (int i = 0 ; i < minInsert; ++i) {
-            int pred = nodes[i];
-            branchingRange[i] = i;
-            heuristicVal[i] =  satisfiabilityHeuristic(branchingNode, pred);
-            branching[i] = () -> cp.post(new Insert(route, pred, branchingNode));
-        }
+        int minInsert = fillBranchingPredInsert(route, routeCandidates, branchingNode, nodes);
+        for (int i = 0 ; i < minInsert; ++i)
+            decisions.add(INSERT, nodes[i], branchingNode, satisfiabilityHeuristic(branchingNode, nodes[i]));
         // sort according to the heuristic
-        Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
-        Procedure[] branchingSorted = new Procedure[minInsert];
-        for (int i = 0 ; i < minInsert ; ++i)
-            branchingSorted[i] = branching[branchingRange[i]];
-        // exclude all possible nodes, binding the sequence and giving a solution
-        //branchingSorted[minInsert] = () -> {cp.post(new ExcludeAllPossible(route));};
-        return branchingSorted;
+        decisions.sort();
     }
 
     /**
@@ -604,11 +1045,11 @@ public class TsptwSolver {
      * variable selection: select the node with the least scheduled insertions
      * value selection: branch on every scheduled insertion in increasing heuristic value
      *
-     * @return branching to solve the TSPTW instance
+     * @param decisions buffer filled with the decisions to branch on
      */
-    public Procedure[] branchForSatisfiability() {
+    public void branchForSatisfiability(Decisions decisions) {
         if (route.isFixed()) // all nodes have been sequenced
-            return EMPTY;
+            return;
         int branchingNode;
         if (route.isPossible(toRelaxFromShaw)) {
             // first try the insertion from this node
@@ -630,30 +1071,21 @@ public class TsptwSolver {
                 }
             }
             if (nFound == 0) {
-                return EMPTY;
+                return;
             }
             branchingNode = insertion[random.nextInt(nFound)]; // randomly select the node amongst the nodes that have been selected
         }
 
         // branch on every scheduled insertion
-        int minInsert = route.fillMemberPredInsert(branchingNode, nodes);
+        int minInsert = fillBranchingPredInsert(route, routeCandidates, branchingNode, nodes);
         if (minInsert == 0) {
-            return new Procedure[]{() -> cp.post(new Exclude(route, branchingNode))};
-        }
-        for (int i = 0 ; i < minInsert; ++i) {
-            int pred = nodes[i];
-            branchingRange[i] = i;
-            heuristicVal[i] =  satisfiabilityHeuristic(branchingNode, pred);
-            branching[i] = () -> cp.post(new Insert(route, pred, branchingNode));
+            decisions.add(EXCLUDE, -1, branchingNode);
+            return;
         }
+        for (int i = 0 ; i < minInsert; ++i)
+            decisions.add(INSERT, nodes[i], branchingNode, satisfiabilityHeuristic(branchingNode, nodes[i]));
         // sort according to the heuristic
-        Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
-        Procedure[] branchingSorted = new Procedure[minInsert];
-        for (int i = 0 ; i < minInsert ; ++i)
-            branchingSorted[i] = branching[branchingRange[i]];
-        // exclude all possible nodes, binding the sequence and giving a solution
-        //branchingSorted[minInsert] = () -> {cp.post(new ExcludeAllPossible(route));};
-        return branchingSorted;
+        decisions.sort();
     }
 
     /**
@@ -662,11 +1094,11 @@ public class TsptwSolver {
      * variable selection: select the node with the least scheduled insertions
      * value selection: branch on every scheduled insertion in increasing heuristic value
      *
-     * @return branching to solve the TSPTW instance
+     * @param decisions buffer filled with the insertions to branch on
      */
-    public Procedure[] branchOnOneInsertionVar() {
+    public void branchOnOneInsertionVar(Decisions decisions) {
         if (route.isFixed()) // all nodes have been sequenced
-            return EMPTY;
+            return;
 
         // select the node with the least insertions points
         int size = route.fillPossible(nodes);
@@ -688,19 +1120,67 @@ public class TsptwSolver {
         int branchingNode = insertion[random.nextInt(nFound)]; // randomly select the node amongst the nodes that have been selected
 
         // branch on every scheduled insertion
-        route.fillMemberPredInsert(branchingNode, nodes);
-        for (int i = 0 ; i < minInsert; ++i) {
-            int pred = nodes[i];
-            branchingRange[i] = i;
-            heuristicVal[i] =  heuristic(branchingNode, pred);
-            branching[i] = () -> cp.post(new Insert(route, pred, branchingNode));
-        }
+        int nInsert = fillBranchingPredInsert(route, routeCandidates, branchingNode, nodes);
+        for (int i = 0 ; i < nInsert; ++i)
+            decisions.add(INSERT, nodes[i], branchingNode, heuristic(branchingNode, nodes[i]));
         // sort according to the heuristic
-        Arrays.sort(branchingRange, 0, minInsert, Comparator.comparingInt(j -> heuristicVal[j]));
-        Procedure[] branchingSorted = new Procedure[minInsert];
-        for (int i = 0 ; i < minInsert ; ++i)
-            branchingSorted[i] = branching[branchingRange[i]];
-        return branchingSorted;
+        decisions.sort();
+    }
+
+    /**
+     * Gives the member predecessors after which a node is inserted by the branchings,
+     * restricted to its candidate predecessors if the candidate lists are used
+     * @param seq sequence in which the node is inserted
+     * @param candidates candidate predecessors of the nodes of the sequence
+     * @param node node to insert
+     * @param dest array filled with the predecessors
+     * @return number of predecessors written in dest
+     */
+    private int fillBranchingPredInsert(OldSeqVar seq, CandidateLists candidates, int node, int[] dest) {
+        if (candidateListSize > 0)
+            return candidates.fillCandidatePredInsert(seq, node, dest);
+        return seq.fillMemberPredInsert(node, dest);
+    }
+
+    /**
+     * Applies a decision given by one of the branchings on the route.
+     * The insertions that fail are recorded as nogoods
+     *
+     * @param kind {@link minicp.cp.BranchingScheme#INSERT} or {@link minicp.cp.BranchingScheme#EXCLUDE}
+     * @param pred member predecessor of the node, for an insertion
+     * @param node node being inserted or excluded
+     */
+    private void applyDecision(int kind, int pred, int node) {
+        if (kind == INSERT)
+            insertOrLearn(nogoodContext(), pred, node);
+        else
+            applySequenceDecision(route, kind, pred, node);
+    }
+
+    /**
+     * @return context of the current state of the route for the nogoods, or 0 if they are not learned
+     */
+    private long nogoodContext() {
+        return nogoodLearning ? routeContext.context() : 0L;
+    }
+
+    /**
+     * Inserts a node in the route and computes the fix-point.
+     * If the insertion fails, it is recorded as a nogood, such that it is removed
+     * right away when the same context is met in a later search
+     *
+     * @param context context of the route before the insertion, given by {@link #nogoodContext()}
+     * @param pred member predecessor of the node
+     * @param node node to insert
+     */
+    private void insertOrLearn(long context, int pred, int node) {
+        try {
+            insert(route, pred, node);
+        } catch (InconsistencyException e) {
+            if (nogoodLearning)
+                nogoods.record(context, pred, node);
+            throw e;
+        }
     }
 
     /* ================================ heuristic ================================================================  */
@@ -731,19 +1211,56 @@ public class TsptwSolver {
 
     /* ================================ model ======================================================================  */
 
+    /**
+     * Builds the model for the capacity of the solver if it does not exist yet,
+     * or restores it to its root state otherwise, and restricts it to the current instance
+     */
+    private void initModel() {
+        if (cp == null) {
+            cp = makeSolver();
+            horizon = maxTwEnd;
+            initCpVars();
+            cp.getStateManager().saveState(); // root state, restored for each new instance
+            rootLevel = cp.getStateManager().getLevel();
+        } else {
+            cp.getStateManager().restoreStateUntil(rootLevel - 1);
+            cp.getStateManager().saveState();
+        }
+        nogoods.clear(); // the nogoods only hold for the objective bounds of the previous model
+        // nodes beyond the size of the instance are never visited
+        for (int i = nNodes ; i < end ; ++i)
+            route.exclude(i);
+        // time window
+        for (int i = 0 ; i < nNodes ; ++i) {
+            time[i].removeBelow(twStart[i]);
+            time[i].removeAbove(twEnd[i]);
+        }
+        time[end].removeBelow(twStart[end]);
+        time[end].removeAbove(twEnd[end]);
+        removeInfeasibleArcs(route);
+        if (verbosity > 0 && preprocessing != null)
+            System.out.println("preprocessing: " + preprocessing.nTightened() + " time window bounds tightened, "
+                    + preprocessing.nInfeasibleArcs() + " infeasible arcs");
+        if (candidateListSize > 0)
+            routeCandidates.load(distances, twStart, twEnd, nNodes, candidateListSize);
+    }
+
     private void initCpVars() {
         // sequence
-        route = Factory.makeSequenceVar(cp, nNodesWithDepot, begin, end);
+        route = Factory.makeSequenceVar(cp, capacity + 1, begin, end);
 
-        // time window
-        time = new IntVar[nNodesWithDepot];
-        for (int i = 0 ; i < nNodes ; ++i) {
-            time[i] = makeIntVar(cp, twStart[i], twEnd[i], true);
+        // time window, restricted for each instance
+        time = new IntVar[capacity + 1];
+        for (int i = 0 ; i <= capacity ; ++i) {
+            time[i] = makeIntVar(cp, 0, horizon, true);
         }
-        time[end] = makeIntVar(cp, twStart[begin], twEnd[begin], true);
 
         // visited nodes cost
-        nVisitedNodes = makeIntVar(cp, 2, nNodesWithDepot);
+        nVisitedNodes = makeIntVar(cp, 2, capacity + 1);
+
+        // insertion costs of the possible nodes, reset along with the model
+        regretCache = new MaxRegretCache(route, time, this::heuristic);
+        routeCandidates = new CandidateLists(cp.getStateManager(), capacity);
     }
 
     /**
@@ -751,13 +1268,116 @@ public class TsptwSolver {
      * nodes can be excluded from the problem
      */
     private void postSatisfactionConstraint() {
-        int[] servingDuration = new int[nNodesWithDepot];
+        int[] servingDuration = new int[capacity + 1];
         // respect the transitions between nodes
-        cp.post(new TransitionTimes(route, time, distances, servingDuration));
+        TransitionTimes transitionTimes = new TransitionTimes(route, time, distances, servingDuration);
+        if (parallelFiltering)
+            transitionTimes.setParallelFiltering(ParallelInsertionFilter.DEFAULT_MIN_NODES);
+        cp.post(transitionTimes);
         // cost is the number of visited nodes
         cp.post(new NMember(route, nVisitedNodes));
+        // posted even without learning, as the context of the route is also the key of the transpositions
+        routeContext = new InsertionNogoods(route, nogoods);
+        cp.post(routeContext);
+    }
+
+    /* ================================ tour optimization model ====================================================  */
+
+    /**
+     * Builds the model optimizing the travel distance of the tours of the current instance.
+     * Contrary to the satisfiability model, every node must be visited, such that it only holds
+     * the nodes of the instance, the node {@link TsptwSolver#nNodes} being the end depot.
+     * The distance must be lower than the one of the best tour
+     */
+    private void initTourModel() {
+        int tourEnd = nNodes;
+        tourCp = makeSolver();
+        tourDistances = new int[nNodes + 1][nNodes + 1];
+        for (int i = 0 ; i < nNodes ; ++i) {
+            System.arraycopy(distances[i], 0, tourDistances[i], 0, nNodes);
+            tourDistances[i][tourEnd] = distances[i][begin];
+        }
+        // the end depot is at the same place as the begin depot, which keeps the triangular inequality of the distances
+        System.arraycopy(tourDistances[begin], 0, tourDistances[tourEnd], 0, nNodes + 1);
+        // the time windows of the TSPTW constraint assume the triangular inequality,
+        // and the searches restricted to the candidate lists are incomplete
+        tourProvable = candidateListSize == 0 && TransitionTimes.respectTriangularInequality(tourDistances);
+        tour = Factory.makeSequenceVar(tourCp, nNodes + 1, begin, tourEnd);
+        removeInfeasibleArcs(tour);
+        tourTime = new IntVar[nNodes + 1];
+        for (int i = 0 ; i < nNodes ; ++i)
+            tourTime[i] = makeIntVar(tourCp, twStart[i], twEnd[i], true);
+        tourTime[tourEnd] = makeIntVar(tourCp, twStart[end], twEnd[end], true);
+        tourDistance = makeIntVar(tourCp, 0, bestSol.cost - 1, true);
+        TSPTW tsptw = new TSPTW(tour, tourTime, tourDistance, tourDistances);
+        if (parallelFiltering)
+            tsptw.setParallelFiltering(ParallelInsertionFilter.DEFAULT_MIN_NODES);
+        tourCp.post(tsptw);
+        if (assignmentBound)
+            tourCp.post(new AssignmentDistance(tour, tourDistances, tourDistance, tourTime));
+        if (candidateListSize > 0) {
+            tourCandidates = new CandidateLists(tourCp.getStateManager(), nNodes);
+            tourCandidates.load(distances, twStart, twEnd, nNodes, candidateListSize);
+        }
+    }
+
+    /**
+     * Branches on the insertions of the node of the tour having the fewest of them,
+     * the cheapest detours being tried first
+     * @param decisions filled with the insertions of the selected node
+     */
+    private void tourBranching(Decisions decisions) {
+        if (tour.isFixed())
+            return;
+        int size = tour.fillPossible(nodes);
+        int minInsert = Integer.MAX_VALUE;
+        int branchingNode = -1;
+        for (int i = 0 ; i < size ; ++i) {
+            int nInsert = tour.nMemberPredInsert(nodes[i]);
+            if (nInsert < minInsert) {
+                minInsert = nInsert;
+                branchingNode = nodes[i];
+            }
+        }
+        if (minInsert == 0)
+            throw INCONSISTENCY;
+        int nInsert = fillBranchingPredInsert(tour, tourCandidates, branchingNode, nodes);
+        for (int i = 0 ; i < nInsert ; ++i) {
+            int pred = nodes[i];
+            int succ = tour.nextMember(pred);
+            int detour = tourDistances[pred][branchingNode] + tourDistances[branchingNode][succ] - tourDistances[pred][succ];
+            decisions.add(INSERT, pred, branchingNode, detour);
+        }
+        decisions.sort();
     }
 
+    private void applyTourDecision(int kind, int pred, int node) {
+        applySequenceDecision(tour, kind, pred, node);
+    }
+
+    /**
+     * Records the tour found on the tour model, which is shorter than the best one, and notifies it
+     */
+    private void recordTour() {
+        int current = tour.nextMember(begin);
+        int i = 1;
+        while (current != tour.end()) {
+            currentSolOrder[i++] = current;
+            current = tour.nextMember(current);
+        }
+        currentSolOrder[i] = begin;
+        bestSol = new TsptwResult(cost());
+        if (verbosity > 0)
+            System.out.println("tour of distance " + bestSol.cost);
+        SolutionEvent event = new SolutionEvent();
+        if (event.shouldCommit()) {
+            event.objective = bestSol.cost;
+            event.visited = nNodes;
+            event.nodes = nNodes;
+            event.commit();
+        }
+        notifySolution(currentSolOrder, bestSol.cost);
+    }
 
     /* ================================ solution update ============================================================  */
 
@@ -775,6 +1395,20 @@ public class TsptwSolver {
         }
     }
 
+    /**
+     * fills {@link TsptwSolver#notYetVisited} with the nodes of the instance that are excluded from the route
+     * @return number of nodes not yet visited
+     */
+    private int fillNotYetVisited() {
+        int n = route.fillExcluded(notYetVisited);
+        int nNotVisited = 0;
+        for (int i = 0 ; i < n ; ++i) {
+            if (notYetVisited[i] < nNodes) // nodes beyond the instance size are always excluded
+                notYetVisited[nNotVisited++] = notYetVisited[i];
+        }
+        return nNotVisited;
+    }
+
     /**
      * update the most promising satisfiable solution found with nNodes in the sequences
      * @param solFound best solution found. Include the beginning and ending nodes
@@ -784,9 +1418,144 @@ public class TsptwSolver {
         if (nNodes > bestNVisited) {
             bestSolOrder = solFound;
             bestNVisited = nNodes;
+            SolutionEvent event = new SolutionEvent();
+            if (event.shouldCommit()) {
+                event.objective = nNodes == nNodesWithDepot ? cost() : -1;
+                event.visited = nNodes - 1;
+                event.nodes = this.nNodes;
+                event.commit();
+            }
         }
     }
 
+    /**
+     * Enables the parallel filtering of the insertions for instances
+     * having at least {@link ParallelInsertionFilter#DEFAULT_MIN_NODES} nodes
+     * @param parallelFiltering true if the filtering must be run in parallel
+     */
+    public void setParallelFiltering(boolean parallelFiltering) {
+        this.parallelFiltering = parallelFiltering;
+    }
+
+    /**
+     * Enables the learning of the insertions that fail, which are then removed
+     * when the same partial route is met again during the large neighborhood search.
+     * Enabled by default
+     * @param nogoodLearning true if the failed insertions must be learned
+     */
+    public void setNogoodLearning(boolean nogoodLearning) {
+        this.nogoodLearning = nogoodLearning;
+    }
+
+    /**
+     * Explores the subproblems of the large neighborhood search by iterative limited discrepancy search,
+     * such that their node limit is spent on the insertions closest to the ones preferred by the heuristic
+     * instead of below the first insertions. Enabled by default
+     * @param lnsDiscrepancy true if the subproblems are explored by iterative limited discrepancy search,
+     *                       false to explore them by depth first search
+     * @see DFSearch#setIterativeDiscrepancy(int)
+     */
+    public void setLnsDiscrepancy(boolean lnsDiscrepancy) {
+        this.lnsDiscrepancy = lnsDiscrepancy;
+    }
+
+    /**
+     * Replaces the distances of the instances by the ones of the shortest paths, such that the travel between
+     * two nodes can pass through other nodes. The distances of instances respecting the triangular inequality are
+     * unchanged, while the filtering of the other ones relies on this inequality.
+     * The tours are then evaluated with the shortest paths. Disabled by default
+     * @param shortestPaths true if the distances are closed by the shortest paths
+     * @see TsptwInstance#allPairsShortestPath()
+     */
+    public void setShortestPaths(boolean shortestPaths) {
+        if (this.shortestPaths != shortestPaths) {
+            this.shortestPaths = shortestPaths;
+            loadDistances();
+            loadTimeWindows();
+        }
+    }
+
+    /**
+     * Restricts the insertions tried by the branchings to the ones right after the closest feasible predecessors
+     * of a node, given by {@link CandidateLists}. The list of a node is widened when none of its candidates
+     * can be used while the node can still be inserted. The searches are no longer complete,
+     * but the cost of a branching grows in O(k) instead of the number of nodes.
+     * The transposition table is then ignored and {@link #optimize()} does not prove the optimality of a tour.
+     * Disabled by default
+     * @param k initial number of candidate predecessors of every node, 0 to consider all the predecessors
+     */
+    public void setCandidateLists(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("the number of candidates must be positive");
+        this.candidateListSize = k;
+    }
+
+    /**
+     * Tightens the time windows and removes the insertions using infeasible arcs before the search,
+     * through a {@link Preprocessing} of each instance. Enabled by default
+     * @param rootPreprocessing true if the instances are preprocessed
+     */
+    public void setRootPreprocessing(boolean rootPreprocessing) {
+        if (this.rootPreprocessing != rootPreprocessing) {
+            this.rootPreprocessing = rootPreprocessing;
+            loadTimeWindows();
+        }
+    }
+
+    /**
+     * Bounds the distance of the tours improved by {@link #optimize()} with the assignment relaxation,
+     * on top of the detours of the {@link TSPTW} constraint. Enabled by default
+     * @param assignmentBound true if the {@link AssignmentDistance} constraint is posted on the tour model
+     */
+    public void setAssignmentBound(boolean assignmentBound) {
+        this.assignmentBound = assignmentBound;
+    }
+
+    /**
+     * Remembers the contexts of the route (ordering of the members and excluded nodes)
+     * from which the search has found no solution, such that a partial route reached again
+     * through another order of insertions fails right away.
+     * Only used by the sequential searches, and ignored with the {@link #setCandidateLists(int) candidate lists}.
+     * Disabled by default
+     * @param capacity maximum number of contexts remembered, or 0 to disable the table
+     */
+    public void setTranspositionTable(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("the capacity should be >= 0");
+        this.transpositions = capacity == 0 ? null : new TranspositionTable(() -> routeContext.context(), capacity);
+    }
+
+    /**
+     * Looks for the first solution with an embarrassingly parallel search:
+     * the root of the search tree is split into the subproblems of a given depth,
+     * solved by several workers each owning a copy of the model.
+     * The search stops at the first solution found by any worker
+     * @param nWorkers number of workers, 1 to look for the first solution sequentially
+     * @param decompositionDepth depth of the subproblems in the search tree
+     */
+    public void setEmbarrassinglyParallelSearch(int nWorkers, int decompositionDepth) {
+        if (nWorkers < 1 || decompositionDepth < 1)
+            throw new IllegalArgumentException("at least one worker and a positive depth are needed");
+        this.nSearchWorkers = nWorkers;
+        this.decompositionDepth = decompositionDepth;
+    }
+
+    /**
+     * Gives the statistics of the searches done since the instance was loaded,
+     * the time being measured from the start of the first search to the end of the last one
+     * @return statistics accumulated over the searches
+     */
+    public SearchStatistics getSearchStatistics() {
+        return searchStatistics;
+    }
+
+    /**
+     * @return maximum number of nodes (depot included) of the instances that can be solved
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
     public int getVerbosity() {
         return verbosity;
     }
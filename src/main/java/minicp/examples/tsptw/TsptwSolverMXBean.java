@@ -0,0 +1,67 @@
+package minicp.examples.tsptw;
+
+/**
+ * Management interface of a {@link TsptwSolver}, registered as a platform MBean while the solver runs
+ * such that any JMX console can watch its progress and stop it.
+ * The values are read without synchronization and may lag slightly behind the solving.
+ */
+public interface TsptwSolverMXBean {
+
+    /**
+     * @return nodes explored per second by the searches since the instance was loaded
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return failures per second of the searches since the instance was loaded
+     */
+    double getFailuresPerSecond();
+
+    /**
+     * @return number of nodes relaxed by the current iteration of the large neighborhood search, 0 outside of it
+     */
+    int getNeighborhoodSize();
+
+    /**
+     * @return number of nodes visited by the best sequence found, the end depot excluded
+     */
+    int getBestNumberOfVisitedNodes();
+
+    /**
+     * @return number of nodes of the instance, the end depot excluded
+     */
+    int getNumberOfNodes();
+
+    /**
+     * @return time elapsed since the instance was loaded, in milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * @return number of entries of the trail of the model, -1 if there is no model
+     */
+    long getTrailSize();
+
+    /**
+     * @return travel distance of the best tour found, -1 if no tour visits all the nodes
+     */
+    int getIncumbentCost();
+
+    /**
+     * @return time limit of the solving, in seconds
+     */
+    int getTimeLimit();
+
+    /**
+     * Changes the time limit of the solving, measured from the loading of the instance.
+     * A limit already elapsed stops the solving at its next check.
+     *
+     * @param seconds new time limit, in seconds
+     */
+    void setTimeLimit(int seconds);
+
+    /**
+     * Stops the solving gracefully, the best solution found so far being returned
+     */
+    void cancel();
+}
@@ -0,0 +1,129 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flag stopping the searches using it, that can be raised from any thread.
+ * A deadline raises the flag from a timer thread once the time is elapsed,
+ * such that the searches only read a volatile field instead of the clock.
+ * The searches read the flag every {@link DFSearch#CHECK_PERIOD} nodes.
+ *
+ * @see DFSearch#setCancellationToken(CancellationToken)
+ */
+public class CancellationToken {
+
+    // timer shared by all the tokens, its thread does not prevent the JVM from exiting
+    private static final class Timer {
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "minicp-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private volatile boolean cancelled;
+    private ScheduledFuture<?> deadline; // null if no deadline is pending
+    private long generation; // incremented when the deadline is replaced, to ignore a timer that already fired
+
+    /**
+     * Creates a token that is not cancelled and has no deadline
+     */
+    public CancellationToken() {
+    }
+
+    /**
+     * Creates a token cancelled after a given time
+     *
+     * @param millis time after which the token is cancelled, in milliseconds
+     * @return a token with a deadline
+     */
+    public static CancellationToken withDeadline(long millis) {
+        CancellationToken token = new CancellationToken();
+        token.cancelAfter(millis);
+        return token;
+    }
+
+    /**
+     * Cancels the token. The searches using it stop at their next check.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Tells if the token is cancelled
+     *
+     * @return true if the token is cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Sets the deadline of the token, replacing the previous one
+     *
+     * @param millis time after which the token is cancelled, in milliseconds
+     */
+    public synchronized void cancelAfter(long millis) {
+        clearDeadline();
+        if (millis <= 0)
+            cancel();
+        else {
+            long g = generation;
+            deadline = Timer.EXECUTOR.schedule(() -> expire(g), millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void expire(long g) {
+        if (g == generation)
+            cancelled = true;
+    }
+
+    /**
+     * Removes the deadline and the cancellation of the token, such that it can be used again
+     */
+    public synchronized void reset() {
+        clearDeadline();
+        cancelled = false;
+    }
+
+    private void clearDeadline() {
+        generation++;
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+    }
+
+    /**
+     * Tells if a search must stop, because the token is cancelled
+     * or the thread running the search is interrupted
+     *
+     * @param token the token of the search, may be null
+     * @return true if the search must stop
+     */
+    static boolean mustStop(CancellationToken token) {
+        return (token != null && token.cancelled) || Thread.currentThread().isInterrupted();
+    }
+}
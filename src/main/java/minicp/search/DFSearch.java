@@ -15,14 +15,14 @@
 
 package minicp.search;
 
+import minicp.engine.core.Solver;
 import minicp.state.StateManager;
 import minicp.util.exception.InconsistencyException;
-import minicp.util.exception.NotImplementedException;
 import minicp.util.Procedure;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -32,8 +32,37 @@ import java.util.function.Supplier;
  */
 public class DFSearch {
 
+    /**
+     * Number of nodes explored between two checks of the cancellation token
+     * and of the interruption of the thread
+     */
+    public static final int CHECK_PERIOD = 64;
+
     private Supplier<Procedure[]> branching;
+    private DecisionBranching decisionBranching;
     private StateManager sm;
+    private Solver solver; // null if the propagations are not counted in the statistics
+
+    // choice points of the explicit stack, one per depth, reused across the nodes
+    private Procedure[][] alternatives = new Procedure[0][]; // alternatives of the closure branching
+    private Decisions[] decisions = new Decisions[0]; // alternatives of the decision branching
+    private int[] nAlternatives = new int[0]; // number of alternatives at each depth
+    private int[] nextAlternative = new int[0]; // index of the next alternative to explore at each depth
+    private int[] levels = new int[0]; // level of the state manager at the node of each depth
+    private long[] stateKeys = new long[0]; // key of the state at the node of each depth, if a transposition table is used
+    private long[] leavesAt = new long[0]; // number of leaves reached when the node of each depth was reached
+    private long[] truncationsAt = new long[0]; // number of choice points truncated when the node of each depth was reached
+    private int[] remaining = new int[0]; // discrepancy left to spend below the node of each depth
+
+    private RestartPolicy restartPolicy; // null if the search is never restarted
+    private CancellationToken cancellationToken; // null if the search can only be stopped by interrupting its thread
+    private TranspositionTable transpositionTable; // null if the failed states are not remembered
+    private int maxDiscrepancy = -1; // discrepancy of the last iteration, -1 if the search is not limited by discrepancy
+    private int discrepancyLimit = Integer.MAX_VALUE; // discrepancy allowed in the current iteration
+    private long nTruncations; // number of choice points whose alternatives were cut by the discrepancy limit
+    private long nLeaves; // number of leaves reached, including the ones skipped as their discrepancy is below the limit
+    private boolean cancelled; // true if the last search has been stopped by its cancellation token or an interruption
+    private volatile SearchStatistics statistics; // statistics of the running or of the last search, read by the monitors
 
     private List<Procedure> solutionListeners = new LinkedList<Procedure>();
     private List<Procedure> failureListeners = new LinkedList<Procedure>();
@@ -55,6 +84,52 @@ public class DFSearch {
         this.branching = branching;
     }
 
+    /**
+     * Creates a Depth First Search object with a branching
+     * defining the search tree dynamically through primitive decisions.
+     * No closure is created at the nodes of the search tree.
+     *
+     * @param sm the state manager that will be saved and restored
+     *           at each node of the search tree
+     * @param branching a generator of the ordered decisions
+     *                  defining the children nodes at each node of the depth-first-search tree.
+     *                  When it gives no decision, a solution is found.
+     *                  A backtrack occurs when a {@link InconsistencyException}
+     *                  is thrown.
+     */
+    public DFSearch(StateManager sm, DecisionBranching branching) {
+        this.sm = sm;
+        this.decisionBranching = branching;
+    }
+
+    /**
+     * Creates a Depth First Search object with a given branching
+     * that defines the search tree dynamically,
+     * counting the propagations and fix-points of the solver in the statistics.
+     *
+     * @param cp the solver whose state manager is saved and restored
+     *           at each node of the search tree
+     * @param branching a generator of closures, see {@link #DFSearch(StateManager, Supplier)}
+     */
+    public DFSearch(Solver cp, Supplier<Procedure[]> branching) {
+        this(cp.getStateManager(), branching);
+        this.solver = cp;
+    }
+
+    /**
+     * Creates a Depth First Search object with a branching
+     * defining the search tree dynamically through primitive decisions,
+     * counting the propagations and fix-points of the solver in the statistics.
+     *
+     * @param cp the solver whose state manager is saved and restored
+     *           at each node of the search tree
+     * @param branching a generator of decisions, see {@link #DFSearch(StateManager, DecisionBranching)}
+     */
+    public DFSearch(Solver cp, DecisionBranching branching) {
+        this(cp.getStateManager(), branching);
+        this.solver = cp;
+    }
+
     /**
      * Adds a listener that is called on each solution.
      *
@@ -77,6 +152,93 @@ public class DFSearch {
         failureListeners.add(listener);
     }
 
+    /**
+     * Sets the policy used to restart the search from the root
+     * once a number of failures is reached, for all the subsequent searches.
+     * A search with restarts ends when a run explores the whole search tree
+     * within its number of failures, or when the limit of the search is reached.
+     * As a run starts again from the root, its solutions may already have been found by the previous runs:
+     * restarts are intended for optimization, or to find a first solution with a limit,
+     * together with a randomized branching or a branching learning from the failures.
+     * With a deterministic branching and a {@link RestartPolicy#fixed(int)} policy,
+     * a limit must be given as a search tree having more failures than the policy is never explored.
+     *
+     * @param policy the number of failures of each run, or null to never restart
+     */
+    public void setRestartPolicy(RestartPolicy policy) {
+        this.restartPolicy = policy;
+    }
+
+    /**
+     * Explores the search tree by iterative limited discrepancy search, for all the subsequent searches.
+     * The discrepancy of the ith alternative of a choice point is i, the discrepancy of a node being
+     * the sum of the discrepancies of the alternatives leading to it.
+     * The iteration k reaches the leaves of discrepancy exactly k, starting from 0,
+     * such that a limit on the nodes is spent on the alternatives closest to the ones preferred by the branching
+     * instead of in the left part of the tree.
+     * Each leaf is thus reported once over the iterations: the alternatives exceeding the discrepancy left are cut,
+     * and a leaf reached with some discrepancy left, found by a previous iteration, is skipped.
+     * The inner nodes of discrepancy lower than k are explored again at the iteration k.
+     * The search is completed once an iteration cuts no alternative.
+     *
+     * @param maxDiscrepancy discrepancy of the last iteration, {@link Integer#MAX_VALUE} to iterate until the tree is explored,
+     *                       or -1 to explore the tree by plain depth first search
+     */
+    public void setIterativeDiscrepancy(int maxDiscrepancy) {
+        if (maxDiscrepancy < -1)
+            throw new IllegalArgumentException("the max discrepancy should be >= 0, or -1 to disable it");
+        this.maxDiscrepancy = maxDiscrepancy;
+    }
+
+    /**
+     * Sets the token that stops the subsequent searches once cancelled.
+     * The token, as well as the interruption of the thread running the search,
+     * is checked every {@link #CHECK_PERIOD} nodes, instead of at every node as the limit.
+     * A stopped search returns normally, its statistics not being completed,
+     * the solutions found so far having been notified to the listeners.
+     * The interrupted status of the thread is kept.
+     *
+     * @param token the token stopping the searches, or null to only stop on interruption
+     */
+    public void setCancellationToken(CancellationToken token) {
+        this.cancellationToken = token;
+    }
+
+    /**
+     * @return the token stopping the searches, null if there is none
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Gives the statistics of the search in progress, which are updated while it runs,
+     * such that they can be watched from another thread.
+     * Once the search is over, they are the ones of the last search.
+     *
+     * @return statistics of the running or of the last search, null if no search has been started
+     */
+    public SearchStatistics currentStatistics() {
+        return statistics;
+    }
+
+    StateManager getStateManager() {
+        return sm;
+    }
+
+    /**
+     * Sets the table remembering the states whose subtree has no solution, for all the subsequent searches.
+     * Each node computes the key of its state after the alternative leading to it is applied.
+     * A node whose state is in the table fails without being expanded,
+     * and a node whose subtree is explored without finding any solution is added to the table.
+     * The table is kept from one search to the other, including between the runs of a search with restarts.
+     *
+     * @param table the table of the failed states, or null to explore every node
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        this.transpositionTable = table;
+    }
+
     private void notifySolution() {
         solutionListeners.forEach(s -> s.call());
     }
@@ -86,16 +248,86 @@ public class DFSearch {
     }
 
     private SearchStatistics solve(SearchStatistics statistics, Predicate<SearchStatistics> limit) {
+        SearchStopEvent stopEvent = new SearchStopEvent();
+        stopEvent.begin();
+        cancelled = false;
+        statistics.start(solver, true);
+        this.statistics = statistics;
+        try {
+            restart(statistics, limit);
+        } finally {
+            statistics.stop();
+        }
+        if (!statistics.isCompleted() && stopEvent.shouldCommit()) {
+            stopEvent.reason = cancelled ? SearchStopEvent.CANCELLED : SearchStopEvent.LIMIT;
+            stopEvent.nodes = statistics.numberOfNodes();
+            stopEvent.failures = statistics.numberOfFailures();
+            stopEvent.solutions = statistics.numberOfSolutions();
+            stopEvent.commit();
+        }
+        return statistics;
+    }
+
+    private SearchStatistics restart(SearchStatistics statistics, Predicate<SearchStatistics> limit) {
+        if (restartPolicy == null)
+            return run(statistics, limit);
+        for (int run = 0; ; run++) {
+            long failureLimit = statistics.numberOfFailures() + restartPolicy.failureLimit(run);
+            boolean[] restart = new boolean[1];
+            RestartEvent event = new RestartEvent();
+            event.begin();
+            run(statistics, stats -> {
+                if (limit.test(stats))
+                    return true;
+                restart[0] = stats.numberOfFailures() >= failureLimit;
+                return restart[0];
+            });
+            if (!restart[0] || statistics.isCompleted())
+                return statistics;
+            statistics.incrRestarts();
+            if (event.shouldCommit()) {
+                event.run = run;
+                event.failureLimit = restartPolicy.failureLimit(run);
+                event.nodes = statistics.numberOfNodes();
+                event.failures = statistics.numberOfFailures();
+                event.commit();
+            }
+        }
+    }
+
+    // explores the search tree from the root until it is exhausted or the limit is reached,
+    // by iterations of increasing discrepancy if the search is limited by discrepancy
+    private SearchStatistics run(SearchStatistics statistics, Predicate<SearchStatistics> limit) {
+        if (maxDiscrepancy < 0) {
+            discrepancyLimit = Integer.MAX_VALUE;
+            if (explore(statistics, limit))
+                statistics.setCompleted();
+            return statistics;
+        }
+        for (int k = 0; k <= maxDiscrepancy; k++) {
+            discrepancyLimit = k;
+            long truncations = nTruncations;
+            if (!explore(statistics, limit))
+                return statistics; // stopped by the limit
+            if (nTruncations == truncations) { // no alternative was cut: the whole tree is explored
+                statistics.setCompleted();
+                return statistics;
+            }
+        }
+        return statistics;
+    }
+
+    // explores the search tree within the discrepancy limit, returns true if it is exhausted before the limit is reached
+    private boolean explore(SearchStatistics statistics, Predicate<SearchStatistics> limit) {
+        boolean[] exhausted = new boolean[1];
         sm.withNewState(() -> {
             try {
                 dfs2(statistics, limit);
-                statistics.setCompleted();
+                exhausted[0] = true;
             } catch (StopSearchException ignored) {
-            } catch (StackOverflowError e) {
-                throw new NotImplementedException("dfs with explicit stack needed to pass this test");
             }
         });
-        return statistics;
+        return exhausted[0];
     }
 
 
@@ -242,38 +474,142 @@ public class DFSearch {
 
     // BEGIN STRIP
 
-    // solution to DFS with explicit stack
-    private void expandNode(Stack<Procedure> alternatives, SearchStatistics statistics) {
-        Procedure[] alts = branching.get();
-        if (alts.length == 0) {
-            statistics.incrSolutions();
-            notifySolution();
+    // solution to DFS with explicit stack of choice points
+    // each choice point holds the level of the state manager at its node and the next alternative to explore
+
+    // grows the arrays of the choice points such that they hold a given depth
+    private void ensureCapacity(int depth) {
+        if (depth == levels.length) {
+            int capacity = Math.max(16, 2 * depth);
+            alternatives = Arrays.copyOf(alternatives, capacity);
+            decisions = Arrays.copyOf(decisions, capacity);
+            nAlternatives = Arrays.copyOf(nAlternatives, capacity);
+            nextAlternative = Arrays.copyOf(nextAlternative, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            stateKeys = Arrays.copyOf(stateKeys, capacity);
+            leavesAt = Arrays.copyOf(leavesAt, capacity);
+            truncationsAt = Arrays.copyOf(truncationsAt, capacity);
+            remaining = Arrays.copyOf(remaining, capacity);
+        }
+    }
+
+    // remembers the state of the node at a given depth, returns true if it is known to fail
+    private boolean isKnownFailure(int depth, SearchStatistics statistics) {
+        ensureCapacity(depth);
+        long key = transpositionTable.key();
+        stateKeys[depth] = key;
+        leavesAt[depth] = nLeaves;
+        truncationsAt[depth] = nTruncations;
+        return transpositionTable.isFailed(key);
+    }
+
+    // creates the choice point of a node of a given depth and discrepancy left to spend below it,
+    // returns its number of alternatives within the discrepancy left
+    private int expandNode(int depth, int discrepancyLeft) {
+        ensureCapacity(depth);
+        int n;
+        if (decisionBranching != null) {
+            if (decisions[depth] == null)
+                decisions[depth] = new Decisions();
+            decisions[depth].clear();
+            decisionBranching.fill(decisions[depth]);
+            n = decisions[depth].size();
         } else {
-            for (int i = alts.length - 1; i >= 0; i--) {
-                Procedure a = alts[i];
-                alternatives.push(() -> sm.restoreState());
-                alternatives.push(() -> {
-                    statistics.incrNodes();
-                    a.call();
-                    expandNode(alternatives, statistics);
-                });
-                alternatives.push(() -> sm.saveState());
-            }
+            alternatives[depth] = branching.get();
+            n = alternatives[depth].length;
+        }
+        if (discrepancyLimit != Integer.MAX_VALUE && n > discrepancyLeft + 1) {
+            n = discrepancyLeft + 1; // the next alternatives exceed the limit
+            nTruncations++;
+        }
+        remaining[depth] = discrepancyLeft;
+        nAlternatives[depth] = n;
+        nextAlternative[depth] = 0;
+        levels[depth] = sm.getLevel();
+        return n;
+    }
+
+    // applies the ith alternative of the choice point at a given depth
+    private void applyAlternative(int depth, int i) {
+        if (decisionBranching != null) {
+            Decisions d = decisions[depth];
+            decisionBranching.apply(d.kind(i), d.first(i), d.second(i));
+        } else {
+            alternatives[depth][i].call();
         }
     }
 
+    // reports a leaf as a solution, unless it has some discrepancy left that cannot be spent below it:
+    // its discrepancy is then below the limit and it has been reported by a previous iteration
+    private void reachLeaf(SearchStatistics statistics, int discrepancyLeft) {
+        nLeaves++;
+        if (discrepancyLeft == 0 || discrepancyLeft == Integer.MAX_VALUE) {
+            statistics.incrSolutions();
+            notifySolution();
+        }
+    }
 
     private void dfs2(SearchStatistics statistics, Predicate<SearchStatistics> limit) {
-        Stack<Procedure> alternatives = new Stack<Procedure>();
-        expandNode(alternatives, statistics);
-        while (!alternatives.isEmpty()) {
-            if (limit.test(statistics)) throw new StopSearchException();
-            try {
-                alternatives.pop().call();
-            } catch (InconsistencyException e) {
-                statistics.incrFailures();
-                notifyFailure();
+        if (transpositionTable != null && isKnownFailure(0, statistics)) {
+            statistics.incrFailures();
+            notifyFailure();
+            return;
+        }
+        if (expandNode(0, discrepancyLimit) == 0) {
+            reachLeaf(statistics, discrepancyLimit);
+            return;
+        }
+        int depth = 0;
+        int sinceCheck = CHECK_PERIOD - 1; // the first node checks the cancellation
+        try {
+            while (depth >= 0) {
+                if (++sinceCheck == CHECK_PERIOD) {
+                    sinceCheck = 0;
+                    if (CancellationToken.mustStop(cancellationToken)) {
+                        cancelled = true;
+                        throw new StopSearchException();
+                    }
+                }
+                if (limit.test(statistics)) throw new StopSearchException();
+                int i = nextAlternative[depth];
+                if (i == nAlternatives[depth]) { // every alternative has been explored
+                    alternatives[depth] = null;
+                    // a subtree cut by the discrepancy limit may have solutions
+                    // so does a subtree whose leaves were skipped, reached again with another discrepancy
+                    if (transpositionTable != null && nLeaves == leavesAt[depth]
+                            && nTruncations == truncationsAt[depth])
+                        transpositionTable.recordFailure(stateKeys[depth]);
+                    depth--;
+                    if (depth >= 0)
+                        sm.restoreStateUntil(levels[depth]); // undo the alternative leading to the node
+                    continue;
+                }
+                nextAlternative[depth] = i + 1;
+                boolean expanded = false;
+                sm.saveState();
+                try {
+                    statistics.incrNodes(depth + 1);
+                    applyAlternative(depth, i);
+                    if (transpositionTable != null && isKnownFailure(depth + 1, statistics))
+                        throw InconsistencyException.INCONSISTENCY;
+                    int left = remaining[depth] == Integer.MAX_VALUE ? Integer.MAX_VALUE : remaining[depth] - i;
+                    if (expandNode(depth + 1, left) == 0) {
+                        reachLeaf(statistics, left);
+                    } else {
+                        depth++;
+                        expanded = true;
+                    }
+                } catch (InconsistencyException e) {
+                    statistics.incrFailures();
+                    notifyFailure();
+                }
+                if (!expanded)
+                    sm.restoreStateUntil(levels[depth]);
             }
+        } finally {
+            // releases the closures of the choice points that were not fully explored
+            for (int d = 0; d <= depth && d < alternatives.length; d++)
+                alternatives[d] = null;
         }
     }
 
@@ -0,0 +1,81 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import minicp.util.exception.InconsistencyException;
+
+import java.util.function.Consumer;
+
+/**
+ * Branching defining the children of a node as primitive {@link Decisions}
+ * instead of closures, such that the search does not create any object at each node.
+ *
+ * @see DFSearch#DFSearch(minicp.state.StateManager, DecisionBranching)
+ */
+public interface DecisionBranching {
+
+    /**
+     * Applies a decision of a given kind.
+     *
+     * @param kind kind of the decision
+     * @param first first argument of the decision
+     * @param second second argument of the decision
+     */
+    @FunctionalInterface
+    interface Applier {
+        void apply(int kind, int first, int second);
+    }
+
+    /**
+     * Fills the ordered children of the current node of the search tree.
+     * When no decision is added, a solution is found.
+     * A backtrack occurs when a {@link InconsistencyException} is thrown.
+     *
+     * @param decisions empty buffer where the decisions must be added
+     */
+    void fill(Decisions decisions);
+
+    /**
+     * Applies a decision created by {@link #fill(Decisions)}.
+     * A backtrack occurs when a {@link InconsistencyException} is thrown.
+     *
+     * @param kind kind of the decision
+     * @param first first argument of the decision
+     * @param second second argument of the decision
+     */
+    void apply(int kind, int first, int second);
+
+    /**
+     * Creates a branching from the filling of the decisions and their application
+     *
+     * @param fill fills the ordered children of the current node
+     * @param applier applies the decisions
+     * @return a branching using the two given functions
+     */
+    static DecisionBranching of(Consumer<Decisions> fill, Applier applier) {
+        return new DecisionBranching() {
+            @Override
+            public void fill(Decisions decisions) {
+                fill.accept(decisions);
+            }
+
+            @Override
+            public void apply(int kind, int first, int second) {
+                applier.apply(kind, first, second);
+            }
+        };
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer of decisions, each one being a primitive {@code (kind, first, second)} tuple
+ * whose meaning is given by the {@link DecisionBranching} that creates and applies it.
+ * A key can be given to each decision to order them with {@link #sort()}.
+ */
+public class Decisions {
+
+    private int size = 0;
+    private int[] tuples; // tuples[3*i..3*i+2] = (kind, first, second) of the ith decision
+    private int[] keys;
+    private long[] order; // used to sort the decisions
+    private int[] buffer; // used to permute the decisions
+
+    /**
+     * Creates an empty buffer of decisions
+     */
+    public Decisions() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty buffer of decisions
+     *
+     * @param capacity initial number of decisions that can be held, grown when needed
+     */
+    public Decisions(int capacity) {
+        capacity = Math.max(1, capacity);
+        tuples = new int[3 * capacity];
+        keys = new int[capacity];
+    }
+
+    /**
+     * Adds a decision with a key of 0
+     *
+     * @param kind kind of the decision
+     * @param first first argument of the decision
+     * @param second second argument of the decision
+     */
+    public void add(int kind, int first, int second) {
+        add(kind, first, second, 0);
+    }
+
+    /**
+     * Adds a decision
+     *
+     * @param kind kind of the decision
+     * @param first first argument of the decision
+     * @param second second argument of the decision
+     * @param key key of the decision, used by {@link #sort()}
+     */
+    public void add(int kind, int first, int second, int key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            tuples = Arrays.copyOf(tuples, 6 * size);
+        }
+        tuples[3 * size] = kind;
+        tuples[3 * size + 1] = first;
+        tuples[3 * size + 2] = second;
+        keys[size] = key;
+        size++;
+    }
+
+    /**
+     * Sorts the decisions by increasing key.
+     * The decisions having the same key keep the order in which they were added.
+     */
+    public void sort() {
+        if (size < 2)
+            return;
+        if (order == null || order.length < size) {
+            order = new long[keys.length];
+            buffer = new int[tuples.length];
+        }
+        // the index in the low bits breaks the ties, giving a stable sort
+        for (int i = 0; i < size; i++)
+            order[i] = ((long) keys[i] << 32) | i;
+        Arrays.sort(order, 0, size);
+        System.arraycopy(tuples, 0, buffer, 0, 3 * size);
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            System.arraycopy(buffer, 3 * from, tuples, 3 * i, 3);
+            keys[i] = (int) (order[i] >> 32);
+        }
+    }
+
+    /**
+     * Removes all the decisions
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of decisions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of the decision
+     * @return kind of the ith decision
+     */
+    public int kind(int i) {
+        return tuples[3 * i];
+    }
+
+    /**
+     * @param i index of the decision
+     * @return first argument of the ith decision
+     */
+    public int first(int i) {
+        return tuples[3 * i + 1];
+    }
+
+    /**
+     * @param i index of the decision
+     * @return second argument of the ith decision
+     */
+    public int second(int i) {
+        return tuples[3 * i + 2];
+    }
+
+    /**
+     * @param i index of the decision
+     * @return key of the ith decision
+     */
+    public int key(int i) {
+        return keys[i];
+    }
+}
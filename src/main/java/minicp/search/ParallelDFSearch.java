@@ -0,0 +1,609 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import minicp.engine.core.IntVar;
+import minicp.state.StateManager;
+import minicp.util.Procedure;
+import minicp.util.exception.InconsistencyException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Depth First Search Branch and Bound explored by several threads through work stealing.
+ *
+ * Each worker owns a replica of the model, given by a {@link Replica}, and explores its subtrees
+ * with the same explicit stack of choice points as {@link DFSearch}.
+ * An idle worker requests work from a busy one, which donates its unexplored alternative closest to the root.
+ * The donated subtree is described by the path of decisions leading to it from the root,
+ * replayed on the replica of the thief: no state is shared between the replicas.
+ *
+ * With a {@link Supplier} of closures, a path is made of the indices of the alternatives and the branching
+ * must give the same alternatives on every replica for the same path.
+ * With a {@link DecisionBranching}, a path is made of the decisions themselves and the branching only needs to
+ * give valid decisions for the nodes that it expands.
+ *
+ * The replicas share a single incumbent when optimizing and a single {@link SearchStatistics},
+ * on which the limit is tested.
+ * The incumbent is the bound of an {@link IntVar} to minimize, given by {@link Replica#minimize(IntVar)}:
+ * an {@link Objective} such as the one of {@link minicp.engine.core.Solver#minimize(IntVar)} only tightens
+ * its own replica and cannot be shared. A variable is maximized by minimizing its opposite,
+ * given by {@link minicp.cp.Factory#minus(IntVar)}.
+ *
+ * With a decomposition depth set through {@link #setDecompositionDepth(int)}, the search is
+ * embarrassingly parallel instead: the root is first split into the subproblems of that depth
+ * that pass the propagation, which are then taken one at a time by the workers, without stealing.
+ */
+public class ParallelDFSearch {
+
+    /**
+     * Number of nodes that a worker explores before merging its statistics and testing the limit
+     */
+    public static final int CHECK_PERIOD = 64;
+
+    private static final long IDLE_WAIT_NANOS = 20_000;
+
+    /**
+     * Model solved by one worker, together with the branching used to explore it
+     */
+    public static class Replica {
+
+        private final StateManager sm;
+        private final Supplier<Procedure[]> branching;
+        private final DecisionBranching decisionBranching;
+        private final List<Procedure> solutionListeners = new LinkedList<>();
+        private IntVar objective;
+
+        /**
+         * Creates a replica explored with a branching of closures
+         *
+         * @param sm the state manager of the replica
+         * @param branching a generator of closures defining the ordered children nodes.
+         *                  It must give the same alternatives on all the replicas for the same path.
+         */
+        public Replica(StateManager sm, Supplier<Procedure[]> branching) {
+            this.sm = sm;
+            this.branching = branching;
+            this.decisionBranching = null;
+        }
+
+        /**
+         * Creates a replica explored with a branching of primitive decisions
+         *
+         * @param sm the state manager of the replica
+         * @param branching a generator of the ordered decisions defining the children nodes
+         */
+        public Replica(StateManager sm, DecisionBranching branching) {
+            this.sm = sm;
+            this.branching = null;
+            this.decisionBranching = branching;
+        }
+
+        /**
+         * Adds a listener that is called on each solution found on this replica.
+         * The listeners of all the replicas are called one at a time.
+         *
+         * @param listener the closure to be called whenever a solution is found on this replica
+         * @return this replica
+         */
+        public Replica onSolution(Procedure listener) {
+            solutionListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Sets the variable of this replica to minimize when calling {@link ParallelDFSearch#optimize(Predicate)}
+         *
+         * @param x variable to minimize, its bound is shared with the other replicas
+         * @return this replica
+         */
+        public Replica minimize(IntVar x) {
+            this.objective = x;
+            return this;
+        }
+    }
+
+    /**
+     * Path from the root to an unexplored subtree.
+     * The last step is the alternative to explore, the previous ones lead to its parent.
+     */
+    private static final class Path {
+        final int[] steps; // index of the alternative, or (kind, first, second) of the decision, for each depth
+        final int depth;
+
+        Path(int[] steps, int depth) {
+            this.steps = steps;
+            this.depth = depth;
+        }
+    }
+
+    private final Worker[] workers;
+    private int decompositionDepth = 0; // 0 if the work is shared by stealing
+
+    // shared between the workers during a search
+    private final ConcurrentLinkedQueue<Path> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(); // paths in the pool or being explored
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private final Object solutionLock = new Object();
+    private volatile boolean stopped;
+    private volatile int bound = Integer.MAX_VALUE;
+    private SearchStatistics statistics;
+    private Predicate<SearchStatistics> limit;
+    private CancellationToken cancellationToken; // null if the search can only be stopped by interrupting its thread
+
+    /**
+     * Creates a parallel search
+     *
+     * @param nWorkers number of threads exploring the search tree
+     * @param replicaFactory creates the replica of a given worker, from 0 to {@code nWorkers - 1}.
+     *                       The replicas must model the same problem.
+     */
+    public ParallelDFSearch(int nWorkers, IntFunction<Replica> replicaFactory) {
+        if (nWorkers < 1) throw new IllegalArgumentException("at least one worker is needed");
+        workers = new Worker[nWorkers];
+        for (int i = 0; i < nWorkers; i++)
+            workers[i] = new Worker(replicaFactory.apply(i));
+    }
+
+    /**
+     * @return number of threads exploring the search tree
+     */
+    public int nWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * Sets the depth at which the root is split into independent subproblems before the search.
+     * The subproblems are the nodes of that depth, or the solutions found above it,
+     * that pass the propagation, kept in the order of a depth first search.
+     * The workers take them one at a time until all are explored or the limit is reached.
+     *
+     * @param depth depth of the subproblems, or 0 to share the work by stealing subtrees
+     */
+    public void setDecompositionDepth(int depth) {
+        if (depth < 0) throw new IllegalArgumentException("the depth should be >= 0");
+        this.decompositionDepth = depth;
+    }
+
+    /**
+     * @return depth at which the root is split into subproblems, 0 if the work is shared by stealing
+     */
+    public int getDecompositionDepth() {
+        return decompositionDepth;
+    }
+
+    /**
+     * Sets the token that stops the subsequent searches once cancelled.
+     * The token is checked together with the limit, every {@link #CHECK_PERIOD} nodes of a worker.
+     * Interrupting the thread waiting for the workers also stops the search, its interrupted status being kept.
+     *
+     * @param token the token stopping the searches, or null to only stop on interruption
+     * @see DFSearch#setCancellationToken(CancellationToken)
+     */
+    public void setCancellationToken(CancellationToken token) {
+        this.cancellationToken = token;
+    }
+
+    /**
+     * Gives the best value of the objective found by {@link #optimize(Predicate)}.
+     * As for {@link minicp.engine.core.Minimize}, the bound is kept from one call to the other.
+     *
+     * @return best value of the objective, or {@link Integer#MAX_VALUE} if no solution was found
+     */
+    public int incumbent() {
+        return bound == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + 1;
+    }
+
+    /**
+     * Effectively start a parallel depth first search
+     * looking for every solution.
+     *
+     * @return an object with the statistics on the search, merged over the workers
+     */
+    public SearchStatistics solve() {
+        return solve(stats -> false);
+    }
+
+    /**
+     * Effectively start a parallel depth first search
+     * with a given predicate to stop the search when it becomes true.
+     * The predicate is tested on the statistics merged over the workers,
+     * every {@link #CHECK_PERIOD} nodes of a worker and on each solution.
+     *
+     * @param limit a predicate that stops the search when it becomes true
+     * @return an object with the statistics on the search, merged over the workers
+     */
+    public SearchStatistics solve(Predicate<SearchStatistics> limit) {
+        return run(limit, false);
+    }
+
+    /**
+     * Effectively start a parallel branch and bound depth first search,
+     * minimizing the variable given by {@link Replica#minimize(IntVar)} on each replica.
+     * Each solution found by a worker tightens the bound of all the replicas.
+     *
+     * @param limit a predicate that stops the search when it becomes true
+     * @return an object with the statistics on the search, merged over the workers
+     * @see #solve(Predicate)
+     */
+    public SearchStatistics optimize(Predicate<SearchStatistics> limit) {
+        for (Worker w : workers)
+            if (w.replica.objective == null)
+                throw new IllegalStateException("no objective given for a replica");
+        return run(limit, true);
+    }
+
+    private SearchStatistics run(Predicate<SearchStatistics> limit, boolean optimize) {
+        this.statistics = new SearchStatistics();
+        statistics.start(null, false); // the replicas have their own solvers, and the workers their own threads
+        this.limit = limit;
+        stopped = false;
+        error.set(null);
+        pool.clear();
+        if (decompositionDepth > 0) {
+            List<Path> subproblems = workers[0].split(decompositionDepth);
+            pending.set(subproblems.size());
+            pool.addAll(subproblems);
+        } else {
+            pending.set(1);
+            pool.add(new Path(new int[0], 0)); // root of the search tree
+        }
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            Worker w = workers[i];
+            threads[i] = new Thread(() -> w.run(optimize), "minicp-search-" + i);
+            threads[i].start();
+        }
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stopped = true;
+                }
+            }
+        }
+        pool.clear();
+        statistics.stop();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        Throwable t = error.get();
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        if (!stopped)
+            statistics.setCompleted();
+        return statistics;
+    }
+
+    private final class Worker {
+
+        private final Replica replica;
+        private final StateManager sm;
+
+        // choice points of the explicit stack, as in DFSearch
+        private Procedure[][] alternatives = new Procedure[0][];
+        private Decisions[] decisions = new Decisions[0];
+        private int[] nAlternatives = new int[0];
+        private int[] nextAlternative = new int[0];
+        private int[] applied = new int[0]; // index of the alternative leading to the node of the next depth
+        private int[] levels = new int[0];
+
+        private volatile boolean stealRequested;
+
+        // statistics not yet merged
+        private long nNodes, nFailures, nSolutions, depthSum, maxDepth; // not merged yet into the statistics
+        private int sinceCheck;
+
+        Worker(Replica replica) {
+            this.replica = replica;
+            this.sm = replica.sm;
+        }
+
+        void run(boolean optimize) {
+            try {
+                sm.withNewState(() -> {
+                    if (optimize) {
+                        IntVar x = replica.objective;
+                        x.getSolver().onFixPoint(() -> x.removeAbove(bound));
+                    }
+                    Path path;
+                    while ((path = take()) != null) {
+                        try {
+                            explore(path, optimize);
+                        } catch (StopSearchException ignored) {
+                        } finally {
+                            pending.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+                stopped = true;
+            } finally {
+                flush(false);
+                stealRequested = false;
+            }
+        }
+
+        // waits for a path to explore, returns null once the search is over
+        private Path take() {
+            while (!stopped) {
+                Path path = pool.poll();
+                if (path != null)
+                    return path;
+                if (pending.get() == 0)
+                    return null;
+                Worker victim = workers[ThreadLocalRandom.current().nextInt(workers.length)];
+                if (decompositionDepth == 0 && victim != this)
+                    victim.stealRequested = true;
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+            return null;
+        }
+
+        private void ensureCapacity(int depth) {
+            if (depth >= levels.length) {
+                int capacity = Math.max(16, 2 * depth);
+                alternatives = Arrays.copyOf(alternatives, capacity);
+                decisions = Arrays.copyOf(decisions, capacity);
+                nAlternatives = Arrays.copyOf(nAlternatives, capacity);
+                nextAlternative = Arrays.copyOf(nextAlternative, capacity);
+                applied = Arrays.copyOf(applied, capacity);
+                levels = Arrays.copyOf(levels, capacity);
+            }
+            if (decisions[depth] == null)
+                decisions[depth] = new Decisions();
+        }
+
+        private int expandNode(int depth) {
+            ensureCapacity(depth);
+            int n;
+            if (replica.decisionBranching != null) {
+                decisions[depth].clear();
+                replica.decisionBranching.fill(decisions[depth]);
+                n = decisions[depth].size();
+            } else {
+                alternatives[depth] = replica.branching.get();
+                n = alternatives[depth].length;
+            }
+            nAlternatives[depth] = n;
+            nextAlternative[depth] = 0;
+            levels[depth] = sm.getLevel();
+            return n;
+        }
+
+        private void applyAlternative(int depth, int i) {
+            if (replica.decisionBranching != null) {
+                Decisions d = decisions[depth];
+                replica.decisionBranching.apply(d.kind(i), d.first(i), d.second(i));
+            } else {
+                alternatives[depth][i].call();
+            }
+        }
+
+        // recreates the choice point of a given depth of a path, holding only the step of the path
+        private void replayChoicePoint(Path path, int depth) {
+            ensureCapacity(depth);
+            levels[depth] = sm.getLevel();
+            if (replica.decisionBranching != null) {
+                int[] s = path.steps;
+                decisions[depth].clear();
+                decisions[depth].add(s[3 * depth], s[3 * depth + 1], s[3 * depth + 2]);
+                nextAlternative[depth] = 0;
+                nAlternatives[depth] = 1;
+            } else {
+                alternatives[depth] = replica.branching.get();
+                nextAlternative[depth] = path.steps[depth];
+                nAlternatives[depth] = path.steps[depth] + 1;
+            }
+        }
+
+        private void explore(Path path, boolean optimize) {
+            int base = path.depth - 1; // depth of the choice point holding the subtree to explore
+            int depth = base;
+            int root = sm.getLevel();
+            sm.saveState();
+            try {
+                if (path.depth == 0) {
+                    if (expandNode(0) == 0) {
+                        solution(optimize);
+                        sm.restoreStateUntil(root);
+                        return;
+                    }
+                    base = depth = 0;
+                } else {
+                    // replays the decisions leading to the parent of the subtree, without saving the state
+                    for (int d = 0; d < base; d++) {
+                        replayChoicePoint(path, d);
+                        applied[d] = nextAlternative[d]++;
+                        applyAlternative(d, applied[d]);
+                    }
+                    replayChoicePoint(path, base);
+                }
+            } catch (InconsistencyException e) {
+                nFailures++;
+                sm.restoreStateUntil(root);
+                return;
+            }
+            try {
+                while (depth >= base) {
+                    if (stopped) throw new StopSearchException();
+                    if (stealRequested)
+                        donate(base, depth);
+                    int i = nextAlternative[depth];
+                    if (i == nAlternatives[depth]) { // every alternative has been explored
+                        alternatives[depth] = null;
+                        depth--;
+                        if (depth >= base)
+                            sm.restoreStateUntil(levels[depth]);
+                        continue;
+                    }
+                    nextAlternative[depth] = i + 1;
+                    applied[depth] = i;
+                    boolean expanded = false;
+                    sm.saveState();
+                    try {
+                        countNode(depth + 1);
+                        if (++sinceCheck == CHECK_PERIOD)
+                            flush(true);
+                        applyAlternative(depth, i);
+                        if (expandNode(depth + 1) == 0) {
+                            solution(optimize);
+                        } else {
+                            depth++;
+                            expanded = true;
+                        }
+                    } catch (InconsistencyException e) {
+                        nFailures++;
+                    }
+                    if (!expanded)
+                        sm.restoreStateUntil(levels[depth]);
+                }
+            } finally {
+                for (int d = 0; d <= depth && d < alternatives.length; d++)
+                    alternatives[d] = null;
+                sm.restoreStateUntil(root);
+            }
+        }
+
+        // splits the root into the subproblems of a given depth that pass the propagation
+        List<Path> split(int maxDepth) {
+            List<Path> subproblems = new ArrayList<>();
+            sm.withNewState(() -> {
+                try {
+                    if (expandNode(0) == 0)
+                        subproblems.add(new Path(new int[0], 0));
+                    else
+                        decompose(new int[0], 0, maxDepth, subproblems);
+                } catch (InconsistencyException e) {
+                    nFailures++;
+                }
+            });
+            return subproblems;
+        }
+
+        // splits the node whose choice point is at a given depth, reached through the given steps.
+        // The last node of a subproblem is not counted, as it is explored again by a worker
+        private void decompose(int[] steps, int depth, int maxDepth, List<Path> subproblems) {
+            int stride = replica.decisionBranching != null ? 3 : 1;
+            for (int i = 0; i < nAlternatives[depth]; i++) {
+                int[] child = Arrays.copyOf(steps, stride * (depth + 1));
+                if (stride == 3) {
+                    child[3 * depth] = decisions[depth].kind(i);
+                    child[3 * depth + 1] = decisions[depth].first(i);
+                    child[3 * depth + 2] = decisions[depth].second(i);
+                } else {
+                    child[depth] = i;
+                }
+                sm.saveState();
+                try {
+                    applyAlternative(depth, i);
+                    if (depth + 1 == maxDepth || expandNode(depth + 1) == 0) {
+                        subproblems.add(new Path(child, depth + 1));
+                    } else {
+                        countNode(depth + 1);
+                        decompose(child, depth + 1, maxDepth, subproblems);
+                    }
+                } catch (InconsistencyException e) {
+                    countNode(depth + 1);
+                    nFailures++;
+                }
+                sm.restoreState();
+            }
+            alternatives[depth] = null;
+        }
+
+        // gives the unexplored alternative closest to the root to the pool
+        private void donate(int base, int depth) {
+            stealRequested = false;
+            int k = base;
+            while (k <= depth && nextAlternative[k] == nAlternatives[k])
+                k++;
+            if (k > depth || (k == depth && nAlternatives[k] - nextAlternative[k] == 1))
+                return; // keeps its last alternative for itself
+            int[] steps;
+            if (replica.decisionBranching != null) {
+                steps = new int[3 * (k + 1)];
+                for (int d = 0; d <= k; d++) {
+                    int i = d < k ? applied[d] : nextAlternative[d];
+                    steps[3 * d] = decisions[d].kind(i);
+                    steps[3 * d + 1] = decisions[d].first(i);
+                    steps[3 * d + 2] = decisions[d].second(i);
+                }
+            } else {
+                steps = new int[k + 1];
+                for (int d = 0; d < k; d++)
+                    steps[d] = applied[d];
+                steps[k] = nextAlternative[k];
+            }
+            nextAlternative[k]++;
+            pending.incrementAndGet();
+            pool.add(new Path(steps, k + 1));
+        }
+
+        private void solution(boolean optimize) {
+            boolean improving = true;
+            synchronized (solutionLock) {
+                if (optimize) {
+                    IntVar x = replica.objective;
+                    if (!x.isBound()) throw new RuntimeException("objective not bound");
+                    improving = x.max() <= bound; // another worker may have found a better solution meanwhile
+                }
+                if (improving) {
+                    nSolutions++;
+                    replica.solutionListeners.forEach(Procedure::call);
+                    if (optimize)
+                        bound = replica.objective.max() - 1;
+                }
+            }
+            if (improving)
+                flush(true);
+            // the leaf is undone by the caller: with the bound tightened, the search goes on as after a failure,
+            // without counting one
+        }
+
+        private void countNode(int depth) {
+            nNodes++;
+            depthSum += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        // merges the statistics of the worker and tests the limit if asked
+        private void flush(boolean testLimit) {
+            synchronized (statistics) {
+                statistics.merge(nNodes, nFailures, nSolutions, depthSum, maxDepth);
+                nNodes = nFailures = nSolutions = depthSum = maxDepth = 0;
+                sinceCheck = 0;
+                if (testLimit && (limit.test(statistics) || CancellationToken.mustStop(cancellationToken)))
+                    stopped = true;
+            }
+        }
+    }
+}
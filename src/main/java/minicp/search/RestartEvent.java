@@ -0,0 +1,50 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a run of a {@link DFSearch} ended by its {@link RestartPolicy}.
+ * The duration of the event is the one of the run.
+ */
+@Name("minicp.Restart")
+@Label("Restart")
+@Category({"MiniCP", "Search"})
+@Description("Run of a depth first search stopped to restart from the root")
+@StackTrace(false)
+public class RestartEvent extends jdk.jfr.Event {
+
+    @Label("Run")
+    @Description("Index of the run, starting at 0")
+    int run;
+
+    @Label("Failure Limit")
+    @Description("Number of failures allowed for the run")
+    int failureLimit;
+
+    @Label("Nodes")
+    @Description("Number of nodes of the search when the run ended")
+    long nodes;
+
+    @Label("Failures")
+    @Description("Number of failures of the search when the run ended")
+    long failures;
+}
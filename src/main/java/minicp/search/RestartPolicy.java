@@ -0,0 +1,95 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+/**
+ * Number of failures allowed for each run of a search with restarts.
+ * Once a run reaches its number of failures, the search restarts from the root.
+ * Restarts are useful with randomized branchings or with branchings learning
+ * from the previous runs, such as the conflict ordering search.
+ *
+ * @see DFSearch#setRestartPolicy(RestartPolicy)
+ */
+@FunctionalInterface
+public interface RestartPolicy {
+
+    /**
+     * Gives the number of failures allowed for a run
+     *
+     * @param run index of the run, starting at 0
+     * @return number of failures after which the run is restarted, at least 1
+     */
+    int failureLimit(int run);
+
+    /**
+     * Restarts after the same number of failures for every run
+     *
+     * @param failures number of failures of each run
+     * @return a policy with a fixed limit
+     */
+    static RestartPolicy fixed(int failures) {
+        if (failures < 1) throw new IllegalArgumentException("the limit should be >= 1");
+        return run -> failures;
+    }
+
+    /**
+     * Multiplies the limit by a constant factor at each run
+     *
+     * @param failures number of failures of the first run
+     * @param growth factor applied to the limit after each run, at least 1
+     * @return a policy with a geometric limit
+     */
+    static RestartPolicy geometric(int failures, double growth) {
+        if (failures < 1) throw new IllegalArgumentException("the limit should be >= 1");
+        if (growth < 1) throw new IllegalArgumentException("the growth should be >= 1");
+        return run -> (int) Math.min(Integer.MAX_VALUE, failures * Math.pow(growth, run));
+    }
+
+    /**
+     * Follows the Luby sequence (1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...) multiplied by a scale.
+     *
+     * Luby, M., Sinclair, A., & Zuckerman, D. (1993).
+     * Optimal speedup of Las Vegas algorithms.
+     * Information Processing Letters, 47(4), 173-180.
+     *
+     * @param scale number of failures corresponding to one unit of the sequence
+     * @return a policy following the Luby sequence
+     */
+    static RestartPolicy luby(int scale) {
+        if (scale < 1) throw new IllegalArgumentException("the scale should be >= 1");
+        return run -> (int) Math.min(Integer.MAX_VALUE, (long) scale * lubyTerm(run + 1));
+    }
+
+    /**
+     * @param i index in the Luby sequence, starting at 1
+     * @return ith term of the Luby sequence
+     */
+    private static long lubyTerm(int i) {
+        // finds the smallest k such that i <= 2^k - 1
+        int k = 1;
+        while ((1L << k) - 1 < i)
+            k++;
+        while (true) {
+            if (i == (1L << k) - 1)
+                return 1L << (k - 1);
+            // i lies within the repeated prefix of the sequence
+            i -= (1 << (k - 1)) - 1;
+            k = 1;
+            while ((1L << k) - 1 < i)
+                k++;
+        }
+    }
+}
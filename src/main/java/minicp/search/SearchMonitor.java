@@ -0,0 +1,186 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import minicp.state.StateManager;
+import minicp.state.Trailer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Platform MBean watching a {@link DFSearch}, such that its progress can be followed
+ * and the search stopped from a JMX console while it runs.
+ * The values are read from another thread without synchronization and may lag slightly behind the search.
+ *
+ * The search is stopped through its {@link CancellationToken}, a token being given to the search
+ * when the monitor is registered if it has none.
+ * The monitor must be {@link #close() closed} once the search is not watched anymore.
+ */
+public class SearchMonitor implements SearchMonitorMXBean, AutoCloseable {
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final DFSearch search;
+    private final CancellationToken token;
+    private final ObjectName name;
+
+    private SearchMonitor(DFSearch search, String name) throws JMException {
+        this.search = search;
+        if (search.getCancellationToken() == null)
+            search.setCancellationToken(new CancellationToken());
+        this.token = search.getCancellationToken();
+        this.name = register(this, "minicp.search", "DFSearch", name);
+    }
+
+    /**
+     * Registers a monitor of a search in the platform MBean server
+     *
+     * @param search the search to watch
+     * @param name name of the monitor in the console, may be null
+     * @return the registered monitor
+     * @throws IllegalStateException if the monitor cannot be registered
+     */
+    public static SearchMonitor register(DFSearch search, String name) {
+        try {
+            return new SearchMonitor(search, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register the monitor of the search", e);
+        }
+    }
+
+    /**
+     * Registers an MBean in the platform MBean server, under a name unique in the JVM
+     *
+     * @param mbean the object to register, implementing an MXBean interface
+     * @param domain domain of the name of the MBean
+     * @param type type of the MBean
+     * @param name name of the MBean in the console, may be null
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static ObjectName register(Object mbean, String domain, String type, String name) throws JMException {
+        String objectName = domain + ":type=" + type + ",id=" + ids.incrementAndGet();
+        if (name != null)
+            objectName += ",name=" + ObjectName.quote(name);
+        ObjectName registered = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, registered);
+        return registered;
+    }
+
+    /**
+     * Unregisters an MBean from the platform MBean server, if it is registered
+     *
+     * @param name the name of the MBean
+     */
+    public static void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException ignored) {
+            // the MBean has been unregistered in the meantime
+        }
+    }
+
+    /**
+     * @return name of the monitor in the platform MBean server
+     */
+    public ObjectName getObjectName() {
+        return name;
+    }
+
+    /**
+     * Unregisters the monitor
+     */
+    @Override
+    public void close() {
+        unregister(name);
+    }
+
+    @Override
+    public boolean isRunning() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics != null && statistics.isRunning();
+    }
+
+    @Override
+    public long getNodes() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics == null ? 0 : statistics.numberOfNodes();
+    }
+
+    @Override
+    public long getFailures() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics == null ? 0 : statistics.numberOfFailures();
+    }
+
+    @Override
+    public long getSolutions() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics == null ? 0 : statistics.numberOfSolutions();
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics == null ? 0 : statistics.nodesPerSecond();
+    }
+
+    @Override
+    public double getFailuresPerSecond() {
+        SearchStatistics statistics = search.currentStatistics();
+        if (statistics == null)
+            return 0;
+        long millis = statistics.elapsedMillis();
+        return millis == 0 ? 0 : 1000.0 * statistics.numberOfFailures() / millis;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        SearchStatistics statistics = search.currentStatistics();
+        return statistics == null ? 0 : statistics.elapsedMillis();
+    }
+
+    @Override
+    public long getTrailSize() {
+        return trailSize(search.getStateManager());
+    }
+
+    /**
+     * Gives the size of the trail of a state manager
+     *
+     * @param sm the state manager
+     * @return number of entries of the trail, -1 if the state manager does not use a trail
+     */
+    public static long trailSize(StateManager sm) {
+        return sm instanceof Trailer ? ((Trailer) sm).trailSize() : -1;
+    }
+
+    @Override
+    public void stop() {
+        token.cancel();
+    }
+
+    @Override
+    public void setTimeLimitMillis(long millis) {
+        token.cancelAfter(millis - (isRunning() ? getElapsedMillis() : 0));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+/**
+ * Management interface of a {@link SearchMonitor}, giving the progress of a search to any JMX console
+ */
+public interface SearchMonitorMXBean {
+
+    /**
+     * @return true if the search is running
+     */
+    boolean isRunning();
+
+    long getNodes();
+
+    long getFailures();
+
+    long getSolutions();
+
+    double getNodesPerSecond();
+
+    double getFailuresPerSecond();
+
+    /**
+     * @return time elapsed since the start of the search, until its end if it is over, in milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * @return number of entries of the trail, -1 if the state manager does not use a trail
+     */
+    long getTrailSize();
+
+    /**
+     * Stops the search at its next check, as if it was cancelled
+     */
+    void stop();
+
+    /**
+     * Stops the search once a given time has elapsed since its start
+     *
+     * @param millis time limit of the search, in milliseconds
+     */
+    void setTimeLimitMillis(long millis);
+}
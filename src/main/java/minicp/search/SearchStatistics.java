@@ -15,24 +15,170 @@
 
 package minicp.search;
 
+import minicp.engine.core.Solver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 /**
  * Statistics collected during the
  * execution of
  * {@link DFSearch#solve()} and
  * {@link DFSearch#optimize(Objective)}
+ *
+ * While the search is running, the propagations, the fix-points, the elapsed time
+ * and the allocated bytes are read when asked, such that the statistics given to the limit
+ * or to a listener are up to date. A {@link #snapshot()} freezes them.
+ * The propagations and fix-points are only counted when the search knows the solver,
+ * and the allocated bytes when the JVM measures the allocations of the threads.
  */
 public class SearchStatistics {
 
-    private int nFailures = 0;
-    private int nNodes = 0;
-    private int nSolutions = 0;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private long nFailures = 0;
+    private long nNodes = 0;
+    private long nSolutions = 0;
+    private long nRestarts = 0;
     private boolean completed = false;
 
+    private long maxDepth = 0;
+    private long depthSum = 0; // sum of the depths of the nodes
+
+    private long nPropagations = 0;
+    private long nFixPoints = 0;
+    private long allocatedBytes = -1; // -1 if unknown
+
+    // timestamps in nanoseconds, 0 if the event did not occur
+    private long startTime = 0;
+    private long endTime = 0;
+    private long firstSolutionTime = 0;
+    private long lastSolutionTime = 0;
+
+    // values of the solver and of the thread at the start, while the search is running
+    private volatile boolean running = false; // read by the monitors of the search
+    private Solver solver; // null if the propagations are not counted
+    private long propagationsAtStart;
+    private long fixPointsAtStart;
+    private long threadId = -1; // -1 if the allocations are not measured
+    private long allocatedAtStart;
+
     public String toString() {
-        return "\n\t#choice: " + nNodes
-                + "\n\t#fail: " + nFailures
-                + "\n\t#sols : " + nSolutions
-                + "\n\tcompleted : " + completed + "\n";
+        return "\n\t#choice: " + numberOfNodes()
+                + "\n\t#fail: " + numberOfFailures()
+                + "\n\t#sols : " + numberOfSolutions()
+                + "\n\t#restarts : " + numberOfRestarts()
+                + "\n\tcompleted : " + isCompleted()
+                + "\n\tmax depth : " + maxDepth()
+                + "\n\tavg depth : " + String.format("%.2f", averageDepth())
+                + "\n\t#propagations : " + numberOfPropagations()
+                + "\n\t#fix-points : " + numberOfFixPoints()
+                + "\n\ttime [ms] : " + elapsedMillis()
+                + "\n\tfirst solution [ms] : " + timeToFirstSolutionMillis()
+                + "\n\tbest solution [ms] : " + timeToBestSolutionMillis()
+                + "\n\tnodes / s : " + String.format("%.1f", nodesPerSecond())
+                + "\n\tallocated [bytes] : " + allocatedBytes()
+                + "\n\tbytes / node : " + String.format("%.1f", bytesPerNode()) + "\n";
+    }
+
+    /**
+     * Starts measuring the time, the propagations and the allocations of the calling thread
+     *
+     * @param solver the solver whose propagations are counted, or null if they are not
+     * @param measureAllocation true if the bytes allocated by the calling thread are measured
+     */
+    void start(Solver solver, boolean measureAllocation) {
+        running = true;
+        startTime = System.nanoTime();
+        this.solver = solver;
+        if (solver != null) {
+            propagationsAtStart = solver.numberOfPropagations() - nPropagations;
+            fixPointsAtStart = solver.numberOfFixPoints() - nFixPoints;
+        }
+        threadId = -1;
+        if (measureAllocation) {
+            long id = Thread.currentThread().getId();
+            long allocated = threadAllocatedBytes(id);
+            if (allocated >= 0) {
+                threadId = id;
+                allocatedAtStart = allocated;
+            }
+        }
+    }
+
+    /**
+     * Stops measuring, freezing the values
+     */
+    void stop() {
+        nPropagations = numberOfPropagations();
+        nFixPoints = numberOfFixPoints();
+        allocatedBytes = allocatedBytes();
+        endTime = System.nanoTime();
+        running = false;
+        solver = null;
+    }
+
+    private static long threadAllocatedBytes(long id) {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads.getThreadAllocatedBytes(id);
+        }
+        return -1;
+    }
+
+    /**
+     * Gives a copy of the statistics that does not change anymore,
+     * that can be taken while the search is running
+     *
+     * @return the current values of the statistics
+     */
+    public SearchStatistics snapshot() {
+        SearchStatistics copy = new SearchStatistics();
+        copy.nFailures = nFailures;
+        copy.nNodes = nNodes;
+        copy.nSolutions = nSolutions;
+        copy.nRestarts = nRestarts;
+        copy.completed = completed;
+        copy.maxDepth = maxDepth;
+        copy.depthSum = depthSum;
+        copy.nPropagations = numberOfPropagations();
+        copy.nFixPoints = numberOfFixPoints();
+        copy.allocatedBytes = allocatedBytes();
+        copy.startTime = startTime;
+        copy.endTime = running ? System.nanoTime() : endTime;
+        copy.firstSolutionTime = firstSolutionTime;
+        copy.lastSolutionTime = lastSolutionTime;
+        return copy;
+    }
+
+    /**
+     * Adds the statistics of a search done after the ones of this object,
+     * such as the successive searches of a large neighborhood search.
+     * The time is measured from the start of the first search to the end of the last one,
+     * the time to the first and the best solutions being relative to the start of the first search.
+     *
+     * @param other the statistics of a search that is over
+     */
+    public void accumulate(SearchStatistics other) {
+        nFailures += other.nFailures;
+        nNodes += other.nNodes;
+        nSolutions += other.nSolutions;
+        nRestarts += other.nRestarts;
+        completed = other.completed;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        depthSum += other.depthSum;
+        nPropagations += other.nPropagations;
+        nFixPoints += other.nFixPoints;
+        if (other.allocatedBytes >= 0)
+            allocatedBytes = Math.max(0, allocatedBytes) + other.allocatedBytes;
+        if (startTime == 0)
+            startTime = other.startTime;
+        endTime = Math.max(endTime, other.endTime);
+        if (firstSolutionTime == 0)
+            firstSolutionTime = other.firstSolutionTime;
+        if (other.lastSolutionTime != 0)
+            lastSolutionTime = other.lastSolutionTime;
     }
 
     public void incrFailures() {
@@ -43,28 +189,153 @@ public class SearchStatistics {
         nNodes++;
     }
 
+    /**
+     * Counts a node at a given depth of the search tree
+     *
+     * @param depth depth of the node, the children of the root being at depth 1
+     */
+    public void incrNodes(int depth) {
+        nNodes++;
+        depthSum += depth;
+        if (depth > maxDepth)
+            maxDepth = depth;
+    }
+
     public void incrSolutions() {
         nSolutions++;
+        lastSolutionTime = System.nanoTime();
+        if (firstSolutionTime == 0)
+            firstSolutionTime = lastSolutionTime;
+    }
+
+    // adds the statistics collected by a worker of a ParallelDFSearch
+    void merge(long nNodes, long nFailures, long nSolutions, long depthSum, long maxDepth) {
+        this.nNodes += nNodes;
+        this.nFailures += nFailures;
+        this.depthSum += depthSum;
+        this.maxDepth = Math.max(this.maxDepth, maxDepth);
+        if (nSolutions > 0) {
+            this.nSolutions += nSolutions;
+            lastSolutionTime = System.nanoTime();
+            if (firstSolutionTime == 0)
+                firstSolutionTime = lastSolutionTime;
+        }
+    }
+
+    public void incrRestarts() {
+        nRestarts++;
     }
 
     public void setCompleted() {
         completed = true;
     }
 
-    public int numberOfFailures() {
+    public long numberOfFailures() {
         return nFailures;
     }
 
-    public int numberOfNodes() {
+    public long numberOfNodes() {
         return nNodes;
     }
 
-    public int numberOfSolutions() {
+    public long numberOfSolutions() {
         return nSolutions;
     }
 
+    public long numberOfRestarts() {
+        return nRestarts;
+    }
+
     public boolean isCompleted() {
         return completed;
     }
 
+    /**
+     * @return true if the search collecting the statistics is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return maximum depth of a node of the search tree
+     */
+    public long maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return average depth of the nodes of the search tree, 0 if there is no node
+     */
+    public double averageDepth() {
+        return nNodes == 0 ? 0 : (double) depthSum / nNodes;
+    }
+
+    /**
+     * @return number of propagations of the constraints during the search
+     */
+    public long numberOfPropagations() {
+        return running && solver != null ? solver.numberOfPropagations() - propagationsAtStart : nPropagations;
+    }
+
+    /**
+     * @return number of fix-points computed during the search
+     */
+    public long numberOfFixPoints() {
+        return running && solver != null ? solver.numberOfFixPoints() - fixPointsAtStart : nFixPoints;
+    }
+
+    /**
+     * @return time elapsed since the start of the search, until its end if it is over, in milliseconds
+     */
+    public long elapsedMillis() {
+        if (startTime == 0)
+            return 0;
+        return ((running ? System.nanoTime() : endTime) - startTime) / 1_000_000;
+    }
+
+    /**
+     * @return time from the start of the search to the first solution in milliseconds, -1 if there is none
+     */
+    public long timeToFirstSolutionMillis() {
+        return firstSolutionTime == 0 ? -1 : (firstSolutionTime - startTime) / 1_000_000;
+    }
+
+    /**
+     * Gives the time to the best solution, which is the last one found when optimizing
+     *
+     * @return time from the start of the search to the last solution in milliseconds, -1 if there is none
+     */
+    public long timeToBestSolutionMillis() {
+        return lastSolutionTime == 0 ? -1 : (lastSolutionTime - startTime) / 1_000_000;
+    }
+
+    /**
+     * @return bytes allocated by the thread running the search, -1 if they are not measured
+     */
+    public long allocatedBytes() {
+        if (running && threadId >= 0) {
+            long allocated = threadAllocatedBytes(threadId);
+            return allocated < 0 ? -1 : allocated - allocatedAtStart + Math.max(0, allocatedBytes);
+        }
+        return allocatedBytes;
+    }
+
+    /**
+     * @return number of nodes explored per second, 0 if no time has elapsed
+     */
+    public double nodesPerSecond() {
+        long millis = elapsedMillis();
+        return millis == 0 ? 0 : 1000.0 * nNodes / millis;
+    }
+
+    /**
+     * @return bytes allocated per node explored, -1 if the allocations are not measured
+     */
+    public double bytesPerNode() {
+        long bytes = allocatedBytes();
+        if (bytes < 0)
+            return -1;
+        return nNodes == 0 ? 0 : (double) bytes / nNodes;
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a {@link DFSearch} stopped before exploring its whole search tree,
+ * by its limit, its cancellation token or the interruption of its thread.
+ * The runs stopped by a restart policy are given by {@link RestartEvent}.
+ */
+@Name("minicp.SearchStop")
+@Label("Search Stop")
+@Category({"MiniCP", "Search"})
+@Description("Depth first search stopped by its limit, its cancellation or an interruption")
+@StackTrace(false)
+public class SearchStopEvent extends jdk.jfr.Event {
+
+    static final String LIMIT = "limit";
+    static final String CANCELLED = "cancelled";
+
+    @Label("Reason")
+    @Description("Cause of the stop: limit, or cancelled by the token or an interruption")
+    String reason;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Failures")
+    long failures;
+
+    @Label("Solutions")
+    long solutions;
+}
@@ -0,0 +1,178 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded table of the states whose subtree has been explored by a {@link DFSearch} without finding a solution.
+ * When a node reaches a state already stored, reached before through other decisions,
+ * the search fails right away instead of exploring its subtree again.
+ *
+ * A state is summarized by a 64 bits key computed on the current node, for instance a Zobrist hash.
+ * Two nodes having the same key must have the same solutions. The key may ignore the bound
+ * of an objective, as long as the bound is only tightened while the table is used.
+ * The table must be {@link #clear() cleared} when the constraints of the model are relaxed.
+ *
+ * The keys are stored in buckets of {@link #WAYS} entries, without any allocation.
+ * When a bucket is full, an entry is evicted following the clock algorithm:
+ * the entries used since the last pass of the hand of the bucket are kept.
+ *
+ * @see DFSearch#setTranspositionTable(TranspositionTable)
+ */
+public class TranspositionTable {
+
+    /**
+     * Default number of states kept by the table
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Number of entries in each bucket of the table
+     */
+    public static final int WAYS = 4;
+
+    private static final long EMPTY = 0L;
+
+    private final LongSupplier state;
+    private final long[] keys; // EMPTY if the entry is not used
+    private final boolean[] referenced; // true if the entry has been used since the last pass of the hand
+    private final byte[] hands; // next entry considered for the eviction in each bucket
+    private final int mask; // number of buckets - 1
+    private int size;
+    private long nHits;
+
+    /**
+     * Creates a table keeping at most {@link #DEFAULT_CAPACITY} states
+     *
+     * @param state gives the key of the state at the current node of the search
+     */
+    public TranspositionTable(LongSupplier state) {
+        this(state, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a table
+     *
+     * @param state gives the key of the state at the current node of the search
+     * @param capacity maximum number of states kept, rounded up to a power of 2 of at least {@link #WAYS}
+     */
+    public TranspositionTable(LongSupplier state, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("the capacity of the table must be positive");
+        int minBuckets = Math.min(1 << 28, (int) (((long) capacity + WAYS - 1) / WAYS));
+        int nBuckets = minBuckets <= 1 ? 1 : Integer.highestOneBit(minBuckets - 1) << 1;
+        this.state = state;
+        this.mask = nBuckets - 1;
+        this.keys = new long[nBuckets * WAYS];
+        this.referenced = new boolean[nBuckets * WAYS];
+        this.hands = new byte[nBuckets];
+    }
+
+    /**
+     * @return key of the state at the current node of the search
+     */
+    public long key() {
+        long key = state.getAsLong();
+        return key == EMPTY ? 1L : key;
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) * WAYS;
+    }
+
+    /**
+     * Tells if a state has been recorded as failed
+     *
+     * @param key key of the state, given by {@link #key()}
+     * @return true if the subtree of the state has no solution
+     */
+    public boolean isFailed(long key) {
+        int b = bucket(key);
+        for (int i = b; i < b + WAYS; i++) {
+            if (keys[i] == key) {
+                referenced[i] = true;
+                nHits++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that the subtree of a state has no solution
+     *
+     * @param key key of the state, given by {@link #key()}
+     */
+    public void recordFailure(long key) {
+        int b = bucket(key);
+        for (int i = b; i < b + WAYS; i++) {
+            if (keys[i] == key) {
+                referenced[i] = true;
+                return;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                referenced[i] = true;
+                size++;
+                return;
+            }
+        }
+        // the bucket is full: the hand clears the entries used since its last pass until it finds an unused one
+        int bucketIndex = b / WAYS;
+        int hand = hands[bucketIndex];
+        while (referenced[b + hand]) {
+            referenced[b + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+        keys[b + hand] = key;
+        referenced[b + hand] = true;
+        hands[bucketIndex] = (byte) ((hand + 1) % WAYS);
+    }
+
+    /**
+     * Removes all the states
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(referenced, false);
+        Arrays.fill(hands, (byte) 0);
+        size = 0;
+        nHits = 0;
+    }
+
+    /**
+     * @return number of states currently stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum number of states stored
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return number of nodes pruned since the creation or the last {@link #clear()}
+     */
+    public long nHits() {
+        return nHits;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.state;
+
+import java.util.ArrayList;
+
+/**
+ * Bit-set of unbounded capacity that can be saved and restored through
+ * the {@link StateManager#saveState()} / {@link StateManager#restoreState()}
+ * methods.
+ * All the bits are initially unset. Every word of 64 bits is stored as two {@link StateInt},
+ * such that changing a bit does not allocate. The words are only created when a bit is set,
+ * and the words created within a state are discarded when this state is restored.
+ */
+public class StateBitSet {
+
+    private final StateManager sm;
+    private final StateInt nWords;
+    private final ArrayList<StateInt> halves; // halves[2w] holds the 32 lower bits of the word w, halves[2w+1] its higher bits
+
+    /**
+     * Creates a restorable bit-set with all its bits unset
+     *
+     * @param sm the state manager that saves/restores the bit-set
+     *         when {@link StateManager#saveState()} / {@link StateManager#restoreState()}
+     *         methods are called.
+     */
+    public StateBitSet(StateManager sm) {
+        this.sm = sm;
+        nWords = sm.makeStateInt(0);
+        halves = new ArrayList<>();
+    }
+
+    /**
+     * Tells if the ith bit is set
+     *
+     * @param i the index of the bit, {@code i >= 0}
+     * @return true if the bit is set
+     */
+    public boolean get(int i) {
+        int w = i >>> 6; // divided by 64
+        return w < nWords.value() && (half(i).value() & (1 << i)) != 0; // << is a cyclic shift
+    }
+
+    /**
+     * Sets or unsets the ith bit
+     *
+     * @param i the index of the bit, {@code i >= 0}
+     * @param value true to set the bit, false to unset it
+     */
+    public void set(int i, boolean value) {
+        int w = i >>> 6;
+        if (w >= nWords.value()) {
+            if (!value)
+                return; // the bits outside of the words are already unset
+            grow(w + 1);
+        }
+        StateInt half = half(i);
+        int previous = half.value();
+        int next = value ? previous | (1 << i) : previous & ~(1 << i);
+        if (next != previous)
+            half.setValue(next);
+    }
+
+    // half of a word holding the ith bit
+    private StateInt half(int i) {
+        return halves.get(i >>> 5);
+    }
+
+    // creates words until n words are available
+    private void grow(int n) {
+        for (int w = nWords.value(); w < n; w++) {
+            // words beyond nWords belong to a restored state and are replaced:
+            // a Copier does not track the states created after its last save anymore
+            if (2 * w < halves.size()) {
+                halves.set(2 * w, sm.makeStateInt(0));
+                halves.set(2 * w + 1, sm.makeStateInt(0));
+            } else {
+                halves.add(sm.makeStateInt(0));
+                halves.add(sm.makeStateInt(0));
+            }
+        }
+        nWords.setValue(n);
+    }
+}
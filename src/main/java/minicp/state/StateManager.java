@@ -80,6 +80,14 @@ public interface StateManager {
      */
     StateInt makeStateInt(int initValue);
 
+    /**
+     * Creates a Stateful long (restorable), whose value is never boxed
+     *
+     * @param initValue the initial setValue
+     * @return a StateLong object wrapping the initValue
+     */
+    StateLong makeStateLong(long initValue);
+
     /**
      * Creates a Stateful map (restorable)
      *
@@ -36,15 +36,18 @@ public class Trailer implements StateManager {
         Backup() {
         }
 
+        // the latest entries are restored first, as a state changed again after a nested restore has several
+        // entries in the same backup, the oldest one holding its value at the save
         void restore() {
-            for (StateEntry se : this)
-                se.restore();
+            for (int i = size() - 1 ; i >= 0 ; --i)
+                get(i).restore();
         }
     }
 
     private Stack<Backup> prior;
     private Backup current;
     private long magic = 0L;
+    private int trailSize = 0; // number of entries in the backups
 
     private List<Procedure> onRestoreListeners;
 
@@ -71,6 +74,14 @@ public class Trailer implements StateManager {
 
     public void pushState(StateEntry entry) {
         current.push(entry);
+        trailSize++;
+    }
+
+    /**
+     * @return number of entries stored to restore the states of the previous levels
+     */
+    public int trailSize() {
+        return trailSize;
     }
 
     @Override
@@ -89,6 +100,7 @@ public class Trailer implements StateManager {
     @Override
     public void restoreState() {
         current.restore();
+        trailSize -= current.size();
         current = prior.pop();
         magic++;
         notifyRestore();
@@ -118,6 +130,11 @@ public class Trailer implements StateManager {
         return new TrailInt(this,initValue);
     }
 
+    @Override
+    public StateLong makeStateLong(long initValue) {
+        return new TrailLong(this,initValue);
+    }
+
     @Override
     public StateMap makeStateMap() {
         return new TrailMap(this);
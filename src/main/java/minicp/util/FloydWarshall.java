@@ -0,0 +1,150 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * All pairs shortest paths over a distance matrix stored row by row in a flat array,
+ * where dist[i * n + j] is the distance from i to j.
+ *
+ * The matrix is split into square blocks fitting in the cache. For each block on the diagonal,
+ * the block itself is closed first, then the blocks on its row and column, and finally all the other blocks.
+ * The blocks of the last two phases are independent and are relaxed in parallel over a {@link ForkJoinPool}.
+ * The sum of two distances must not overflow an int.
+ */
+public final class FloydWarshall {
+
+    /**
+     * Number of rows and columns of a block. A block of ints takes 64KB, such that the three blocks read by a relaxation fit in the L2 cache
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private FloydWarshall() {
+    }
+
+    /**
+     * Replaces every distance by the one of the shortest path, running on the common {@link ForkJoinPool}
+     *
+     * @param dist distance matrix of n * n entries, stored row by row
+     * @param n number of nodes
+     */
+    public static void closure(int[] dist, int n) {
+        closure(dist, n, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replaces every distance by the one of the shortest path
+     *
+     * @param dist distance matrix of n * n entries, stored row by row
+     * @param n number of nodes
+     * @param pool pool of threads relaxing the blocks. Small matrices are handled by the calling thread only
+     */
+    public static void closure(int[] dist, int n, ForkJoinPool pool) {
+        if (dist.length < n * n)
+            throw new IllegalArgumentException("the matrix holds less than " + n + " * " + n + " entries");
+        int nBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean parallel = nBlocks > 2 && pool.getParallelism() > 1;
+        List<RecursiveAction> tasks = new ArrayList<>(nBlocks * nBlocks);
+        for (int kb = 0 ; kb < nBlocks ; ++kb) {
+            int k = kb;
+            // phase 1: the block on the diagonal only depends on itself
+            relax(dist, n, kb, kb, kb);
+            // phase 2: the blocks on the row and column of the diagonal one
+            tasks.clear();
+            for (int b = 0 ; b < nBlocks ; ++b) {
+                if (b == kb)
+                    continue;
+                int other = b;
+                tasks.add(task(() -> relax(dist, n, k, other, k)));
+                tasks.add(task(() -> relax(dist, n, other, k, k)));
+            }
+            run(tasks, parallel, pool);
+            // phase 3: every other block, from the blocks computed in phase 2
+            tasks.clear();
+            for (int ib = 0 ; ib < nBlocks ; ++ib) {
+                if (ib == kb)
+                    continue;
+                int row = ib;
+                tasks.add(task(() -> {
+                    for (int jb = 0 ; jb < nBlocks ; ++jb)
+                        if (jb != k)
+                            relax(dist, n, row, jb, k);
+                }));
+            }
+            run(tasks, parallel, pool);
+        }
+    }
+
+    /**
+     * Relaxes the distances of the block (ib, jb) through the nodes of the block kb.
+     * The intermediate nodes are iterated in the outer loop, such that the block on the diagonal
+     * and the ones sharing its row or column are correctly closed
+     */
+    private static void relax(int[] dist, int n, int ib, int jb, int kb) {
+        int iEnd = Math.min(n, (ib + 1) * BLOCK_SIZE);
+        int jStart = jb * BLOCK_SIZE;
+        int jEnd = Math.min(n, jStart + BLOCK_SIZE);
+        int kEnd = Math.min(n, (kb + 1) * BLOCK_SIZE);
+        for (int k = kb * BLOCK_SIZE ; k < kEnd ; ++k) {
+            int kRow = k * n;
+            for (int i = ib * BLOCK_SIZE ; i < iEnd ; ++i) {
+                int iRow = i * n;
+                int dik = dist[iRow + k];
+                for (int j = jStart ; j < jEnd ; ++j)
+                    dist[iRow + j] = Math.min(dist[iRow + j], dik + dist[kRow + j]);
+            }
+        }
+    }
+
+    private static RecursiveAction task(Procedure procedure) {
+        return new RecursiveAction() {
+            @Override
+            protected void compute() {
+                procedure.call();
+            }
+        };
+    }
+
+    private static void run(List<RecursiveAction> tasks, boolean parallel, ForkJoinPool pool) {
+        if (!parallel) {
+            for (RecursiveAction task : tasks)
+                task.invoke();
+        } else if (ForkJoinTask.getPool() == pool) {
+            RecursiveAction.invokeAll(tasks);
+        } else {
+            pool.invoke(task(() -> RecursiveAction.invokeAll(tasks)));
+        }
+    }
+
+    /**
+     * Copies an array holding a square matrix row by row into a matrix
+     *
+     * @param flat array where the entry (i, j) is at i * n + j
+     * @param n number of rows and columns
+     * @return the matrix
+     */
+    public static int[][] unflatten(int[] flat, int n) {
+        int[][] matrix = new int[n][n];
+        for (int i = 0 ; i < n ; ++i)
+            System.arraycopy(flat, i * n, matrix[i], 0, n);
+        return matrix;
+    }
+}
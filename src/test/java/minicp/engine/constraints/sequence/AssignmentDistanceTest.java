@@ -0,0 +1,55 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.engine.SolverTest;
+import minicp.engine.constraints.sequence.TSPTWTest.Instance;
+import minicp.engine.constraints.sequence.TSPTWTest.Model;
+import minicp.engine.core.Solver;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static minicp.engine.constraints.sequence.TSPTWTest.enumerate;
+import static minicp.engine.constraints.sequence.TSPTWTest.minimize;
+import static minicp.engine.constraints.sequence.TSPTWTest.nNodes;
+import static minicp.engine.constraints.sequence.TSPTWTest.randomInstance;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AssignmentDistanceTest extends SolverTest {
+
+    @ParameterizedTest
+    @MethodSource("solverSupplier")
+    public void testSameOptimumAsEnumeration(Supplier<Solver> solver) {
+        Random random = new Random(42);
+        for (int instance = 0 ; instance < 20 ; ++instance) {
+            Instance tsptw = randomInstance(random, instance % 2 == 0);
+            int expected = enumerate(tsptw.transitions, tsptw.twStart, tsptw.twEnd, nNodes, 0, 0, 0, Integer.MAX_VALUE);
+            assertEquals(expected, minimize(solver.get(), tsptw,
+                    model -> model.tour.getSolver().post(new AssignmentDistance(model.tour, tsptw.transitions, model.distance))));
+            assertEquals(expected, minimize(solver.get(), tsptw,
+                    model -> model.tour.getSolver().post(new AssignmentDistance(model.tour, tsptw.transitions, model.distance, model.time))));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("solverSupplier")
+    public void testRootBoundStrongerThanDetours(Supplier<Solver> solver) {
+        Random random = new Random(42);
+        int nTighter = 0;
+        for (int instance = 0 ; instance < 10 ; ++instance) {
+            Instance tsptw = randomInstance(random, false);
+            int optimum = enumerate(tsptw.transitions, tsptw.twStart, tsptw.twEnd, nNodes, 0, 0, 0, Integer.MAX_VALUE);
+            Solver cp = solver.get();
+            Model model = new Model(cp, tsptw);
+            int detourBound = model.distance.min();
+            cp.post(new AssignmentDistance(model.tour, tsptw.transitions, model.distance));
+            int assignmentBound = model.distance.min();
+            if (assignmentBound > detourBound)
+                nTighter++;
+            assertTrue(assignmentBound <= optimum);
+        }
+        assertTrue(nTighter > 0);
+    }
+}
@@ -0,0 +1,150 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.cp.Factory;
+import minicp.engine.SolverTest;
+import minicp.engine.core.OldSeqVar;
+import minicp.engine.core.Solver;
+import minicp.state.StateManager;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InsertionNogoodsTest extends SolverTest {
+
+    static int nNodes = 6;
+    static int begin = nNodes;
+    static int end = nNodes + 1;
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testNogoodRemovedInSameContext(Solver cp) {
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 2, begin, end);
+        InsertionNogoodStore store = new InsertionNogoodStore();
+        StateManager sm = cp.getStateManager();
+        cp.post(new InsertionNogoods(seq, store));
+
+        sm.saveState();
+        seq.insert(begin, 0);
+        cp.fixPoint();
+        long context = store.key(seq);
+        assertTrue(seq.isPredInsert(0, 1));
+        store.record(context, 0, 1); // pretend that inserting 1 after 0 fails
+        sm.restoreState();
+
+        // another context is not impacted
+        sm.saveState();
+        seq.insert(begin, 2);
+        cp.fixPoint();
+        assertNotEquals(context, store.key(seq));
+        assertTrue(seq.isPredInsert(2, 1));
+        sm.restoreState();
+
+        // the same context is met again: the insertion is removed
+        sm.saveState();
+        seq.insert(begin, 0);
+        cp.fixPoint();
+        assertEquals(context, store.key(seq));
+        assertFalse(seq.isPredInsert(0, 1));
+        assertTrue(seq.isPredInsert(begin, 1));
+        sm.restoreState();
+        assertTrue(seq.isPredInsert(0, 1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testContextDependsOnOrderAndExclusions(Solver cp) {
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 2, begin, end);
+        InsertionNogoodStore store = new InsertionNogoodStore();
+        StateManager sm = cp.getStateManager();
+
+        sm.saveState();
+        seq.insert(begin, 0);
+        seq.insert(0, 1);
+        long order01 = store.key(seq);
+        seq.exclude(4);
+        long order01Excluded4 = store.key(seq);
+        sm.restoreState();
+
+        sm.saveState();
+        seq.insert(begin, 1);
+        seq.insert(1, 0);
+        long order10 = store.key(seq);
+        sm.restoreState();
+
+        assertNotEquals(order01, order10);
+        assertNotEquals(order01, order01Excluded4);
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testIncrementalContext(Solver cp) {
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 2, begin, end);
+        InsertionNogoodStore store = new InsertionNogoodStore();
+        StateManager sm = cp.getStateManager();
+        InsertionNogoods nogoods = new InsertionNogoods(seq, store);
+        cp.post(nogoods);
+        long root = nogoods.context();
+        assertEquals(store.key(seq), root);
+
+        sm.saveState();
+        seq.insert(begin, 0);
+        seq.insert(0, 1);
+        seq.insert(begin, 2); // inserted in the same fix-point, before the previous ones
+        seq.exclude(4);
+        cp.fixPoint();
+        long context = nogoods.context();
+        assertEquals(store.key(seq), context);
+        sm.saveState();
+        seq.insert(1, 3);
+        cp.fixPoint();
+        assertEquals(store.key(seq), nogoods.context());
+        sm.restoreState();
+        assertEquals(context, nogoods.context());
+        sm.restoreState();
+        assertEquals(root, nogoods.context());
+
+        // the same ordering reached through other insertions has the same context
+        sm.saveState();
+        seq.exclude(4);
+        cp.fixPoint();
+        seq.insert(begin, 1);
+        cp.fixPoint();
+        seq.insert(begin, 0);
+        cp.fixPoint();
+        seq.insert(begin, 2);
+        cp.fixPoint();
+        assertEquals(context, nogoods.context());
+        sm.restoreState();
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testCapacity(Solver cp) {
+        InsertionNogoodStore store = new InsertionNogoodStore(InsertionNogoodStore.WAYS);
+        assertEquals(InsertionNogoodStore.WAYS, store.capacity());
+        store.record(1L, 0, 1);
+        store.record(2L, 0, 1);
+        store.record(2L, 0, 1); // already known
+        store.record(2L, 2, 1);
+        assertEquals(2, store.nNogoods(store.find(2L)));
+        store.record(3L, 0, 1);
+        store.record(4L, 0, 1);
+        store.record(5L, 0, 1); // every context has been used since the last pass: the first one is evicted
+        assertEquals(InsertionNogoodStore.WAYS, store.size());
+        assertEquals(-1, store.find(1L));
+        assertNotEquals(-1, store.find(2L));
+        assertEquals(6, store.nRecorded());
+
+        // only the last insertions of a context are kept
+        for (int i = 0 ; i < InsertionNogoodStore.NOGOODS_PER_CONTEXT ; ++i)
+            store.record(5L, i + 1, 0);
+        int entry = store.find(5L);
+        assertEquals(InsertionNogoodStore.NOGOODS_PER_CONTEXT, store.nNogoods(entry));
+        for (int i = 0 ; i < store.nNogoods(entry) ; ++i)
+            assertNotEquals(1, store.node(entry, i));
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(-1, store.find(2L));
+    }
+}
@@ -0,0 +1,202 @@
+package minicp.engine.constraints.sequence;
+
+import minicp.cp.Factory;
+import minicp.engine.SolverTest;
+import minicp.engine.core.IntVar;
+import minicp.engine.core.OldSeqVar;
+import minicp.engine.core.Solver;
+import minicp.search.DFSearch;
+import minicp.search.Objective;
+import minicp.util.Procedure;
+import minicp.util.exception.InconsistencyException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static minicp.cp.BranchingScheme.EMPTY;
+import static minicp.cp.Factory.makeDfs;
+import static minicp.util.exception.InconsistencyException.INCONSISTENCY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TSPTWTest extends SolverTest {
+
+    static int nNodes = 7; // nodes to visit, the begin and end depots are nNodes and nNodes + 1
+
+    /**
+     * The minimization of the distance must give the same optimum as an enumeration of the tours,
+     * which fails if the bound on the distance removes optimal tours
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testSameOptimumAsEnumeration(Solver cp) {
+        Random random = new Random(42);
+        for (int instance = 0 ; instance < 10 ; ++instance) {
+            Instance tsptw = randomInstance(random, false);
+            int expected = enumerate(tsptw.transitions, tsptw.twStart, tsptw.twEnd, nNodes, 0, 0, 0, Integer.MAX_VALUE);
+            cp.getStateManager().saveState();
+            int optimum = minimize(cp, tsptw, model -> {});
+            cp.getStateManager().restoreState();
+            assertEquals(expected, optimum);
+        }
+    }
+
+    /**
+     * The detours must not increase the bound on the distance if the transitions violate the triangular inequality,
+     * as inserting a node can then shorten the tour
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testSameOptimumWithoutTriangularInequality(Solver cp) {
+        Random random = new Random(42);
+        for (int instance = 0 ; instance < 10 ; ++instance) {
+            Instance tsptw = randomInstance(random, false);
+            // random transitions, the end depot being at the same place as the begin depot
+            for (int i = 0 ; i < nNodes + 2 ; ++i)
+                for (int j = 0 ; j < nNodes + 2 ; ++j)
+                    tsptw.transitions[i][j] = i == j ? 0 : 1 + random.nextInt(100);
+            for (int i = 0 ; i < nNodes + 2 ; ++i) {
+                tsptw.transitions[i][nNodes + 1] = tsptw.transitions[i][nNodes];
+                tsptw.transitions[nNodes + 1][i] = tsptw.transitions[nNodes][i];
+            }
+            assertFalse(TransitionTimes.respectTriangularInequality(tsptw.transitions));
+            int expected = enumerate(tsptw.transitions, tsptw.twStart, tsptw.twEnd, nNodes, 0, 0, 0, Integer.MAX_VALUE);
+            cp.getStateManager().saveState();
+            int optimum = minimize(cp, tsptw, model -> {});
+            cp.getStateManager().restoreState();
+            assertEquals(expected, optimum);
+        }
+    }
+
+    /**
+     * Random euclidean instance, respecting the triangular inequality,
+     * whose begin and end depots are nNodes and nNodes + 1
+     */
+    static class Instance {
+        final int[][] transitions = new int[nNodes + 2][nNodes + 2];
+        final int[] twStart = new int[nNodes + 2];
+        final int[] twEnd = new int[nNodes + 2];
+    }
+
+    /**
+     * Variables of the distance minimization of an instance, linked by a {@link TSPTW} constraint
+     */
+    static class Model {
+        final OldSeqVar tour;
+        final IntVar[] time;
+        final IntVar distance;
+
+        Model(Solver cp, Instance instance) {
+            tour = Factory.makeSequenceVar(cp, nNodes + 2, nNodes, nNodes + 1);
+            time = new IntVar[nNodes + 2];
+            for (int i = 0 ; i < nNodes + 2 ; ++i)
+                time[i] = Factory.makeIntVar(cp, instance.twStart[i], instance.twEnd[i]);
+            distance = Factory.makeIntVar(cp, 0, 10000);
+            cp.post(new TSPTW(tour, time, distance, instance.transitions));
+        }
+    }
+
+    /**
+     * Gives a random instance
+     * @param tightWindows true if the time windows remove most of the tours
+     */
+    static Instance randomInstance(Random random, boolean tightWindows) {
+        Instance instance = new Instance();
+        int[] x = new int[nNodes + 2];
+        int[] y = new int[nNodes + 2];
+        for (int i = 0 ; i < nNodes + 1 ; ++i) {
+            x[i] = random.nextInt(100);
+            y[i] = random.nextInt(100);
+        }
+        x[nNodes + 1] = x[nNodes];
+        y[nNodes + 1] = y[nNodes];
+        for (int i = 0 ; i < nNodes + 2 ; ++i)
+            for (int j = 0 ; j < nNodes + 2 ; ++j)
+                instance.transitions[i][j] = (int) Math.ceil(Math.hypot(x[i] - x[j], y[i] - y[j]));
+        for (int i = 0 ; i < nNodes ; ++i) {
+            instance.twStart[i] = random.nextInt(300);
+            instance.twEnd[i] = instance.twStart[i] + (tightWindows ? 50 : 200) + random.nextInt(tightWindows ? 100 : 400);
+        }
+        instance.twEnd[nNodes] = 0;
+        instance.twEnd[nNodes + 1] = 10000;
+        return instance;
+    }
+
+    /**
+     * Gives the optimum found by a search minimizing the distance, Integer.MAX_VALUE if there is none
+     * @param constraints posts the constraints added to the model
+     */
+    static int minimize(Solver cp, Instance instance, Consumer<Model> constraints) {
+        int[] best = new int[] {Integer.MAX_VALUE};
+        try {
+            Model model = new Model(cp, instance);
+            constraints.accept(model);
+            Objective objective = cp.minimize(model.distance);
+            DFSearch search = makeDfs(cp, branchOnNode(model.tour));
+            search.onSolution(() -> {
+                assertEquals(model.distance.min(), model.distance.max());
+                best[0] = model.distance.min();
+            });
+            search.optimize(objective);
+        } catch (InconsistencyException e) {
+            // no feasible tour
+        }
+        return best[0];
+    }
+
+    /**
+     * Gives the length of the shortest feasible tour, or Integer.MAX_VALUE if there is none
+     */
+    static int enumerate(int[][] transitions, int[] twStart, int[] twEnd, int last, int visited, int time, int length, int best) {
+        if (visited == (1 << nNodes) - 1) {
+            int end = nNodes + 1;
+            if (Math.max(time + transitions[last][end], twStart[end]) > twEnd[end])
+                return best;
+            return Math.min(best, length + transitions[last][end]);
+        }
+        for (int node = 0 ; node < nNodes ; ++node) {
+            if ((visited & (1 << node)) != 0)
+                continue;
+            int arrival = Math.max(time + transitions[last][node], twStart[node]);
+            if (arrival <= twEnd[node])
+                best = enumerate(transitions, twStart, twEnd, node, visited | (1 << node), arrival,
+                        length + transitions[last][node], best);
+        }
+        return best;
+    }
+
+    /**
+     * Inserts the node having the fewest insertions at every of its insertions
+     */
+    static Supplier<Procedure[]> branchOnNode(OldSeqVar tour) {
+        int[] nodes = new int[tour.nNode()];
+        return () -> {
+            if (tour.isFixed())
+                return EMPTY;
+            int nPossible = tour.fillPossible(nodes);
+            int bestNode = -1;
+            int minInsert = Integer.MAX_VALUE;
+            for (int i = 0 ; i < nPossible ; ++i) {
+                int nInsert = tour.nMemberPredInsert(nodes[i]);
+                if (nInsert < minInsert) {
+                    bestNode = nodes[i];
+                    minInsert = nInsert;
+                }
+            }
+            if (minInsert == 0)
+                throw INCONSISTENCY;
+            int node = bestNode;
+            int[] pred = new int[minInsert];
+            tour.fillMemberPredInsert(node, pred);
+            Procedure[] branching = new Procedure[minInsert];
+            for (int i = 0 ; i < minInsert ; ++i) {
+                int predecessor = pred[i];
+                branching[i] = () -> tour.getSolver().post(new Insert(tour, predecessor, node));
+            }
+            return branching;
+        };
+    }
+}
@@ -10,9 +10,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 
@@ -205,4 +207,79 @@ public class TransitionTimesTest extends SolverTest {
             fail("should fail");
         } catch (InconsistencyException e) {}
     }
+
+    @Test
+    public void testParallelFilteringSameAsSequential() {
+        int n = 200;
+        Random random = new Random(42);
+        int[][] dist = new int[n][n];
+        int[] x = random.ints(n, 0, 100).toArray();
+        int[] y = random.ints(n, 0, 100).toArray();
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                dist[i][j] = Math.abs(x[i] - x[j]) + Math.abs(y[i] - y[j]);
+        int[] twStart = new int[n];
+        int[] twEnd = new int[n];
+        for (int i = 0; i < n; i++) {
+            twStart[i] = random.nextInt(2000);
+            twEnd[i] = twStart[i] + 200 + random.nextInt(500);
+        }
+        twStart[0] = 0;
+        twEnd[0] = 0;
+        twStart[n - 1] = 0;
+        twEnd[n - 1] = 10000;
+        OldSeqVar[] seq = new OldSeqVar[2];
+        for (int k = 0; k < 2; k++) {
+            Solver cp = Factory.makeSolver();
+            seq[k] = Factory.makeSequenceVar(cp, n, 0, n - 1);
+            IntVar[] time = new IntVar[n];
+            for (int i = 0; i < n; i++)
+                time[i] = Factory.makeIntVar(cp, twStart[i], twEnd[i], true);
+            TransitionTimes constraint = new TransitionTimes(seq[k], time, dist, new int[n]);
+            if (k == 1)
+                constraint.setParallelFiltering(0);
+            cp.post(constraint);
+        }
+        int[] insertions = new int[n];
+        int[] sequential = new int[n];
+        int[] parallel = new int[n];
+        for (int step = 0; step < 20 && !seq[0].isFixed(); step++) {
+            for (int node = 0; node < n; node++) {
+                assertEquals(seq[0].isExcluded(node), seq[1].isExcluded(node));
+                int s = seq[0].fillPredInsert(node, sequential);
+                assertEquals(s, seq[1].fillPredInsert(node, parallel));
+                for (int i = 0; i < s; i++)
+                    assertTrue(seq[1].isPredInsert(sequential[i], node));
+            }
+            // insert the same possible node at the same place in both sequences
+            int size = seq[0].fillPossible(insertions);
+            int node = insertions[random.nextInt(size)];
+            int nInsert = seq[0].fillMemberPredInsert(node, insertions);
+            if (nInsert == 0)
+                break;
+            int pred = insertions[random.nextInt(nInsert)];
+            for (OldSeqVar s : seq) {
+                s.insert(pred, node);
+                s.getSolver().fixPoint();
+            }
+        }
+    }
+
+    @Test
+    public void testTriangularInequality() {
+        Random random = new Random(42);
+        for (int n = 1 ; n < 30 ; ++n) {
+            int[][] matrix = new int[n][n];
+            for (int i = 0 ; i < n ; ++i)
+                for (int j = 0 ; j < n ; ++j)
+                    matrix[i][j] = i == j ? 0 : 50 + random.nextInt(n < 15 ? 50 : 100);
+            int threshold = 0;
+            for (int i = 0 ; i < n ; ++i)
+                for (int j = 0 ; j < n ; ++j)
+                    for (int k = 0 ; k < n ; ++k)
+                        threshold = Math.max(threshold, matrix[i][j] - matrix[i][k] - matrix[k][j]);
+            assertEquals(threshold, TransitionTimes.thresholdRespectTriangularInequality(matrix));
+            assertEquals(threshold == 0, TransitionTimes.respectTriangularInequality(matrix));
+        }
+    }
 }
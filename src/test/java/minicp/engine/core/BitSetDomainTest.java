@@ -0,0 +1,179 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+package minicp.engine.core;
+
+import minicp.cp.Factory;
+import minicp.engine.SolverTest;
+import minicp.state.StateManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BitSetDomainTest extends SolverTest {
+
+    private static class MyDomainListener implements DomainListener {
+
+        int nEmpty = 0;
+        int nBind = 0;
+        int nChange = 0;
+        int nRemoveBelow = 0;
+        int nRemoveAbove = 0;
+
+        @Override
+        public void empty() {
+            nEmpty++;
+        }
+
+        @Override
+        public void bind() {
+            nBind++;
+        }
+
+        @Override
+        public void change() {
+            nChange++;
+        }
+
+        @Override
+        public void changeMin() {
+            nRemoveBelow++;
+        }
+
+        @Override
+        public void changeMax() {
+            nRemoveAbove++;
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testDomain1(Solver cp) {
+        MyDomainListener dlistener = new MyDomainListener();
+        IntDomain dom = new BitSetDomain(cp.getStateManager(), 5, 10);
+
+        dom.removeAbove(8, dlistener);
+
+        assertEquals(1, dlistener.nChange);
+        assertEquals(0, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(0, dlistener.nRemoveBelow);
+
+        dom.remove(6, dlistener);
+
+        assertEquals(2, dlistener.nChange);
+        assertEquals(0, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(0, dlistener.nRemoveBelow);
+
+        dom.remove(5, dlistener);
+
+        assertEquals(3, dlistener.nChange);
+        assertEquals(0, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(1, dlistener.nRemoveBelow);
+
+        dom.remove(7, dlistener);
+
+        assertEquals(4, dlistener.nChange);
+        assertEquals(1, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(2, dlistener.nRemoveBelow);
+        assertEquals(8, dom.min());
+        assertEquals(8, dom.max());
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testDomain2(Solver cp) {
+        MyDomainListener dlistener = new MyDomainListener();
+        IntDomain dom = new BitSetDomain(cp.getStateManager(), 5, 10);
+
+        dom.removeAllBut(7, dlistener);
+
+        assertEquals(1, dlistener.nChange);
+        assertEquals(1, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(1, dlistener.nRemoveBelow);
+
+        dom.removeAllBut(8, dlistener);
+        assertEquals(1, dlistener.nEmpty);
+        assertEquals(0, dom.size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testDomain3(Solver cp) {
+        MyDomainListener dlistener = new MyDomainListener();
+        IntDomain dom = new BitSetDomain(cp.getStateManager(), 5, 10);
+
+        dom.removeAbove(5, dlistener);
+
+        assertEquals(1, dlistener.nChange);
+        assertEquals(1, dlistener.nBind);
+        assertEquals(1, dlistener.nRemoveAbove);
+        assertEquals(0, dlistener.nRemoveBelow);
+
+        dom.removeBelow(6, dlistener);
+        assertEquals(1, dlistener.nEmpty);
+    }
+
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testFullWordAndRestore(Solver cp) {
+        MyDomainListener dlistener = new MyDomainListener();
+        StateManager sm = cp.getStateManager();
+        IntDomain dom = new BitSetDomain(sm, -32, 31);
+        assertEquals(64, dom.size());
+        assertEquals(-32, dom.min());
+        assertEquals(31, dom.max());
+        assertFalse(dom.contains(32));
+        assertFalse(dom.contains(Integer.MIN_VALUE));
+
+        sm.saveState();
+        dom.removeBelow(0, dlistener);
+        dom.removeAbove(30, dlistener);
+        dom.remove(10, dlistener);
+        assertEquals(30, dom.size());
+        assertEquals(0, dom.min());
+        assertEquals(30, dom.max());
+        assertFalse(dom.contains(10));
+
+        int[] values = new int[64];
+        int s = dom.fillArray(values);
+        assertEquals(30, s);
+        Arrays.sort(values, 0, s);
+        for (int i = 1; i < s; i++)
+            assertTrue(values[i - 1] < values[i] && values[i] != 10);
+
+        sm.restoreState();
+        assertEquals(64, dom.size());
+        assertEquals(-32, dom.min());
+        assertEquals(31, dom.max());
+    }
+
+    @Test
+    public void testTooLarge() {
+        Solver cp = Factory.makeSolver();
+        assertThrows(IllegalArgumentException.class, () -> new BitSetDomain(cp.getStateManager(), 0, 64));
+        assertTrue(BitSetDomain.fits(0, 63));
+        assertFalse(BitSetDomain.fits(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+}
@@ -75,5 +75,20 @@ public class MiniCPTest extends SolverTest {
         assertEquals ((8 + 4 + 2),stats.numberOfNodes());
     }
 
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testFixPointListenerRemovedOnRestore(Solver cp) {
+        IntVar x = makeIntVar(cp, 0, 9);
+        int[] nCalls = new int[1];
+        cp.getStateManager().saveState();
+        cp.onFixPoint(() -> nCalls[0]++);
+        cp.fixPoint();
+        assertEquals(1, nCalls[0]);
+        cp.getStateManager().restoreState();
+        cp.post(notEqual(x, 0));
+        cp.fixPoint();
+        assertEquals(1, nCalls[0]);
+    }
+
 
 }
@@ -0,0 +1,117 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.examples.tsptw;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static minicp.examples.tsptw.TsptwSolverTest.enumerate;
+import static minicp.examples.tsptw.TsptwSolverTest.randomInstance;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BeamSearchTest {
+
+    /**
+     * With a width holding every state, the beam finds a tour if and only if the instance is feasible
+     */
+    @Test
+    public void testFeasibleTourOnRandomInstances() {
+        Random random = new Random(42);
+        int nFeasible = 0;
+        for (int i = 0 ; i < 20 ; ++i) {
+            TsptwInstance instance = randomInstance(random, 8);
+            int[] twStart = new int[instance.nbNodes];
+            int[] twEnd = new int[instance.nbNodes];
+            for (int node = 0 ; node < instance.nbNodes ; ++node) {
+                // windows shrunk to a quarter, such that some instances are infeasible
+                TimeWindow tw = instance.timeWindows[node];
+                twStart[node] = tw.getEarliest();
+                twEnd[node] = node == 0 ? tw.getLatest() : tw.getEarliest() + (tw.getLatest() - tw.getEarliest()) / 4;
+                instance.timeWindows[node] = new TimeWindow(twStart[node], twEnd[node]);
+            }
+            BeamSearch beam = new BeamSearch(instance.nbNodes, instance.distances, twStart, twEnd);
+            int[] tour = beam.solve(1000, () -> false);
+            boolean feasible = enumerate(instance) != Integer.MAX_VALUE;
+            assertEquals(feasible, tour != null);
+            if (feasible) {
+                assertValidTour(tour, instance.distances, twStart, twEnd);
+                nFeasible++;
+            }
+        }
+        assertTrue(nFeasible > 0 && nFeasible < 20, nFeasible + " feasible instances");
+    }
+
+    /**
+     * No tour is given if a node cannot be reached in its time window
+     */
+    @Test
+    public void testInfeasibleInstance() {
+        int[][] distances = {
+                {0, 5, 5},
+                {5, 0, 5},
+                {5, 5, 0},
+        };
+        int[] twStart = {0, 0, 0};
+        int[] twEnd = {100, 100, 4}; // node 2 cannot be reached from the depot before 5
+        BeamSearch beam = new BeamSearch(3, distances, twStart, twEnd);
+        assertNull(beam.solve(10, () -> false));
+    }
+
+    /**
+     * The state visiting node 1 first arrives the earliest but cannot be completed,
+     * such that a beam of width 1 finds no tour while a beam of width 2 finds the tour 0 2 3 1 0
+     */
+    @Test
+    public void testWidthTooSmall() {
+        int[][] distances = {
+                {0, 1, 3, 6},
+                {1, 0, 4, 2},
+                {3, 4, 0, 6},
+                {6, 2, 6, 0},
+        };
+        int[] twStart = {0, 0, 0, 0};
+        int[] twEnd = {1000, 100, 5, 9};
+        BeamSearch beam = new BeamSearch(4, distances, twStart, twEnd);
+        assertNull(beam.solve(1, () -> false));
+        int[] tour = beam.solve(2, () -> false);
+        assertArrayEquals(new int[] {0, 2, 3, 1, 0}, tour);
+        assertValidTour(tour, distances, twStart, twEnd);
+    }
+
+    /**
+     * Checks that a tour starts and ends at the depot, visits every other node once and respects the time windows
+     */
+    private static void assertValidTour(int[] tour, int[][] distances, int[] twStart, int[] twEnd) {
+        int n = distances.length;
+        assertNotNull(tour);
+        assertEquals(n + 1, tour.length);
+        assertEquals(0, tour[0]);
+        assertEquals(0, tour[n]);
+        boolean[] visited = new boolean[n];
+        int time = twStart[0];
+        for (int k = 1 ; k <= n ; ++k) {
+            int node = tour[k];
+            if (k < n) {
+                assertTrue(node > 0 && node < n);
+                assertFalse(visited[node]);
+                visited[node] = true;
+            }
+            time = Math.max(time + distances[tour[k - 1]][node], twStart[node]);
+            assertTrue(time <= twEnd[node], "node " + node + " reached at " + time + " after " + twEnd[node]);
+        }
+    }
+}
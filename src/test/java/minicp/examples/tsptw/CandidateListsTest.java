@@ -0,0 +1,117 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.examples.tsptw;
+
+import minicp.cp.Factory;
+import minicp.engine.SolverTest;
+import minicp.engine.core.OldSeqVar;
+import minicp.engine.core.Solver;
+import minicp.state.StateManager;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandidateListsTest extends SolverTest {
+
+    static final int nNodes = 5; // nodes 0..4 placed on a line, 0 being the begin depot and 5 the end depot
+
+    /**
+     * Distances between the nodes placed every 10 units on a line, the end depot being at the place of the begin depot
+     */
+    static int[][] lineDistances() {
+        int[][] distances = new int[nNodes + 1][nNodes + 1];
+        for (int i = 0 ; i <= nNodes ; ++i)
+            for (int j = 0 ; j <= nNodes ; ++j)
+                distances[i][j] = 10 * Math.abs(i % nNodes - j % nNodes);
+        return distances;
+    }
+
+    static CandidateLists loadedLists(StateManager sm, int k) {
+        int[] twStart = new int[nNodes + 1];
+        int[] twEnd = new int[nNodes + 1];
+        Arrays.fill(twEnd, 1000);
+        CandidateLists lists = new CandidateLists(sm, nNodes);
+        lists.load(lineDistances(), twStart, twEnd, nNodes, k);
+        return lists;
+    }
+
+    /**
+     * The closest predecessors of node 4 are 3, 2, 1 and 0. With a single candidate,
+     * it is only inserted after 3 while 3 is a member of the sequence
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testOnlyClosestCandidates(Solver cp) {
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 1, 0, nNodes);
+        CandidateLists lists = loadedLists(cp.getStateManager(), 1);
+        seq.insert(0, 1);
+        seq.insert(1, 3);
+        int[] dest = new int[nNodes + 1];
+        assertEquals(1, lists.fillCandidatePredInsert(seq, 4, dest));
+        assertEquals(3, dest[0]);
+        assertEquals(3, seq.nMemberPredInsert(4));
+    }
+
+    /**
+     * The list of a node without candidate member is doubled until one of its predecessors is a member,
+     * and the widening is undone on backtrack
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testWideningUndoneOnBacktrack(Solver cp) {
+        StateManager sm = cp.getStateManager();
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 1, 0, nNodes);
+        CandidateLists lists = loadedLists(sm, 1);
+        int[] dest = new int[nNodes + 1];
+
+        sm.saveState();
+        // only the begin depot is a member: the width of node 4 goes from 1 to 2 and then to 4
+        assertEquals(1, lists.fillCandidatePredInsert(seq, 4, dest));
+        assertEquals(0, dest[0]);
+        seq.insert(0, 3);
+        // with a width of 4, both 0 and 3 are candidates
+        assertEquals(2, lists.fillCandidatePredInsert(seq, 4, dest));
+        Arrays.sort(dest, 0, 2);
+        assertArrayEquals(new int[] {0, 3}, Arrays.copyOf(dest, 2));
+        sm.restoreState();
+
+        // the width is back to 1 and only 3 is a candidate
+        seq.insert(0, 3);
+        assertEquals(1, lists.fillCandidatePredInsert(seq, 4, dest));
+        assertEquals(3, dest[0]);
+    }
+
+    /**
+     * Once every predecessor is a candidate, the member predecessors are given even if they are not in the list
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testMemberPredecessorsWhenListExhausted(Solver cp) {
+        OldSeqVar seq = Factory.makeSequenceVar(cp, nNodes + 1, 0, nNodes);
+        int[] twStart = new int[nNodes + 1];
+        int[] twEnd = new int[nNodes + 1];
+        Arrays.fill(twEnd, 1000);
+        twEnd[4] = 15; // only the predecessor 3 can reach node 4 in time from the start of its window
+        CandidateLists lists = new CandidateLists(cp.getStateManager(), nNodes);
+        lists.load(lineDistances(), twStart, twEnd, nNodes, 1);
+        int[] dest = new int[nNodes + 1];
+        assertEquals(1, lists.fillCandidatePredInsert(seq, 4, dest));
+        assertEquals(0, dest[0]);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.examples.tsptw;
+
+import minicp.cp.Factory;
+import minicp.engine.SolverTest;
+import minicp.engine.core.IntVar;
+import minicp.engine.core.OldSeqVar;
+import minicp.engine.core.Solver;
+import minicp.state.StateManager;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MaxRegretCacheTest extends SolverTest {
+
+    static final int nNodes = 8; // nodes to insert, the begin and end depots are nNodes and nNodes + 1
+
+    /**
+     * The node given by the cache must be the one of a recomputation from scratch of the best and second best
+     * insertion costs, along random insertions, exclusions, removals of insertions and moves of the time windows,
+     * interleaved with backtracks
+     */
+    @ParameterizedTest
+    @MethodSource("solver")
+    public void testSameNodeAsBruteForce(Solver cp) {
+        Random random = new Random(42);
+        StateManager sm = cp.getStateManager();
+        int[][] distances = new int[nNodes + 2][nNodes + 2];
+        for (int i = 0 ; i < nNodes + 2 ; ++i)
+            for (int j = 0 ; j < nNodes + 2 ; ++j)
+                distances[i][j] = i == j ? 0 : 1 + random.nextInt(50);
+        OldSeqVar route = Factory.makeSequenceVar(cp, nNodes + 2, nNodes, nNodes + 1);
+        IntVar[] time = new IntVar[nNodes + 2];
+        for (int i = 0 ; i < nNodes + 2 ; ++i)
+            time[i] = Factory.makeIntVar(cp, 0, 1000);
+        // same form as the heuristic of the solver: detour minus the slack left to the successor
+        IntBinaryOperator cost = (node, pred) -> {
+            int succ = route.nextMember(pred);
+            int slack = time[succ].max() - (time[pred].min() + distances[pred][node] + distances[node][succ]);
+            return distances[pred][node] + distances[node][succ] - distances[pred][succ] - slack;
+        };
+        MaxRegretCache cache = new MaxRegretCache(route, time, cost);
+        int[] nodes = new int[nNodes + 2];
+        int[] preds = new int[nNodes + 2];
+        for (int run = 0 ; run < 20 ; ++run) {
+            int level = sm.getLevel();
+            sm.saveState();
+            for (int step = 0 ; step < 200 ; ++step) {
+                assertEquals(bruteForce(route, cost, nodes, preds), cache.maxRegretNode());
+                int action = random.nextInt(10);
+                if (action < 2) {
+                    sm.saveState();
+                } else if (action < 4) {
+                    if (sm.getLevel() > level + 1)
+                        sm.restoreState();
+                } else if (action < 6) { // moves a time window
+                    IntVar t = time[random.nextInt(nNodes + 2)];
+                    if (random.nextBoolean())
+                        t.removeBelow(t.min() + random.nextInt(1 + (t.max() - t.min()) / 4));
+                    else
+                        t.removeAbove(t.max() - random.nextInt(1 + (t.max() - t.min()) / 4));
+                } else {
+                    int nPossible = route.fillPossible(nodes);
+                    if (nPossible == 0)
+                        continue;
+                    int node = nodes[random.nextInt(nPossible)];
+                    int nInsert = route.fillMemberPredInsert(node, preds);
+                    if (action == 6) {
+                        route.exclude(node);
+                    } else if (nInsert > 0 && action < 9) {
+                        route.insert(preds[random.nextInt(nInsert)], node);
+                    } else if (nInsert > 0) {
+                        route.removePredInsert(preds[random.nextInt(nInsert)], node);
+                    }
+                }
+            }
+            while (sm.getLevel() > level)
+                sm.restoreState();
+        }
+    }
+
+    /**
+     * Node with the maximum regret, computed from scratch with the same tie breaking as the cache
+     */
+    private static int bruteForce(OldSeqVar route, IntBinaryOperator cost, int[] nodes, int[] preds) {
+        int bestNode = -1;
+        int bestRegret = Integer.MIN_VALUE;
+        int size = route.fillPossible(nodes);
+        for (int i = 0 ; i < size ; ++i) {
+            int node = nodes[i];
+            int best = Integer.MAX_VALUE;
+            int second = Integer.MAX_VALUE;
+            int nInsert = route.fillMemberPredInsert(node, preds);
+            for (int j = 0 ; j < nInsert ; ++j) {
+                int c = cost.applyAsInt(node, preds[j]);
+                if (c < best) {
+                    second = best;
+                    best = c;
+                } else if (c < second) {
+                    second = c;
+                }
+            }
+            int regret = second - best;
+            if (regret > bestRegret) {
+                bestNode = node;
+                bestRegret = regret;
+            }
+        }
+        return bestNode;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.examples.tsptw;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreprocessingTest {
+
+    /**
+     * The preprocessing must keep every feasible tour: the number of feasible tours and the shortest one
+     * are the same with the original time windows and with the tightened ones, the infeasible arcs being forbidden
+     */
+    @Test
+    public void testSameToursAsWithoutPreprocessing() {
+        Random random = new Random(42);
+        int n = 7; // begin depot 0, nodes 1..6 and end depot 7
+        int nTightened = 0;
+        int nInfeasibleArcs = 0;
+        int nFeasible = 0;
+        for (int instance = 0 ; instance < 50 ; ++instance) {
+            int[] x = new int[n];
+            int[] y = new int[n];
+            for (int i = 0 ; i < n ; ++i) {
+                x[i] = random.nextInt(100);
+                y[i] = random.nextInt(100);
+            }
+            int[][] distances = new int[n + 1][n + 1];
+            for (int i = 0 ; i <= n ; ++i)
+                for (int j = 0 ; j <= n ; ++j)
+                    distances[i][j] = (int) Math.ceil(Math.hypot(x[i % n] - x[j % n], y[i % n] - y[j % n]));
+            int[] twStart = new int[n + 1];
+            int[] twEnd = new int[n + 1];
+            twEnd[0] = 1000;
+            for (int i = 1 ; i < n ; ++i) {
+                twStart[i] = random.nextInt(300);
+                twEnd[i] = twStart[i] + 50 + random.nextInt(150);
+            }
+            twEnd[n] = 400 + random.nextInt(200);
+            int[] expected = enumerate(distances, twStart, twEnd, (pred, node) -> true);
+
+            Preprocessing preprocessing = new Preprocessing(distances, twStart, twEnd, 0, n, n);
+            preprocessing.run();
+            int[] actual = enumerate(distances, twStart, twEnd, preprocessing::isArcFeasible);
+            assertArrayEquals(expected, actual);
+            nTightened += preprocessing.nTightened();
+            nInfeasibleArcs += preprocessing.nInfeasibleArcs();
+            if (expected[0] > 0)
+                nFeasible++;
+        }
+        // the instances are neither trivial for the preprocessing nor all infeasible
+        assertTrue(nTightened > 0);
+        assertTrue(nInfeasibleArcs > 0);
+        assertTrue(nFeasible > 0);
+    }
+
+    /**
+     * Node 1 is either visited first, at 10, or after node 2, which is reached at 4 at the earliest:
+     * its time window starts at 7. The end depot closes late enough for the latest departures to be unchanged
+     */
+    @Test
+    public void testTightenFromPredecessors() {
+        int[][] distances = {
+                {0, 10, 4, 0},
+                {10, 0, 3, 10},
+                {4, 3, 0, 4},
+                {0, 10, 4, 0},
+        };
+        int[] twStart = {0, 0, 0, 0};
+        int[] twEnd = {1000, 1000, 1000, 10000};
+        Preprocessing preprocessing = new Preprocessing(distances, twStart, twEnd, 0, 3, 3);
+        preprocessing.run();
+        assertArrayEquals(new int[] {0, 7, 4, 0}, twStart);
+        assertArrayEquals(new int[] {1000, 1000, 1000, 10000}, twEnd);
+        assertEquals(0, preprocessing.nInfeasibleArcs());
+    }
+
+    /**
+     * Node 1 is either followed by the end depot, reached at 100 at the latest, or by node 2,
+     * which must be left at 96 to reach the end depot: node 1 must be left at 93.
+     * The time windows start late enough for the earliest arrivals to be unchanged
+     */
+    @Test
+    public void testTightenFromSuccessors() {
+        int[][] distances = {
+                {0, 10, 4, 0},
+                {10, 0, 3, 10},
+                {4, 3, 0, 4},
+                {0, 10, 4, 0},
+        };
+        int[] twStart = {0, 50, 50, 0};
+        int[] twEnd = {100, 100, 100, 100};
+        Preprocessing preprocessing = new Preprocessing(distances, twStart, twEnd, 0, 3, 3);
+        preprocessing.run();
+        assertArrayEquals(new int[] {0, 50, 50, 0}, twStart);
+        assertArrayEquals(new int[] {100, 93, 96, 100}, twEnd);
+        assertEquals(3, preprocessing.nTightened());
+    }
+
+    /**
+     * Node 2 closes at 40 and cannot be reached from node 1, which opens at 50.
+     * It is then only reached from the begin depot, at 30
+     */
+    @Test
+    public void testInfeasibleArc() {
+        int[][] distances = {
+                {0, 10, 30, 0},
+                {10, 0, 3, 10},
+                {30, 3, 0, 30},
+                {0, 10, 30, 0},
+        };
+        int[] twStart = {0, 50, 0, 0};
+        int[] twEnd = {100, 100, 40, 200};
+        Preprocessing preprocessing = new Preprocessing(distances, twStart, twEnd, 0, 3, 3);
+        assertFalse(preprocessing.isArcFeasible(1, 2));
+        assertTrue(preprocessing.isArcFeasible(2, 1));
+        assertTrue(preprocessing.isArcFeasible(0, 2));
+        preprocessing.run();
+        assertArrayEquals(new int[] {0, 50, 30, 0}, twStart);
+        assertArrayEquals(new int[] {100, 100, 40, 200}, twEnd);
+        assertEquals(1, preprocessing.nTightened());
+        assertEquals(1, preprocessing.nInfeasibleArcs());
+        assertFalse(preprocessing.isArcFeasible(1, 2));
+    }
+
+    /**
+     * Enumerates the tours from the begin depot 0 to the end depot n, visiting every node of 1..n-1
+     *
+     * @param arcs tells if a node can be visited right after a predecessor
+     * @return {number of feasible tours, shortest distance of a feasible tour}
+     */
+    private static int[] enumerate(int[][] distances, int[] twStart, int[] twEnd, BiPredicate<Integer, Integer> arcs) {
+        int[] result = new int[] {0, Integer.MAX_VALUE};
+        enumerate(distances, twStart, twEnd, arcs, 0, 1, twStart[0], 0, result);
+        return result;
+    }
+
+    private static void enumerate(int[][] distances, int[] twStart, int[] twEnd, BiPredicate<Integer, Integer> arcs,
+                                  int last, int visited, int time, int length, int[] result) {
+        int n = distances.length - 1;
+        if (visited == (1 << n) - 1) {
+            if (arcs.test(last, n) && time + distances[last][n] <= twEnd[n]) {
+                result[0]++;
+                result[1] = Math.min(result[1], length + distances[last][n]);
+            }
+            return;
+        }
+        for (int node = 1 ; node < n ; ++node) {
+            if ((visited & (1 << node)) != 0 || !arcs.test(last, node))
+                continue;
+            int arrival = Math.max(time + distances[last][node], twStart[node]);
+            if (arrival <= twEnd[node])
+                enumerate(distances, twStart, twEnd, arcs, node, visited | (1 << node), arrival,
+                        length + distances[last][node], result);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.examples.tsptw;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TsptwSolverTest {
+
+    static final int TIMEOUT = 10; // timeout of the solver [s]
+
+    /**
+     * The optimization of a small instance must end before the timeout on a tour proven optimal,
+     * whose distance is the one of an enumeration of the tours
+     */
+    @Test
+    public void testOptimizeProvesOptimum() {
+        Random random = new Random(42);
+        for (int i = 0 ; i < 5 ; ++i) {
+            TsptwInstance instance = randomInstance(random, 10);
+            assertTrue(instance.respectTriangularInequality());
+            TsptwSolver solver = new TsptwSolver(instance, TIMEOUT);
+            long start = System.currentTimeMillis();
+            TsptwResult result = solver.optimize();
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(result.isOptimum);
+            assertTrue(elapsed < TIMEOUT * 1000 / 2, "the search took " + elapsed + " ms");
+            assertEquals(enumerate(instance), result.cost);
+        }
+    }
+
+    /**
+     * The time windows of the tour model assume the triangular inequality,
+     * such that a completed search does not prove an optimum on an instance violating it
+     */
+    @Test
+    public void testNoProofWithoutTriangularInequality() {
+        Random random = new Random(42);
+        TsptwInstance instance = randomInstance(random, 10);
+        for (int i = 1 ; i < instance.nbNodes ; ++i)
+            for (int j = 1 ; j < instance.nbNodes ; ++j)
+                if (i != j)
+                    instance.distances[i][j] = 1 + random.nextInt(100);
+        assertFalse(instance.respectTriangularInequality());
+        TsptwSolver solver = new TsptwSolver(instance, 1);
+        TsptwResult result = solver.optimize();
+        assertNotEquals(Integer.MAX_VALUE, result.cost);
+        assertFalse(result.isOptimum);
+    }
+
+    /**
+     * Random euclidean instance of depot 0, whose time windows are loose enough for most tours to be feasible
+     */
+    static TsptwInstance randomInstance(Random random, int nNodes) {
+        int[] x = new int[nNodes];
+        int[] y = new int[nNodes];
+        for (int i = 0 ; i < nNodes ; ++i) {
+            x[i] = random.nextInt(100);
+            y[i] = random.nextInt(100);
+        }
+        int[][] distances = new int[nNodes][nNodes];
+        for (int i = 0 ; i < nNodes ; ++i)
+            for (int j = 0 ; j < nNodes ; ++j)
+                distances[i][j] = (int) Math.ceil(Math.hypot(x[i] - x[j], y[i] - y[j]));
+        TimeWindow[] tw = new TimeWindow[nNodes];
+        tw[0] = new TimeWindow(0, 10000);
+        for (int i = 1 ; i < nNodes ; ++i) {
+            int earliest = random.nextInt(400);
+            tw[i] = new TimeWindow(earliest, earliest + 200 + random.nextInt(400));
+        }
+        return new TsptwInstance(nNodes, distances, tw);
+    }
+
+    /**
+     * Gives the distance of the shortest feasible tour starting and ending at the depot 0,
+     * Integer.MAX_VALUE if there is none
+     */
+    static int enumerate(TsptwInstance instance) {
+        return enumerate(instance, 0, 1, 0, 0);
+    }
+
+    private static int enumerate(TsptwInstance instance, int last, int visited, int time, int length) {
+        int n = instance.nbNodes;
+        if (visited == (1 << n) - 1) {
+            if (time + instance.distances[last][0] > instance.timeWindows[0].latest)
+                return Integer.MAX_VALUE;
+            return length + instance.distances[last][0];
+        }
+        int best = Integer.MAX_VALUE;
+        for (int node = 1 ; node < n ; ++node) {
+            if ((visited & (1 << node)) != 0)
+                continue;
+            int arrival = Math.max(time + instance.distances[last][node], instance.timeWindows[node].earliest);
+            if (arrival <= instance.timeWindows[node].latest)
+                best = Math.min(best, enumerate(instance, node, visited | (1 << node), arrival,
+                        length + instance.distances[last][node]));
+        }
+        return best;
+    }
+}
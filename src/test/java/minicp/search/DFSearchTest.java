@@ -15,23 +15,44 @@
 
 package minicp.search;
 
+import minicp.cp.BranchingScheme;
+import minicp.cp.Factory;
+import minicp.engine.core.IntVar;
+import minicp.engine.core.MiniCP;
+import minicp.engine.core.Solver;
 import minicp.state.StateInt;
 import minicp.state.StateManager;
 import minicp.state.StateManagerTest;
+import minicp.state.Trailer;
 import minicp.util.NotImplementedExceptionAssume;
 import minicp.util.exception.InconsistencyException;
 import minicp.util.exception.NotImplementedException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static minicp.cp.BranchingScheme.EMPTY;
 import static minicp.cp.BranchingScheme.branch;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class DFSearchTest extends StateManagerTest {
@@ -237,4 +258,431 @@ public class DFSearchTest extends StateManagerTest {
 
         dfs.solve();
     }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testDecisions(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        int[] values = new int[3];
+
+        DFSearch dfs = new DFSearch(sm, DecisionBranching.of(decisions -> {
+            if (i.value() < values.length) {
+                decisions.add(0, i.value(), 1, 2);
+                decisions.add(0, i.value(), 0, 1); // explored first as its key is lower
+                decisions.add(0, i.value(), -1, 3); // always fails
+                decisions.sort();
+            }
+        }, (kind, index, value) -> {
+            if (value < 0)
+                throw new InconsistencyException();
+            values[index] = value;
+            i.increment();
+        }));
+
+        int[] nSols = new int[1];
+        dfs.onSolution(() -> {
+            // the solutions are found in lexicographic order
+            assertEquals(nSols[0], values[0] * 4 + values[1] * 2 + values[2]);
+            nSols[0]++;
+        });
+
+        SearchStatistics stats = dfs.solve();
+
+        assertEquals(8, stats.numberOfSolutions());
+        assertEquals(1 + 2 + 4, stats.numberOfFailures());
+        assertEquals(3 + 6 + 12, stats.numberOfNodes());
+        assertEquals(0, i.value());
+
+        nSols[0] = 0;
+        stats = dfs.solve(stat -> stat.numberOfSolutions() >= 3);
+        assertEquals(3, stats.numberOfSolutions());
+        assertEquals(0, i.value());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testDeepDecisions(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        int depth = 100000;
+
+        DFSearch dfs = new DFSearch(sm, DecisionBranching.of(decisions -> {
+            if (i.value() < depth)
+                decisions.add(0, 0, 0);
+        }, (kind, first, second) -> i.increment()));
+
+        SearchStatistics stats = dfs.solve();
+        assertEquals(1, stats.numberOfSolutions());
+        assertEquals(depth, stats.numberOfNodes());
+    }
+
+    @Test
+    public void testDecisionsSort() {
+        Decisions decisions = new Decisions(2);
+        int[] keys = new int[]{5, -3, 5, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 0};
+        for (int j = 0; j < keys.length; j++)
+            decisions.add(j % 3, j, -j, keys[j]);
+        decisions.sort();
+        int[] expected = new int[]{4, 1, 3, 6, 0, 2, 5}; // same keys keep their order
+        assertEquals(expected.length, decisions.size());
+        for (int j = 0; j < expected.length; j++) {
+            assertEquals(expected[j] % 3, decisions.kind(j));
+            assertEquals(expected[j], decisions.first(j));
+            assertEquals(-expected[j], decisions.second(j));
+            assertEquals(keys[expected[j]], decisions.key(j));
+        }
+        decisions.clear();
+        assertEquals(0, decisions.size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testRestarts(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        int depth = 3;
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= depth)
+                throw new InconsistencyException(); // every leaf fails
+            return branch(i::increment, i::increment);
+        });
+        // runs of 1, 2, 4 and 8 failures, the last one exploring the 8 leaves of the tree
+        dfs.setRestartPolicy(RestartPolicy.geometric(1, 2));
+        SearchStatistics stats = dfs.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(0, stats.numberOfSolutions());
+        assertEquals(4, stats.numberOfRestarts());
+        assertEquals(1 + 2 + 4 + 8 + 8, stats.numberOfFailures());
+
+        // the limit of the search stops the restarts
+        dfs.setRestartPolicy(RestartPolicy.fixed(1));
+        stats = dfs.solve(s -> s.numberOfFailures() >= 5);
+        assertFalse(stats.isCompleted());
+        assertEquals(4, stats.numberOfRestarts());
+        assertEquals(5, stats.numberOfFailures());
+
+        dfs.setRestartPolicy(null);
+        stats = dfs.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(0, stats.numberOfRestarts());
+        assertEquals(8, stats.numberOfFailures());
+    }
+
+    @Test
+    public void testRestartPolicies() {
+        int[] luby = new int[]{1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+        RestartPolicy policy = RestartPolicy.luby(3);
+        for (int run = 0; run < luby.length; run++)
+            assertEquals(3 * luby[run], policy.failureLimit(run));
+        policy = RestartPolicy.geometric(10, 1.5);
+        assertEquals(10, policy.failureLimit(0));
+        assertEquals(15, policy.failureLimit(1));
+        assertEquals(22, policy.failureLimit(2));
+        assertEquals(Integer.MAX_VALUE, policy.failureLimit(1000));
+        assertEquals(7, RestartPolicy.fixed(7).failureLimit(42));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testCancellation(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        int depth = 20;
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= depth)
+                return EMPTY;
+            return branch(i::increment, i::increment);
+        });
+        CancellationToken token = new CancellationToken();
+        dfs.setCancellationToken(token);
+        dfs.onSolution(() -> {
+            if (i.value() >= depth)
+                token.cancel();
+        });
+        // stops within the check period following the first solution
+        SearchStatistics stats = dfs.solve();
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() >= 1);
+        assertTrue(stats.numberOfNodes() <= depth + DFSearch.CHECK_PERIOD);
+        // a cancelled token stops the search at the root
+        stats = dfs.solve();
+        assertFalse(stats.isCompleted());
+        assertEquals(0, stats.numberOfNodes());
+        // the token can be used again once reset, here with a deadline
+        token.reset();
+        token.cancelAfter(50);
+        stats = dfs.solve(s -> s.numberOfSolutions() >= 3);
+        assertFalse(stats.isCompleted());
+        assertEquals(3, stats.numberOfSolutions());
+        assertEquals(0, i.value());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testDeadline(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= 40) // too large to be explored before the deadline
+                return EMPTY;
+            return branch(i::increment, i::increment);
+        });
+        dfs.setCancellationToken(CancellationToken.withDeadline(20));
+        SearchStatistics stats = dfs.solve();
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() > 0);
+        assertEquals(0, i.value());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testInterruption(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        int depth = 20;
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= depth)
+                return EMPTY;
+            return branch(i::increment, i::increment);
+        });
+        dfs.onSolution(() -> Thread.currentThread().interrupt());
+        SearchStatistics stats = dfs.solve();
+        // the search stops without clearing the interrupted status
+        assertTrue(Thread.interrupted());
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() <= DFSearch.CHECK_PERIOD);
+        assertEquals(0, i.value());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testTranspositionTable(StateManager sm) {
+        // chooses 4 elements out of 8, in any order, summing to a target
+        int[] weights = {1, 2, 4, 8, 16, 32, 64, 128};
+        int k = 4;
+        StateInt chosen = sm.makeStateInt(0);
+        StateInt sum = sm.makeStateInt(0);
+        DecisionBranching branching = DecisionBranching.of(decisions -> {
+            if (Integer.bitCount(chosen.value()) < k)
+                for (int e = 0; e < weights.length; e++)
+                    if ((chosen.value() & (1 << e)) == 0)
+                        decisions.add(0, e, 0);
+        }, (kind, e, unused) -> {
+            chosen.setValue(chosen.value() | (1 << e));
+            sum.setValue(sum.value() + weights[e]);
+            if (Integer.bitCount(chosen.value()) == k && sum.value() % 3 != 0)
+                throw InconsistencyException.INCONSISTENCY;
+        });
+        DFSearch dfs = new DFSearch(sm, branching);
+        SearchStatistics withoutTable = dfs.solve();
+        TranspositionTable table = new TranspositionTable(() -> chosen.value());
+        dfs.setTranspositionTable(table);
+        SearchStatistics withTable = dfs.solve();
+        assertTrue(withTable.isCompleted());
+        assertEquals(withoutTable.numberOfSolutions(), withTable.numberOfSolutions());
+        assertTrue(withTable.numberOfNodes() < withoutTable.numberOfNodes());
+        assertTrue(table.nHits() > 0);
+        // the table is kept across the searches: the states without solution fail right away
+        SearchStatistics again = dfs.solve();
+        assertEquals(withoutTable.numberOfSolutions(), again.numberOfSolutions());
+        assertTrue(again.numberOfNodes() <= withTable.numberOfNodes());
+        assertEquals(0, chosen.value());
+    }
+
+    @Test
+    public void testTranspositionTableEviction() {
+        TranspositionTable table = new TranspositionTable(() -> 0L, TranspositionTable.WAYS);
+        assertEquals(TranspositionTable.WAYS, table.capacity());
+        long[] keys = {1, 2, 3, 4, 5, 6};
+        for (int i = 0; i < 4; i++)
+            table.recordFailure(keys[i]);
+        assertEquals(4, table.size());
+        // every entry is used: the hand clears them and evicts the first one
+        table.recordFailure(keys[4]);
+        assertFalse(table.isFailed(keys[0]));
+        // the second entry is used again and is kept, the third one is evicted
+        assertTrue(table.isFailed(keys[1]));
+        table.recordFailure(keys[5]);
+        assertFalse(table.isFailed(keys[2]));
+        assertTrue(table.isFailed(keys[1]));
+        assertTrue(table.isFailed(keys[3]));
+        assertTrue(table.isFailed(keys[4]));
+        assertTrue(table.isFailed(keys[5]));
+        table.clear();
+        assertEquals(0, table.size());
+        assertFalse(table.isFailed(keys[5]));
+        assertEquals(1L, table.key()); // 0 is reserved for the empty entries
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testStatistics(StateManager sm) {
+        Solver cp = new MiniCP(sm);
+        int n = 6;
+        IntVar[] q = Factory.makeIntVarArray(cp, n, n);
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++) {
+                cp.post(Factory.notEqual(q[i], q[j]));
+                cp.post(Factory.notEqual(q[i], q[j], j - i));
+                cp.post(Factory.notEqual(q[i], q[j], i - j));
+            }
+        DFSearch dfs = Factory.makeDfs(cp, BranchingScheme.firstFail(q));
+        List<SearchStatistics> snapshots = new ArrayList<>();
+        SearchStatistics[] running = new SearchStatistics[1];
+        dfs.onSolution(() -> snapshots.add(running[0].snapshot()));
+        SearchStatistics stats = dfs.solve(s -> {
+            running[0] = s;
+            return false;
+        });
+        assertEquals(4, stats.numberOfSolutions());
+        assertEquals(4, snapshots.size());
+        // the snapshots are frozen at the time of each solution
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(i + 1, snapshots.get(i).numberOfSolutions());
+            assertTrue(snapshots.get(i).numberOfNodes() <= stats.numberOfNodes());
+            assertTrue(snapshots.get(i).numberOfPropagations() <= stats.numberOfPropagations());
+        }
+        assertTrue(stats.maxDepth() >= 1);
+        assertTrue(stats.averageDepth() >= 1 && stats.averageDepth() <= stats.maxDepth());
+        assertTrue(stats.numberOfFixPoints() >= stats.numberOfNodes());
+        assertTrue(stats.numberOfPropagations() > 0);
+        assertTrue(stats.timeToFirstSolutionMillis() >= 0);
+        assertTrue(stats.timeToFirstSolutionMillis() <= stats.timeToBestSolutionMillis());
+        assertTrue(stats.timeToBestSolutionMillis() <= stats.elapsedMillis());
+        // the statistics do not change once the search is over
+        cp.fixPoint();
+        assertEquals(stats.numberOfFixPoints(), stats.snapshot().numberOfFixPoints());
+
+        SearchStatistics total = new SearchStatistics();
+        total.accumulate(snapshots.get(3));
+        total.accumulate(stats);
+        assertEquals(8, total.numberOfSolutions());
+        assertEquals(stats.maxDepth(), total.maxDepth());
+        assertEquals(snapshots.get(3).numberOfNodes() + stats.numberOfNodes(), total.numberOfNodes());
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("minicp", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("minicp.Restart").withoutThreshold();
+            recording.enable("minicp.SearchStop").withoutThreshold();
+            recording.enable("minicp.FixPoint").withoutThreshold();
+            recording.start();
+
+            Solver cp = Factory.makeSolver();
+            IntVar[] x = Factory.makeIntVarArray(cp, 3, 2);
+            cp.post(Factory.notEqual(x[0], x[1]));
+            DFSearch dfs = Factory.makeDfs(cp, () -> {
+                IntVar xs = Arrays.stream(x).filter(y -> !y.isBound()).findFirst().orElse(null);
+                if (xs == null)
+                    throw new InconsistencyException(); // every leaf fails
+                int v = xs.min();
+                return branch(() -> cp.post(Factory.equal(xs, v)), () -> cp.post(Factory.notEqual(xs, v)));
+            });
+            dfs.setRestartPolicy(RestartPolicy.fixed(1));
+            SearchStatistics stats = dfs.solve(s -> s.numberOfFailures() >= 3);
+            assertFalse(stats.isCompleted());
+
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> restarts = events.stream().filter(e -> e.getEventType().getName().equals("minicp.Restart")).toList();
+            List<RecordedEvent> stops = events.stream().filter(e -> e.getEventType().getName().equals("minicp.SearchStop")).toList();
+            long nFixPoints = events.stream().filter(e -> e.getEventType().getName().equals("minicp.FixPoint")).count();
+            assertEquals(stats.numberOfRestarts(), restarts.size());
+            assertEquals(0, restarts.get(0).getInt("run"));
+            assertEquals(1, restarts.get(0).getInt("failureLimit"));
+            assertEquals(1, stops.size());
+            assertEquals("limit", stops.get(0).getString("reason"));
+            assertEquals(3, stops.get(0).getLong("failures"));
+            assertEquals(cp.numberOfFixPoints(), nFixPoints);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testMonitor(StateManager sm) throws Exception {
+        StateInt i = sm.makeStateInt(0);
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= 20)
+                return EMPTY;
+            return branch(i::increment, i::increment);
+        });
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try (SearchMonitor monitor = SearchMonitor.register(dfs, "test")) {
+            ObjectName name = monitor.getObjectName();
+            assertTrue(server.isRegistered(name));
+            assertNotNull(dfs.getCancellationToken());
+            assertEquals(false, server.getAttribute(name, "Running"));
+            long[] nodes = new long[1];
+            dfs.onSolution(() -> {
+                try {
+                    assertEquals(true, server.getAttribute(name, "Running"));
+                    if (nodes[0] == 0)
+                        nodes[0] = (long) server.getAttribute(name, "Nodes");
+                    // graceful stop requested from the console
+                    server.invoke(name, "stop", new Object[0], new String[0]);
+                } catch (JMException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            SearchStatistics stats = dfs.solve();
+            assertFalse(stats.isCompleted());
+            assertEquals(20, nodes[0]);
+            assertTrue(stats.numberOfNodes() <= 20 + DFSearch.CHECK_PERIOD);
+            assertEquals(stats.numberOfNodes(), (long) server.getAttribute(name, "Nodes"));
+            assertEquals(false, server.getAttribute(name, "Running"));
+            if (sm instanceof Trailer)
+                assertEquals(0L, server.getAttribute(name, "TrailSize"));
+            else
+                assertEquals(-1L, server.getAttribute(name, "TrailSize"));
+        }
+        assertFalse(server.queryNames(new ObjectName("minicp.search:type=DFSearch,*"), null).stream()
+                .anyMatch(n -> "\"test\"".equals(n.getKeyProperty("name"))));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testIterativeDiscrepancy(StateManager sm) {
+        StateInt i = sm.makeStateInt(0);
+        StateInt nRight = sm.makeStateInt(0);
+        int depth = 4;
+        DFSearch dfs = new DFSearch(sm, () -> {
+            if (i.value() >= depth)
+                return EMPTY;
+            return branch(i::increment, () -> {
+                i.increment();
+                nRight.increment();
+            });
+        });
+        List<Integer> discrepancies = new ArrayList<>();
+        dfs.onSolution(() -> discrepancies.add(nRight.value()));
+
+        // iterations of discrepancy 0, 1 and 2, each one exploring again the inner nodes of the previous ones
+        // but only reporting the leaves of its own discrepancy
+        dfs.setIterativeDiscrepancy(2);
+        SearchStatistics stats = dfs.solve();
+        assertFalse(stats.isCompleted());
+        assertEquals(1 + 4 + 6, stats.numberOfSolutions());
+        assertEquals(4 + 14 + 24, stats.numberOfNodes());
+        assertEquals(List.of(0, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2), discrepancies);
+
+        // the iterations end once the whole tree is explored, each leaf being reported once
+        discrepancies.clear();
+        dfs.setIterativeDiscrepancy(Integer.MAX_VALUE);
+        stats = dfs.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(16, stats.numberOfSolutions());
+        assertEquals(List.of(0, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 3, 3, 3, 3, 4), discrepancies);
+
+        // a limit on the nodes is spent on the first iterations
+        discrepancies.clear();
+        stats = dfs.solve(s -> s.numberOfNodes() >= 18);
+        assertFalse(stats.isCompleted());
+        assertTrue(discrepancies.stream().allMatch(d -> d <= 1));
+
+        dfs.setIterativeDiscrepancy(-1);
+        stats = dfs.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(16, stats.numberOfSolutions());
+        assertEquals(30, stats.numberOfNodes());
+    }
 }
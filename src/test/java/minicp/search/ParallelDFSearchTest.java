@@ -0,0 +1,271 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import minicp.cp.Factory;
+import minicp.engine.core.IntVar;
+import minicp.engine.core.MiniCP;
+import minicp.engine.core.Solver;
+import minicp.state.Copier;
+import minicp.state.StateInt;
+import minicp.state.StateManager;
+import minicp.state.Trailer;
+import minicp.util.exception.InconsistencyException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static minicp.cp.BranchingScheme.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelDFSearchTest {
+
+    protected static Stream<Arguments> stateManagerFactory() {
+        Supplier<StateManager> trailer = Trailer::new;
+        Supplier<StateManager> copier = Copier::new;
+        return Stream.of(Arguments.of(trailer), Arguments.of(copier));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testBinaryTree(Supplier<StateManager> factory) {
+        int depth = 10;
+        AtomicInteger nSols = new AtomicInteger();
+        ParallelDFSearch search = new ParallelDFSearch(4, w -> {
+            StateManager sm = factory.get();
+            StateInt i = sm.makeStateInt(0);
+            return new ParallelDFSearch.Replica(sm, () -> {
+                if (i.value() >= depth)
+                    return EMPTY;
+                return branch(i::increment, i::increment);
+            }).onSolution(nSols::incrementAndGet);
+        });
+        SearchStatistics stats = search.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(1 << depth, stats.numberOfSolutions());
+        assertEquals(1 << depth, nSols.get());
+        assertEquals((1 << (depth + 1)) - 2, stats.numberOfNodes());
+        assertEquals(0, stats.numberOfFailures());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testDecisions(Supplier<StateManager> factory) {
+        // counts the sequences of 8 values in {0, 1, 2} having no two consecutive 0
+        int n = 8;
+        ParallelDFSearch search = new ParallelDFSearch(3, w -> {
+            StateManager sm = factory.get();
+            StateInt i = sm.makeStateInt(0);
+            StateInt last = sm.makeStateInt(-1);
+            return new ParallelDFSearch.Replica(sm, DecisionBranching.of(decisions -> {
+                if (i.value() < n)
+                    for (int v = 0; v < 3; v++)
+                        decisions.add(0, i.value(), v);
+            }, (kind, index, value) -> {
+                if (value == 0 && last.value() == 0)
+                    throw InconsistencyException.INCONSISTENCY;
+                last.setValue(value);
+                i.increment();
+            }));
+        });
+        SearchStatistics stats = search.solve();
+        // a(n) = 2 a(n-1) + 2 a(n-2), a(0) = 1, a(1) = 3
+        int[] a = new int[n + 1];
+        a[0] = 1;
+        a[1] = 3;
+        for (int k = 2; k <= n; k++)
+            a[k] = 2 * a[k - 1] + 2 * a[k - 2];
+        assertTrue(stats.isCompleted());
+        assertEquals(a[n], stats.numberOfSolutions());
+    }
+
+    private static IntVar[] queens(Solver cp, int n) {
+        IntVar[] q = Factory.makeIntVarArray(cp, n, n);
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++) {
+                cp.post(Factory.notEqual(q[i], q[j]));
+                cp.post(Factory.notEqual(q[i], q[j], j - i));
+                cp.post(Factory.notEqual(q[i], q[j], i - j));
+            }
+        return q;
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testQueensSameAsSequential(Supplier<StateManager> factory) {
+        int n = 8;
+        ParallelDFSearch search = new ParallelDFSearch(4, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar[] q = queens(cp, n);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(q));
+        });
+        SearchStatistics parallel = search.solve();
+
+        Solver cp = new MiniCP(factory.get());
+        IntVar[] q = queens(cp, n);
+        SearchStatistics sequential = Factory.makeDfs(cp, firstFail(q)).solve();
+
+        assertTrue(parallel.isCompleted());
+        assertEquals(92, parallel.numberOfSolutions());
+        assertEquals(sequential.numberOfNodes(), parallel.numberOfNodes());
+        assertEquals(sequential.numberOfFailures(), parallel.numberOfFailures());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testOptimize(Supplier<StateManager> factory) {
+        int n = 8;
+        int[] weights = {3, 1, 4, 1, 5, 9, 2, 6};
+        AtomicInteger last = new AtomicInteger(Integer.MAX_VALUE);
+        ParallelDFSearch search = new ParallelDFSearch(4, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar[] q = queens(cp, n);
+            IntVar[] terms = new IntVar[n];
+            for (int i = 0; i < n; i++)
+                terms[i] = Factory.mul(q[i], weights[i]);
+            IntVar obj = Factory.sum(terms);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(q))
+                    .minimize(obj)
+                    .onSolution(() -> {
+                        // the solutions are notified by decreasing objective
+                        assertTrue(obj.min() < last.get());
+                        last.set(obj.min());
+                    });
+        });
+        SearchStatistics stats = search.optimize(s -> false);
+
+        Solver cp = new MiniCP(factory.get());
+        IntVar[] q = queens(cp, n);
+        IntVar[] terms = new IntVar[n];
+        for (int i = 0; i < n; i++)
+            terms[i] = Factory.mul(q[i], weights[i]);
+        IntVar obj = Factory.sum(terms);
+        AtomicInteger best = new AtomicInteger();
+        DFSearch dfs = Factory.makeDfs(cp, firstFail(q));
+        dfs.onSolution(() -> best.set(obj.min()));
+        dfs.optimize(cp.minimize(obj));
+
+        assertTrue(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() >= 1);
+        assertEquals(best.get(), search.incumbent());
+        assertEquals(best.get(), last.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testOptimizeSolutionsAreNotFailures(Supplier<StateManager> factory) {
+        // each solution improves the previous one, the last one being found at a leaf
+        ParallelDFSearch search = new ParallelDFSearch(1, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar x = Factory.makeIntVar(cp, 0, 9);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(x))
+                    .minimize(Factory.minus(x));
+        });
+        SearchStatistics stats = search.optimize(s -> false);
+        assertTrue(stats.isCompleted());
+        assertEquals(10, stats.numberOfSolutions());
+        assertEquals(0, stats.numberOfFailures());
+        assertEquals(-9, search.incumbent());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testLimit(Supplier<StateManager> factory) {
+        int n = 10;
+        ParallelDFSearch search = new ParallelDFSearch(4, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar[] q = queens(cp, n);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(q));
+        });
+        SearchStatistics stats = search.solve(s -> s.numberOfSolutions() >= 1);
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() >= 1);
+        assertTrue(stats.numberOfSolutions() < 724);
+        // the replicas are back to their root state and can be explored again
+        stats = search.solve();
+        assertTrue(stats.isCompleted());
+        assertEquals(724, stats.numberOfSolutions());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testDecompositionSameAsSequential(Supplier<StateManager> factory) {
+        int n = 8;
+        Solver cp = new MiniCP(factory.get());
+        IntVar[] q = queens(cp, n);
+        SearchStatistics sequential = Factory.makeDfs(cp, firstFail(q)).solve();
+        for (int depth : new int[] {1, 2, 5, 100}) { // the tree is less deep than 100
+            ParallelDFSearch search = Factory.makeEmbarrassinglyParallelDfs(3, depth, w -> {
+                Solver replica = new MiniCP(factory.get());
+                IntVar[] x = queens(replica, n);
+                return new ParallelDFSearch.Replica(replica.getStateManager(), firstFail(x));
+            });
+            SearchStatistics parallel = search.solve();
+            assertTrue(parallel.isCompleted());
+            assertEquals(92, parallel.numberOfSolutions());
+            assertEquals(sequential.numberOfNodes(), parallel.numberOfNodes());
+            assertEquals(sequential.numberOfFailures(), parallel.numberOfFailures());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testDecompositionFirstSolution(Supplier<StateManager> factory) {
+        int n = 12;
+        AtomicInteger nSols = new AtomicInteger();
+        ParallelDFSearch search = Factory.makeEmbarrassinglyParallelDfs(4, 4, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar[] q = queens(cp, n);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(q))
+                    .onSolution(() -> {
+                        for (IntVar x : q)
+                            assertTrue(x.isBound());
+                        nSols.incrementAndGet();
+                    });
+        });
+        SearchStatistics stats = search.solve(s -> s.numberOfSolutions() >= 1);
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() >= 1);
+        assertEquals(nSols.get(), stats.numberOfSolutions());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManagerFactory")
+    public void testCancellation(Supplier<StateManager> factory) {
+        int n = 12;
+        CancellationToken token = new CancellationToken();
+        ParallelDFSearch search = new ParallelDFSearch(4, w -> {
+            Solver cp = new MiniCP(factory.get());
+            IntVar[] q = queens(cp, n);
+            return new ParallelDFSearch.Replica(cp.getStateManager(), firstFail(q)).onSolution(token::cancel);
+        });
+        search.setCancellationToken(token);
+        SearchStatistics stats = search.solve();
+        assertFalse(stats.isCompleted());
+        assertTrue(stats.numberOfSolutions() >= 1);
+        assertTrue(stats.numberOfSolutions() < 14200);
+        // a cancelled token stops the workers at their first check
+        stats = search.solve();
+        assertFalse(stats.isCompleted());
+        token.reset();
+        stats = search.solve(s -> s.numberOfSolutions() >= 1);
+        assertTrue(stats.numberOfSolutions() >= 1);
+    }
+}
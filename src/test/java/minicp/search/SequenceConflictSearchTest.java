@@ -0,0 +1,127 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.search;
+
+import minicp.engine.SolverTest;
+import minicp.engine.constraints.sequence.NMember;
+import minicp.engine.core.OldSeqVar;
+import minicp.engine.core.Solver;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+import static minicp.cp.BranchingScheme.*;
+import static minicp.cp.Factory.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of the last conflict and conflict ordering searches on sequences
+ * @see minicp.cp.BranchingScheme#lastConflict(OldSeqVar, IntSupplier, java.util.function.IntBinaryOperator)
+ * @see minicp.cp.BranchingScheme#conflictOrderingSearch(OldSeqVar, IntSupplier, java.util.function.IntBinaryOperator)
+ */
+public class SequenceConflictSearchTest extends SolverTest {
+
+    protected static Stream<Arguments> solverAndBranching() {
+        BiFunction<OldSeqVar, IntSupplier, DecisionBranching> lastConflict =
+                (seq, nodeSelector) -> lastConflict(seq, nodeSelector, (node, pred) -> 0);
+        BiFunction<OldSeqVar, IntSupplier, DecisionBranching> conflictOrdering =
+                (seq, nodeSelector) -> conflictOrderingSearch(seq, nodeSelector, (node, pred) -> 0);
+        return Stream.of(Named.of("lastConflict", lastConflict), Named.of("conflictOrderingSearch", conflictOrdering))
+                .flatMap(branching -> solver().map(solver -> Arguments.of(solver.get()[0], branching)));
+    }
+
+    // selects the possible node with the smallest index
+    private static int firstPossible(OldSeqVar seq) {
+        for (int node = 0; node < seq.nNode(); node++)
+            if (seq.isPossible(node))
+                return node;
+        return -1;
+    }
+
+    // branching on the insertions of the first possible node, without remembering the conflicts
+    private static DecisionBranching firstPossibleBranching(OldSeqVar seq) {
+        int[] preds = new int[seq.nNode()];
+        return DecisionBranching.of(decisions -> {
+            int node = firstPossible(seq);
+            if (node < 0)
+                return;
+            int n = seq.fillMemberPredInsert(node, preds);
+            if (n == 0)
+                decisions.add(EXCLUDE, -1, node);
+            for (int i = 0; i < n; i++)
+                decisions.add(INSERT, preds[i], node);
+        }, (kind, pred, node) -> applySequenceDecision(seq, kind, pred, node));
+    }
+
+    // records the node branched on at each node of the search tree
+    private static DecisionBranching recordBranchedNodes(DecisionBranching branching, List<Integer> branched) {
+        return DecisionBranching.of(decisions -> {
+            branching.fill(decisions);
+            if (decisions.size() > 0)
+                branched.add(decisions.second(0));
+        }, branching::apply);
+    }
+
+    // sequence where every node must be visited
+    private static OldSeqVar makeSequence(Solver cp, int nNodes) {
+        OldSeqVar seq = makeSequenceVar(cp, nNodes + 2, nNodes, nNodes + 1);
+        cp.post(new NMember(seq, makeIntVar(cp, nNodes + 2, nNodes + 2)));
+        return seq;
+    }
+
+    @ParameterizedTest
+    @MethodSource("solverAndBranching")
+    public void testSequenceSameSolutions(Solver cp, BiFunction<OldSeqVar, IntSupplier, DecisionBranching> conflictBranching) {
+        OldSeqVar seq = makeSequence(cp, 4);
+        SearchStatistics plain = makeDfs(cp, firstPossibleBranching(seq)).solve();
+        SearchStatistics conflict = makeDfs(cp, conflictBranching.apply(seq, () -> firstPossible(seq))).solve();
+        assertEquals(24, plain.numberOfSolutions());
+        assertEquals(24, conflict.numberOfSolutions());
+    }
+
+    @ParameterizedTest
+    @MethodSource("solverAndBranching")
+    public void testSequenceConflictBranchedFirst(Solver cp, BiFunction<OldSeqVar, IntSupplier, DecisionBranching> conflictBranching) {
+        int nNodes = 6;
+        OldSeqVar seq = makeSequence(cp, nNodes);
+        // nodes 4 and 5 can only be inserted after each other: they can never be visited
+        for (int node = 0; node < nNodes + 1; node++) {
+            if (node != 5)
+                seq.removePredInsert(node, 4);
+            if (node != 4)
+                seq.removePredInsert(node, 5);
+        }
+        List<Integer> branched = new ArrayList<>();
+        SearchStatistics plain = makeDfs(cp, firstPossibleBranching(seq)).solve();
+        SearchStatistics conflict = makeDfs(cp, recordBranchedNodes(
+                conflictBranching.apply(seq, () -> firstPossible(seq)), branched)).solve();
+        assertEquals(0, plain.numberOfSolutions());
+        assertEquals(0, conflict.numberOfSolutions());
+        // every ordering of the first 4 nodes is tried without the conflicts
+        assertEquals(24, plain.numberOfFailures());
+        // once node 4 fails, it is branched on first below the other insertions of nodes 3, 2 and 1,
+        // failing right away instead of after every ordering of the nodes
+        assertEquals(List.of(0, 1, 2, 3, 4, 4, 4, 4, 4, 4, 4), branched);
+        assertEquals(1 + 3 + 2 + 1, conflict.numberOfFailures());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+package minicp.state;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StateBitSetTest extends StateManagerTest {
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testSetAndRestore(StateManager sm) {
+        StateBitSet set = new StateBitSet(sm);
+        assertFalse(set.get(0));
+        assertFalse(set.get(1000));
+
+        set.set(3, true);
+        sm.saveState();
+
+        set.set(70, true);
+        set.set(3, false);
+        set.set(500, true);
+        assertTrue(set.get(70));
+        assertTrue(set.get(500));
+        assertFalse(set.get(3));
+        assertFalse(set.get(6)); // same word as 70 but not set
+
+        sm.saveState();
+        set.set(70, false);
+        set.set(200, true);
+        assertFalse(set.get(70));
+        assertTrue(set.get(200));
+
+        sm.restoreState();
+        assertTrue(set.get(70));
+        assertFalse(set.get(200));
+        assertTrue(set.get(500));
+
+        sm.restoreState();
+        assertTrue(set.get(3));
+        assertFalse(set.get(70));
+        assertFalse(set.get(500));
+
+        // the words used in the restored states are cleared before being used again
+        sm.saveState();
+        set.set(130, true);
+        assertTrue(set.get(130));
+        assertFalse(set.get(70));
+        assertFalse(set.get(500));
+        set.set(501, true); // same word as 500, set in a restored state
+        assertTrue(set.get(501));
+        assertFalse(set.get(500));
+        sm.restoreState();
+        assertFalse(set.get(130));
+        assertFalse(set.get(501));
+        assertTrue(set.get(3));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testBothHalvesOfAWord(StateManager sm) {
+        StateBitSet set = new StateBitSet(sm);
+        sm.saveState();
+        for (int i = 0; i < 128; i += 3)
+            set.set(i, true);
+        for (int i = 0; i < 128; i++)
+            assertEquals(i % 3 == 0, set.get(i));
+        sm.saveState();
+        set.set(31, false);
+        set.set(63, true);
+        set.set(96, false);
+        assertFalse(set.get(31));
+        assertTrue(set.get(63));
+        assertFalse(set.get(96));
+        assertTrue(set.get(30));
+        sm.restoreState();
+        for (int i = 0; i < 128; i++)
+            assertEquals(i % 3 == 0, set.get(i));
+        sm.restoreState();
+        for (int i = 0; i < 128; i++)
+            assertFalse(set.get(i));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testWordCreatedAgainAfterRestore(StateManager sm) {
+        StateBitSet set = new StateBitSet(sm);
+        sm.saveState();
+        set.set(70, true);
+        sm.restoreState();
+        assertFalse(set.get(70));
+
+        sm.saveState();
+        set.set(70, true);
+        sm.saveState();
+        set.set(71, true);
+        set.set(70, false);
+        assertTrue(set.get(71));
+        sm.restoreState();
+        assertTrue(set.get(70));
+        assertFalse(set.get(71));
+        sm.restoreState();
+        assertFalse(set.get(70));
+        assertFalse(set.get(71));
+    }
+
+}
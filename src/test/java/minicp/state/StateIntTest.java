@@ -156,6 +156,27 @@ public class StateIntTest extends StateManagerTest {
 
     }
 
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testChangeAfterNestedRestore(StateManager sm) {
+
+        StateInt a = sm.makeStateInt(5);
+
+        sm.saveState(); // level 0
+
+        a.setValue(6);
+
+        sm.saveState(); // level 1
+        a.setValue(7);
+        sm.restoreState(); // level 0
+
+        a.setValue(8); // changed again at the level 0, after the value 6 was stored
+
+        sm.restoreState();
+
+        assertEquals(Integer.valueOf(5), a.value());
+    }
+
     @ParameterizedTest
     @MethodSource("stateManager")
     public void testPopUntillEasy(StateManager sm) {
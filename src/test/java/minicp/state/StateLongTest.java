@@ -0,0 +1,57 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+package minicp.state;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class StateLongTest extends StateManagerTest {
+
+    @ParameterizedTest
+    @MethodSource("stateManager")
+    public void testReversibleLong(StateManager sm) {
+
+        StateLong a = sm.makeStateLong(5L);
+        StateLong b = sm.makeStateLong(-1L);
+        a.setValue(1L << 40);
+        assertEquals(1L << 40, a.value());
+
+        sm.saveState(); // level 0
+
+        a.setValue(Long.MIN_VALUE);
+        b.setValue(0L);
+        StateLong c = sm.makeStateLong(3L);
+
+        sm.saveState(); // level 1
+
+        a.setValue(7L);
+        a.setValue(Long.MAX_VALUE);
+        c.setValue(1L << 63);
+        assertEquals(Long.MAX_VALUE, a.value());
+
+        sm.restoreState();
+        assertEquals(Long.MIN_VALUE, a.value());
+        assertEquals(0L, b.value());
+        assertEquals(3L, c.value());
+
+        sm.restoreState();
+        assertEquals(1L << 40, a.value());
+        assertEquals(-1L, b.value());
+    }
+
+}
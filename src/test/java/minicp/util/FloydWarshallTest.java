@@ -0,0 +1,76 @@
+/*
+ * mini-cp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License  v3
+ * as published by the Free Software Foundation.
+ *
+ * mini-cp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY.
+ * See the GNU Lesser General Public License  for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with mini-cp. If not, see http://www.gnu.org/licenses/lgpl-3.0.en.html
+ *
+ * Copyright (c)  2018. by Laurent Michel, Pierre Schaus, Pascal Van Hentenryck
+ */
+
+package minicp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class FloydWarshallTest {
+
+    private static int[] randomMatrix(Random random, int n) {
+        int[] dist = new int[n * n];
+        for (int i = 0 ; i < n ; ++i)
+            for (int j = 0 ; j < n ; ++j)
+                dist[i * n + j] = i == j ? 0 : 1 + random.nextInt(1000);
+        return dist;
+    }
+
+    private static int[] naiveClosure(int[] matrix, int n) {
+        int[] dist = matrix.clone();
+        for (int k = 0 ; k < n ; ++k)
+            for (int i = 0 ; i < n ; ++i)
+                for (int j = 0 ; j < n ; ++j)
+                    dist[i * n + j] = Math.min(dist[i * n + j], dist[i * n + k] + dist[k * n + j]);
+        return dist;
+    }
+
+    @Test
+    public void testSameAsNaiveClosure() {
+        Random random = new Random(42);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int n : new int[] {1, 2, 17, 63, 64, 65, 130, 257}) {
+                int[] matrix = randomMatrix(random, n);
+                int[] expected = naiveClosure(matrix, n);
+                int[] sequential = matrix.clone();
+                FloydWarshall.closure(sequential, n, single);
+                assertArrayEquals(expected, sequential);
+                int[] parallel = matrix.clone();
+                FloydWarshall.closure(parallel, n, pool);
+                assertArrayEquals(expected, parallel);
+            }
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testClosureIsStable() {
+        Random random = new Random(42);
+        int n = 150;
+        int[] dist = randomMatrix(random, n);
+        FloydWarshall.closure(dist, n);
+        int[] closedTwice = dist.clone();
+        FloydWarshall.closure(closedTwice, n);
+        assertArrayEquals(dist, closedTwice);
+    }
+}